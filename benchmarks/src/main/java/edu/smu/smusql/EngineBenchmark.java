@@ -0,0 +1,107 @@
+package edu.smu.smusql;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark; // not the Benchmark class of this package
+
+/*
+ * Single statements against a users table of tableSize rows, for each storage kind. The table has
+ * an ordered index on age and a hash index on city, so range SELECTs and equality UPDATEs take
+ * their index paths. Keys and values come from fixed seeds; each call takes the next one.
+ *
+ * The table is built once per fork, as an engine with MVCC tables keeps its version collector
+ * thread. Writes keep its size bounded: INSERTs go to the tableSize ids above the table's, so the
+ * table grows to at most twice its size and INSERTs then replace rows, and each DELETE puts its
+ * row back, so pointDelete costs a DELETE plus an INSERT.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    private static final String[] CITIES = {"New York", "Los Angeles", "Chicago", "Boston", "Miami", "Seattle", "Austin", "Dallas", "Atlanta", "Denver"};
+    private static final int SAMPLES = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    @Param({"ROW", "COLUMNAR", "MVCC", "CONCURRENT"})
+    public String storage;
+
+    private Engine engine;
+    private final int[] ids = new int[SAMPLES];    // existing row ids
+    private final int[] ages = new int[SAMPLES];
+    private final String[] cities = new String[SAMPLES];
+    private int next = 0;
+    private int inserted = 0;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            ids[i] = random.nextInt(tableSize);
+            ages[i] = 20 + random.nextInt(60);
+            cities[i] = CITIES[random.nextInt(CITIES.length)];
+        }
+
+        engine = new Engine();
+        engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + storage);
+        engine.executeSQL("CREATE INDEX users_age ON users(age)");
+        engine.executeSQL("CREATE HASH INDEX users_city ON users(city)");
+        random = new Random(7);
+        for (int id = 0; id < tableSize; id++) {
+            engine.executeSQL(row(id, 20 + random.nextInt(60), CITIES[random.nextInt(CITIES.length)]));
+        }
+    }
+
+    @Benchmark
+    public String pointInsert() {
+        int sample = next();
+        return engine.executeSQL(row(tableSize + inserted++ % tableSize, ages[sample], cities[sample]));
+    }
+
+    @Benchmark
+    public String pointSelect() {
+        return engine.executeSQL("SELECT * FROM users WHERE id = " + ids[next()]);
+    }
+
+    @Benchmark
+    public String pointUpdate() {
+        int sample = next();
+        return engine.executeSQL("UPDATE users SET age = " + ages[sample] + " WHERE id = " + ids[sample]);
+    }
+
+    @Benchmark
+    public String pointDelete() {
+        int sample = next();
+        String result = engine.executeSQL("DELETE FROM users WHERE id = " + ids[sample]);
+        engine.executeSQL(row(ids[sample], ages[sample], cities[sample]));
+        return result;
+    }
+
+    // About 1 row in 20
+    @Benchmark
+    public String rangeSelect() {
+        int age = ages[next()];
+        return engine.executeSQL("SELECT * FROM users WHERE age >= " + age + " AND age < " + (age + 3));
+    }
+
+    // About 1 row in 10
+    @Benchmark
+    public String equalityUpdate() {
+        int sample = next();
+        return engine.executeSQL("UPDATE users SET age = " + ages[sample] + " WHERE city = '" + cities[sample] + "'");
+    }
+
+    private int next() {
+        return next++ & (SAMPLES - 1);
+    }
+
+    private static String row(int id, int age, String city) {
+        return "INSERT INTO users VALUES (" + id + ", 'User" + id + "', " + age + ", '" + city + "')";
+    }
+}
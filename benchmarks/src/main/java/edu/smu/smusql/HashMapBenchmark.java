@@ -0,0 +1,102 @@
+package edu.smu.smusql;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark; // not the Benchmark class of this package
+
+/*
+ * ChainHashMap operations on a map of mapSize keys, next to OpenHashMap, which replaced it in the
+ * storages. Keys look like row keys and come from a fixed seed; each call takes the next one.
+ * put replaces the value of a key that is there, remove puts its key back so the map keeps its
+ * size, and resize fills an empty map with all mapSize keys, growing it all the way up, so its
+ * time is for the whole fill rather than one put.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashMapBenchmark {
+    @Param({"1000", "100000"})
+    public int mapSize;
+
+    private String[] keys;
+    private ChainHashMap<String, Integer> chain;
+    private OpenHashMap<String, Integer> open;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Random random = new Random(42);
+        keys = new String[mapSize];
+        chain = new ChainHashMap<>();
+        open = new OpenHashMap<>();
+        for (int i = 0; i < mapSize; i++) {
+            keys[i] = Integer.toString(random.nextInt(Integer.MAX_VALUE));
+            chain.put(keys[i], i);
+            open.put(keys[i], i);
+        }
+    }
+
+    @Benchmark
+    public void chainPut() {
+        chain.put(keys[next()], next);
+    }
+
+    @Benchmark
+    public Integer chainGet() {
+        return chain.get(keys[next()]);
+    }
+
+    @Benchmark
+    public void chainRemove() {
+        String key = keys[next()];
+        chain.remove(key);
+        chain.put(key, next);
+    }
+
+    @Benchmark
+    public ChainHashMap<String, Integer> chainResize() {
+        ChainHashMap<String, Integer> map = new ChainHashMap<>();
+        for (int i = 0; i < mapSize; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public void openPut() {
+        open.put(keys[next()], next);
+    }
+
+    @Benchmark
+    public Integer openGet() {
+        return open.get(keys[next()]);
+    }
+
+    @Benchmark
+    public void openRemove() {
+        String key = keys[next()];
+        open.remove(key);
+        open.put(key, next);
+    }
+
+    @Benchmark
+    public OpenHashMap<String, Integer> openResize() {
+        OpenHashMap<String, Integer> map = new OpenHashMap<>();
+        for (int i = 0; i < mapSize; i++) {
+            map.put(keys[i], i);
+        }
+        return map;
+    }
+
+    private int next() {
+        if (++next == mapSize) {
+            next = 0;
+        }
+        return next;
+    }
+}
@@ -0,0 +1,65 @@
+package edu.smu.smusql;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.annotations.Benchmark; // not the Benchmark class of this package
+
+/*
+ * The statement mix of Main.autoEvaluate, made reproducible: the tables are filled and the
+ * statements generated from fixed seeds (see Benchmark.sampleStatements), nothing is printed, and
+ * the tables start at tableSize rows, with statement ids drawn from the same range. Each call runs
+ * the next statement of the mix, cycling through it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MixBenchmark {
+    private static final String[] CITIES = {"New York", "Los Angeles", "Chicago", "Boston", "Miami", "Seattle", "Austin", "Dallas", "Atlanta", "Denver"};
+    private static final String[] CATEGORIES = {"Electronics", "Appliances", "Clothing", "Furniture", "Toys", "Sports", "Books", "Beauty", "Garden"};
+    private static final int STATEMENTS = 1 << 16;
+
+    @Param({"50", "10000", "100000"})
+    public int tableSize;
+
+    @Param({"ROW", "COLUMNAR", "MVCC", "CONCURRENT"})
+    public String storage;
+
+    private Engine engine;
+    private String[] statements;
+    private int next = 0;
+
+    // Once per fork, as an engine with MVCC tables keeps its version collector thread
+    @Setup(Level.Trial)
+    public void populate() {
+        engine = new Engine();
+        engine.setDefaultStorage(storage);
+        engine.executeSQL("CREATE TABLE users (id, name, age, city)");
+        engine.executeSQL("CREATE TABLE products (id, name, price, category)");
+        engine.executeSQL("CREATE TABLE orders (id, user_id, product_id, quantity)");
+
+        // As in Main.prepopulateTables
+        Random random = new Random(7);
+        for (int i = 0; i < tableSize; i++) {
+            engine.executeSQL(String.format("INSERT INTO users VALUES (%d, '%s', %d, '%s')",
+                    i, "User" + i, 20 + (i % 41), CITIES[random.nextInt(CITIES.length)]));
+            engine.executeSQL(String.format("INSERT INTO products VALUES (%d, '%s', %.2f, '%s')",
+                    i, "Product" + i, 10.0 + (i % 990), CATEGORIES[random.nextInt(CATEGORIES.length)]));
+            engine.executeSQL(String.format("INSERT INTO orders VALUES (%d, %d, %d, %d)",
+                    i, random.nextInt(tableSize), random.nextInt(tableSize), random.nextInt(1, 100)));
+        }
+
+        statements = edu.smu.smusql.Benchmark.sampleStatements(new Random(42), STATEMENTS, tableSize);
+    }
+
+    @Benchmark
+    public String statement() {
+        String result = engine.executeSQL(statements[next]);
+        next = (next + 1) & (STATEMENTS - 1);
+        return result;
+    }
+}
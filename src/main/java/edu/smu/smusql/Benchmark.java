@@ -0,0 +1,870 @@
+package edu.smu.smusql;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/*
+ * Micro-benchmarks for parts of the engine.
+ * Run with: mvn exec:java -Dexec.mainClass=edu.smu.smusql.Benchmark -Dexec.args="parser"
+ * Each benchmark warms up first and then reports the best of several timed rounds.
+ * JMH versions of the per-operation and autoEvaluate benchmarks are in the benchmarks module.
+ */
+public class Benchmark {
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int TIMED_ROUNDS = 10;
+
+    public static void main(String[] args) {
+        String name = args.length > 0 ? args[0] : "parser";
+        switch (name) {
+            case "parser":
+                parser();
+                break;
+            case "storage":
+                storage(args.length > 1 ? new String[]{args[1].toUpperCase()} : new String[]{"ROW", "COLUMNAR"});
+                break;
+            case "hashmap":
+                hashmap();
+                break;
+            case "resultset":
+                resultSet();
+                break;
+            case "striped":
+                striped(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "mvcc":
+                mvcc();
+                break;
+            case "concurrency":
+                concurrency(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "wal":
+                wal(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "checkpoint":
+                checkpoint(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+                break;
+            case "bulk":
+                bulk(args.length > 1 ? Integer.parseInt(args[1]) : 200000);
+                break;
+            case "stats":
+                stats(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "offheap":
+                offHeap(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+                break;
+            case "zonemap":
+                zoneMap(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+                break;
+            case "bitmap":
+                bitmap(args.length > 1 ? Integer.parseInt(args[1]) : 1000000);
+                break;
+            case "parallel":
+                parallel(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + name);
+                System.out.println("Available: parser, storage, hashmap, resultset, concurrency [threads], mvcc, striped [threads], parallel [threads], wal [threads], checkpoint [rows], bulk [rows], stats [threads], offheap [rows], zonemap [rows], bitmap [rows]");
+        }
+    }
+
+    // Statements per second through the lexer and parser, against the old regex tokenization
+    private static void parser() {
+        String[] statements = sampleStatements(new Random(42), 10000);
+        int[] sink = new int[1];
+
+        report("regex split (old Engine)", statements.length, () -> {
+            for (String statement : statements) {
+                String[] tokens = statement.trim().split("\\s+");
+                sink[0] += tokens.length;
+                if (tokens[0].equals("INSERT")) {
+                    // queryBetweenParentheses and the value split of the old Engine.insert
+                    StringBuilder joined = new StringBuilder();
+                    for (int i = 4; i < tokens.length; i++) {
+                        joined.append(tokens[i]).append(" ");
+                    }
+                    String list = joined.toString().trim().replaceAll("\\(", "").replaceAll("\\)", "");
+                    sink[0] += list.split(",").length;
+                }
+            }
+        });
+        report("lex + shape (plan cache hit)", statements.length, () -> {
+            for (String statement : statements) {
+                sink[0] += PlanCache.normalize(statement).getLiterals().length;
+            }
+        });
+        report("lex + parse to AST (cache miss)", statements.length, () -> {
+            for (String statement : statements) {
+                Statement parsed = new Parser(new Lexer(statement)).parse();
+                sink[0] += parsed.tableName.length();
+            }
+        });
+        System.out.println("(checksum " + sink[0] + ")");
+    }
+
+    // Heap held, bytes allocated while loading, and full-scan speed of the same users table stored
+    // by row and by column.
+    // Pass ROW or COLUMNAR to measure one in a fresh JVM; the second kind run in the same JVM
+    // scans with call sites already compiled for the first. Run COLUMNAR with
+    // -Dsmusql.dictionary=false to compare its STRING columns without dictionary encoding.
+    private static void storage(String[] kinds) {
+        int rows = 200000;
+        for (String kind : kinds) {
+            long before = usedHeap();
+            Engine engine = new Engine();
+            engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + kind);
+            Random random = new Random(42);
+            long allocated = allocatedBy(() -> {
+                for (int i = 0; i < rows; i++) {
+                    engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (random.nextInt(60) + 20)
+                            + ", 'City" + random.nextInt(10) + "')");
+                }
+            });
+            long heap = usedHeap() - before;
+            System.out.printf("%-8s heap %,d bytes (%.1f bytes/row), allocated %.1f bytes/row loading%n",
+                    kind, heap, (double) heap / rows, (double) allocated / rows);
+
+            // Matches no row, so the time is the scan and predicate alone
+            report(kind + " scan, age > 100", rows, () -> engine.executeSQL("UPDATE users SET city = 'X' WHERE age > 100"));
+            report(kind + " scan, city = 'City3'", rows, () -> engine.executeSQL("SELECT * FROM users WHERE city = 'City3' AND age > 100"));
+            if (engine.executeSQL("SELECT * FROM users WHERE id = 7").isEmpty()) {
+                System.out.println("(table lost)"); // keeps the engine reachable until after the scans
+            }
+        }
+    }
+
+    // ChainHashMap against OpenHashMap on the same String row keys, and IntHashMap on the ints
+    private static void hashmap() {
+        int n = 100000;
+        Random random = new Random(42);
+        int[] ids = new int[n];
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = random.nextInt(Integer.MAX_VALUE);
+            keys[i] = Integer.toString(ids[i]);
+        }
+        Object value = new Object();
+        int[] sink = new int[1];
+
+        report("ChainHashMap put+get+remove", n, () -> {
+            ChainHashMap<String, Object> map = new ChainHashMap<>();
+            for (String key : keys) {
+                map.put(key, value);
+            }
+            for (String key : keys) {
+                sink[0] += map.get(key) != null ? 1 : 0;
+            }
+            for (String key : keys) {
+                map.remove(key);
+            }
+        });
+        report("OpenHashMap put+get+remove", n, () -> {
+            OpenHashMap<String, Object> map = new OpenHashMap<>();
+            for (String key : keys) {
+                map.put(key, value);
+            }
+            for (String key : keys) {
+                sink[0] += map.get(key) != null ? 1 : 0;
+            }
+            for (String key : keys) {
+                map.remove(key);
+            }
+        });
+        report("IntHashMap put+get+remove", n, () -> {
+            IntHashMap<Object> map = new IntHashMap<>();
+            for (int id : ids) {
+                map.put(id, value);
+            }
+            for (int id : ids) {
+                sink[0] += map.get(id) != null ? 1 : 0;
+            }
+            for (int id : ids) {
+                map.remove(id);
+            }
+        });
+        report("ChainHashMap get", n, hitLoop(filled(new ChainHashMap<>(), keys, value)::get, keys, sink));
+        report("OpenHashMap get", n, hitLoop(filled(new OpenHashMap<>(), keys, value)::get, keys, sink));
+
+        // Heap held per entry, keys excluded
+        long before = usedHeap();
+        ChainHashMap<String, Object> chained = filled(new ChainHashMap<>(), keys, value);
+        long chainedBytes = usedHeap() - before;
+        before = usedHeap();
+        OpenHashMap<String, Object> open = filled(new OpenHashMap<>(), keys, value);
+        long openBytes = usedHeap() - before;
+        System.out.printf("heap per entry: ChainHashMap %.1f bytes, OpenHashMap %.1f bytes%n",
+                (double) chainedBytes / n, (double) openBytes / n);
+        System.out.println("(checksum " + (sink[0] + chained.size() + open.size()) + ")");
+    }
+
+    // A SELECT of every row materialized as one String, against streaming it through a 64 KB buffer
+    private static void resultSet() {
+        int rows = 200000;
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE users (id, name, age, city)");
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (random.nextInt(60) + 20)
+                    + ", 'City" + random.nextInt(10) + "')");
+        }
+        String query = "SELECT * FROM users WHERE age > 20";
+        long[] sink = new long[1];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        Runnable string = () -> sink[0] += engine.executeSQL(query).length();
+        Runnable streamed = () -> {
+            ResultSet rs = engine.query(query);
+            boolean more;
+            do {
+                more = rs.writeTo(buffer);
+                sink[0] += buffer.position(); // a server would write the buffer to its channel here
+                buffer.clear();
+            } while (more);
+        };
+        report("executeSQL to String", rows, string);
+        report("query + writeTo(ByteBuffer)", rows, streamed);
+        System.out.printf("allocated per query: String %,d bytes, streamed %,d bytes%n",
+                allocatedBy(string), allocatedBy(streamed));
+        System.out.println("(checksum " + sink[0] + ")");
+    }
+
+    // Map operations per second from 1 to maxThreads threads on one shared map: OpenHashMap behind
+    // one lock, StripedHashMap, and ConcurrentHashMap for reference. Then point writes by id from
+    // the same number of clients to a ROW and a CONCURRENT table.
+    private static void striped(int maxThreads) {
+        int keys = 100000;
+        int perThread = 1_000_000;
+        String[] keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = Integer.toString(i);
+        }
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " processors)");
+
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                OpenHashMap<String, Object> open = new OpenHashMap<>();
+                StripedHashMap<String, Object> striped = new StripedHashMap<>();
+                java.util.concurrent.ConcurrentHashMap<String, Object> concurrent = new java.util.concurrent.ConcurrentHashMap<>();
+                double locked = runThreads(threads, perThread, keyNames, (key, op) -> {
+                    synchronized (open) {
+                        mapOp(op, () -> open.put(key, key), () -> open.get(key), () -> open.remove(key));
+                    }
+                });
+                double stripedRate = runThreads(threads, perThread, keyNames,
+                        (key, op) -> mapOp(op, () -> striped.put(key, key), () -> striped.get(key), () -> striped.remove(key)));
+                double concurrentRate = runThreads(threads, perThread, keyNames,
+                        (key, op) -> mapOp(op, () -> concurrent.put(key, key), () -> concurrent.get(key), () -> concurrent.remove(key)));
+                if (round == 1) {
+                    System.out.printf("%2d threads: synchronized OpenHashMap %,12.0f ops/s   StripedHashMap %,12.0f ops/s   ConcurrentHashMap %,12.0f ops/s%n",
+                            threads, locked, stripedRate, concurrentRate);
+                }
+            }
+        }
+
+        for (String kind : new String[]{"ROW", "CONCURRENT", "ROW", "CONCURRENT"}) { // the first pair warms up
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                Engine engine = new Engine();
+                engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + kind);
+                double rate = runThreads(threads, 20000, keyNames, (key, op) -> {
+                    if (op < 2) {
+                        engine.executeSQL("INSERT INTO users VALUES (" + key + ", 'User" + key + "', 30, 'Boston')");
+                    } else if (op < 9) {
+                        engine.executeSQL("UPDATE users SET age = 31 WHERE id = " + key);
+                    } else {
+                        engine.executeSQL("DELETE FROM users WHERE id = " + key);
+                    }
+                });
+                System.out.printf("%-10s %2d threads: point writes %,10.0f stmts/s%n", kind, threads, rate);
+            }
+        }
+    }
+
+    // Cost of the statistics kept for every statement: recording one latency into a histogram, from
+    // 1 to maxThreads threads sharing it, against the two System.nanoTime() calls that time it
+    private static void stats(int maxThreads) {
+        String[] unused = {""};
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " processors)");
+        long[] sink = new long[1];
+        report("System.nanoTime() x2", 10_000_000, () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                sink[0] += System.nanoTime() - System.nanoTime();
+            }
+        });
+        LatencyHistogram single = new LatencyHistogram();
+        report("LatencyHistogram.record", 10_000_000, () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                single.record(1000 + (i & 4095));
+            }
+        });
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                LatencyHistogram shared = new LatencyHistogram();
+                double rate = runThreads(threads, 2_000_000, unused, (key, op) -> shared.record(2000 + op * 100));
+                if (round == 1) {
+                    System.out.printf("%2d threads: shared LatencyHistogram.record %,14.0f ops/s %8.1f ns/op per thread%n",
+                            threads, rate, threads * 1e9 / rate);
+                }
+            }
+        }
+        if (sink[0] == 42) {
+            System.out.println(); // keeps the timing loop from being optimized away
+        }
+    }
+
+    // Runs perThread operations on each thread, on random keys, with op a random number below 10.
+    // Returns operations per second over all threads.
+    private static double runThreads(int threads, int perThread, String[] keys, java.util.function.BiConsumer<String, Integer> body) {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < perThread; i++) {
+                    body.accept(keys[random.nextInt(keys.length)], random.nextInt(10));
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        return threads * (double) perThread / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    // 20% puts, 70% gets, 10% removes
+    private static void mapOp(int op, Runnable put, Runnable get, Runnable remove) {
+        if (op < 2) {
+            put.run();
+        } else if (op < 9) {
+            get.run();
+        } else {
+            remove.run();
+        }
+    }
+
+    // Latency of point updates while another client runs full scans of the same table, with the
+    // scans holding the read lock (ROW) and reading a snapshot (MVCC)
+    private static void mvcc() {
+        int rows = 100000;
+        int updates = 2000;
+        for (String kind : new String[]{"ROW", "MVCC", "ROW", "MVCC"}) { // the first pair warms up
+            Engine engine = new Engine();
+            engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + kind);
+            Random random = new Random(42);
+            for (int i = 0; i < rows; i++) {
+                engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (random.nextInt(60) + 20)
+                        + ", 'City" + random.nextInt(10) + "')");
+            }
+
+            AtomicBoolean done = new AtomicBoolean();
+            List<Long> scanNanos = new ArrayList<>();
+            Thread scanner = new Thread(() -> {
+                while (!done.get()) {
+                    long start = System.nanoTime();
+                    engine.executeSQL("SELECT * FROM users WHERE age > 100");
+                    scanNanos.add(System.nanoTime() - start);
+                }
+            });
+            scanner.start();
+
+            long[] updateNanos = new long[updates];
+            for (int i = 0; i < updates; i++) {
+                String update = "UPDATE users SET age = " + (random.nextInt(60) + 20) + " WHERE id = " + random.nextInt(rows);
+                long start = System.nanoTime();
+                engine.executeSQL(update);
+                updateNanos[i] = System.nanoTime() - start;
+                Thread.yield();
+            }
+            done.set(true);
+            try {
+                scanner.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            long[] scans = scanNanos.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(updateNanos);
+            Arrays.sort(scans);
+            System.out.printf("%-5s update p50 %8.1f us  p99 %8.1f us  max %8.1f us | %4d scans, p50 %6.1f ms%n", kind,
+                    percentile(updateNanos, 0.50) / 1e3, percentile(updateNanos, 0.99) / 1e3, updateNanos[updates - 1] / 1e3,
+                    scans.length, percentile(scans, 0.50) / 1e6);
+        }
+    }
+
+    // Full scans of a large table, SELECT and UPDATE, with the scan split across 1 to maxThreads
+    // threads. Needs a bigger heap than the default: -Xmx2g
+    private static void parallel(int maxThreads) {
+        int rows = 500000;
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE users (id, name, age, city)");
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (random.nextInt(60) + 20)
+                    + ", 'City" + random.nextInt(10) + "')");
+        }
+        String select = "SELECT * FROM users WHERE age > 75 AND city = 'City3'";
+        String update = "UPDATE users SET age = 30 WHERE age = 30 AND city = 'City7'"; // finds rows, changes nothing
+        engine.setParallelThreshold(1);
+
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " processors, " + rows + " rows)");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            engine.setParallelism(threads);
+            report(threads + " threads: SELECT full scan", 1, () -> engine.executeSQL(select));
+            report(threads + " threads: UPDATE full scan", 1, () -> engine.executeSQL(update));
+        }
+    }
+
+    // Statements per second on the autoEvaluate mix with no log and with each log sync policy, from
+    // one client and from threads clients, with the statements that shared each force of the log
+    private static void wal(int threads) {
+        int perThread = 2000;
+        String[] mix = sampleStatements(new Random(42), perThread * threads);
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " processors)");
+        for (int round = 0; round < 3; round++) {
+            runClients(mix, threads, perThread); // warm-up
+        }
+        System.out.printf("%-9s 1 client %,9.0f stmts/s   %d clients %,9.0f stmts/s%n", "no log",
+                runClients(mix, 1, perThread), threads, runClients(mix, threads, perThread));
+        for (WriteAheadLog.Sync sync : WriteAheadLog.Sync.values()) {
+            StringBuilder line = new StringBuilder(String.format("%-9s", sync));
+            for (int clients : new int[]{1, threads}) {
+                Path directory = null;
+                try {
+                    directory = Files.createTempDirectory("smusql-wal");
+                    Engine engine = new Engine();
+                    engine.openLog(directory, sync, 10);
+                    double rate = runClients(engine, mix, clients, perThread);
+                    long forces = engine.getLog().getForceCount();
+                    engine.closeLog();
+                    line.append(String.format(" %d client%s %,9.0f stmts/s (%5.1f per force)", clients, clients > 1 ? "s" : "",
+                            rate, forces > 0 ? (double) clients * perThread / forces : 0.0));
+                } catch (IOException e) {
+                    System.out.println("Log failed: " + e.getMessage());
+                    return;
+                } finally {
+                    deleteDirectory(directory);
+                }
+            }
+            System.out.println(line);
+        }
+    }
+
+    // Startup time of a table of the given size, restored by replaying the log and by loading a
+    // checkpoint. Needs a bigger heap than the default for a million rows: -Xmx2g
+    private static void checkpoint(int rows) {
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("smusql-checkpoint");
+            Engine engine = new Engine();
+            engine.openLog(directory, WriteAheadLog.Sync.OFF, 10);
+            engine.executeSQL("CREATE TABLE users (id, name, age, city)");
+            engine.executeSQL("CREATE HASH INDEX users_city ON users(city)");
+            Random random = new Random(42);
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (random.nextInt(60) + 20)
+                        + ", 'City" + random.nextInt(10) + "')");
+            }
+            System.out.printf("%-28s %8.0f ms%n", "insert " + rows + " rows", (System.nanoTime() - start) / 1e6);
+            engine.closeLog();
+
+            start = System.nanoTime();
+            engine = new Engine();
+            engine.openLog(directory, WriteAheadLog.Sync.OFF, 10);
+            System.out.printf("%-28s %8.0f ms%n", "restart: replay log", (System.nanoTime() - start) / 1e6);
+
+            start = System.nanoTime();
+            String result = engine.executeSQL("CHECKPOINT");
+            System.out.printf("%-28s %8.0f ms  (%s, %,d bytes)%n", "CHECKPOINT", (System.nanoTime() - start) / 1e6,
+                    result, Files.size(Checkpoint.file(directory)));
+            engine.closeLog();
+            engine = null;
+            usedHeap(); // collect the old tables before timing the next load
+
+            start = System.nanoTime();
+            engine = new Engine();
+            engine.openLog(directory, WriteAheadLog.Sync.OFF, 10);
+            System.out.printf("%-28s %8.0f ms  (%d rows)%n", "restart: load checkpoint", (System.nanoTime() - start) / 1e6,
+                    engine.getTable("users").size());
+            engine.closeLog();
+        } catch (IOException e) {
+            System.out.println("Checkpoint failed: " + e.getMessage());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    // Heap and direct memory held by the same users table stored by row and off the heap, how long
+    // a full GC takes while the table is live, and full-scan speed. Run with a heap big enough for
+    // the ROW table, e.g. -Xmx2g for a million rows.
+    private static void offHeap(int rows) {
+        for (String kind : new String[]{"ROW", "OFFHEAP"}) {
+            long before = usedHeap();
+            Engine engine = new Engine();
+            engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + kind);
+            Random random = new Random(42);
+            StringBuilder batch = new StringBuilder();
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                batch.append(batch.length() == 0 ? "INSERT INTO users VALUES (" : ", (").append(i).append(", 'User").append(i)
+                        .append("', ").append(random.nextInt(60) + 20).append(", 'City").append(random.nextInt(10)).append("')");
+                if ((i + 1) % 1000 == 0 || i == rows - 1) {
+                    engine.executeSQL(batch.toString());
+                    batch.setLength(0);
+                }
+            }
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+            long heap = usedHeap() - before;
+            TableStorage storage = engine.getTable("users").getStorage();
+            long direct = storage instanceof OffHeapStorage ? ((OffHeapStorage) storage).getReservedBytes() : 0;
+
+            long gcNanos = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                long gcStart = System.nanoTime();
+                System.gc();
+                gcNanos = Math.min(gcNanos, System.nanoTime() - gcStart);
+            }
+            System.out.printf("%-8s load %,.0f rows/s   heap %.1f bytes/row   direct %.1f bytes/row   full GC %.1f ms%n",
+                    kind, rows / loadSeconds, (double) heap / rows, (double) direct / rows, gcNanos / 1e6);
+            report(kind + " scan, city = 'City3'", rows, () -> engine.executeSQL("SELECT * FROM users WHERE city = 'City3' AND age > 100"));
+            if (engine.executeSQL("SELECT * FROM users WHERE id = 7").isEmpty()) {
+                System.out.println("(table lost)"); // keeps the engine reachable until after the scans
+            }
+        }
+    }
+
+    // Narrow range SELECTs on a ROW table whose prices rise with insertion order, which zone maps
+    // prune to a block or two, and on one with random prices, where every block must be read.
+    // Also times the load, which keeps the zone maps up to date. Scans run on one thread.
+    private static void zoneMap(int rows) {
+        for (boolean clustered : new boolean[]{true, false}) {
+            Engine engine = new Engine();
+            engine.setParallelism(1);
+            engine.executeSQL("CREATE TABLE products (id, name, price, category) USING ROW");
+            Random random = new Random(42);
+            StringBuilder batch = new StringBuilder();
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                double price = clustered ? i / 100.0 : random.nextInt(rows) / 100.0;
+                batch.append(batch.length() == 0 ? "INSERT INTO products VALUES (" : ", (").append(i).append(", 'Product").append(i)
+                        .append("', ").append(price).append(", 'Category").append(random.nextInt(10)).append("')");
+                if ((i + 1) % 1000 == 0 || i == rows - 1) {
+                    engine.executeSQL(batch.toString());
+                    batch.setLength(0);
+                }
+            }
+            String label = clustered ? "clustered" : "random";
+            System.out.printf("%-9s load %,.0f rows/s%n", label, rows / ((System.nanoTime() - start) / 1e9));
+
+            String[] ranges = new String[100];
+            for (int i = 0; i < ranges.length; i++) {
+                double min = random.nextInt(rows) / 100.0;
+                ranges[i] = "SELECT * FROM products WHERE price > " + min + " AND price < " + (min + 1);
+            }
+            report(label + " price range, per query", ranges.length, () -> {
+                for (String range : ranges) {
+                    engine.executeSQL(range);
+                }
+            });
+        }
+    }
+
+    // SELECTs combining conditions on a city and an age with AND and OR, on a ROW table with bitmap
+    // indexes on both columns and on one without indexes, which tests every row. Each shape is
+    // timed with 5 different literals. Scans run on one thread.
+    private static void bitmap(int rows) {
+        String[] shapes = {
+                "city = %s AND age = %d", "city = %s OR age = %d", "city = %s AND age > %d AND category = 'c1'",
+                "(city = %s OR city = 'City0') AND age < %d",
+        };
+        String[] names = {"= AND =", "= OR =", "= AND range AND =", "(= OR =) AND range"};
+        Random random = new Random(7);
+        String[][] queries = new String[shapes.length][5];
+        for (int i = 0; i < shapes.length; i++) {
+            for (int j = 0; j < queries[i].length; j++) {
+                queries[i][j] = "SELECT * FROM users WHERE "
+                        + String.format(shapes[i], "'City" + random.nextInt(50) + "'", 18 + random.nextInt(60));
+            }
+        }
+        for (boolean indexed : new boolean[]{false, true}) {
+            Engine engine = new Engine();
+            engine.setParallelism(1);
+            engine.executeSQL("CREATE TABLE users (id, city, age, category) USING ROW");
+            StringBuilder batch = new StringBuilder();
+            for (int i = 0; i < rows; i++) {
+                batch.append(batch.length() == 0 ? "INSERT INTO users VALUES (" : ", (").append(i).append(", 'City").append(random.nextInt(50))
+                        .append("', ").append(18 + random.nextInt(60)).append(", 'c").append(random.nextInt(8)).append("')");
+                if ((i + 1) % 1000 == 0 || i == rows - 1) {
+                    engine.executeSQL(batch.toString());
+                    batch.setLength(0);
+                }
+            }
+            String label = indexed ? "bitmap" : "scan";
+            if (indexed) {
+                long start = System.nanoTime();
+                engine.executeSQL("CREATE BITMAP INDEX users_city ON users(city)");
+                engine.executeSQL("CREATE BITMAP INDEX users_age ON users(age)");
+                System.out.printf("bitmap indexes built in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            }
+            for (int i = 0; i < shapes.length; i++) {
+                String[] shape = queries[i];
+                report(label + " " + names[i], shape.length, () -> {
+                    for (String query : shape) {
+                        engine.executeSQL(query);
+                    }
+                });
+            }
+        }
+    }
+
+    // Rows per second loaded by single-row INSERTs, by INSERTs of 1000 rows each and by COPY from a
+    // file, for each storage, without a log and with a log forced at every commit
+    private static void bulk(int rows) {
+        int batchRows = 1000;
+        String[] single = new String[rows];
+        List<String> batches = new ArrayList<>();
+        StringBuilder csv = new StringBuilder();
+        StringBuilder batch = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            String values = i + ", 'User" + i + "', " + (random.nextInt(60) + 20) + ", 'City" + random.nextInt(10) + "'";
+            single[i] = "INSERT INTO users VALUES (" + values + ")";
+            csv.append(values).append('\n');
+            batch.append(batch.length() == 0 ? "INSERT INTO users VALUES (" : ", (").append(values).append(')');
+            if ((i + 1) % batchRows == 0 || i == rows - 1) {
+                batches.add(batch.toString());
+                batch.setLength(0);
+            }
+        }
+
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("smusql-bulk");
+            Path file = directory.resolve("users.csv");
+            Files.writeString(file, csv);
+            String copy = "COPY users FROM '" + file + "'";
+            for (String kind : new String[]{"ROW", "COLUMNAR", "MVCC", "CONCURRENT", "OFFHEAP"}) {
+                for (boolean logged : new boolean[]{false, true}) {
+                    StringBuilder line = new StringBuilder(String.format("%-10s %-7s", kind, logged ? "log" : "no log"));
+                    line.append(String.format(" INSERT %,10.0f rows/s", bulkLoad(directory, kind, logged, rows, Arrays.asList(single))));
+                    line.append(String.format("   INSERT x%d %,10.0f rows/s", batchRows, bulkLoad(directory, kind, logged, rows, batches)));
+                    line.append(String.format("   COPY %,10.0f rows/s", bulkLoad(directory, kind, logged, rows, List.of(copy))));
+                    System.out.println(line);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Bulk load failed: " + e.getMessage());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    // Best rows per second of loading an empty table with the statements, over a few rounds
+    private static double bulkLoad(Path directory, String kind, boolean logged, int rows, List<String> statements) throws IOException {
+        double best = 0;
+        for (int round = 0; round < 3; round++) {
+            Path logDirectory = logged ? Files.createTempDirectory(directory, "log") : null;
+            Engine engine = new Engine();
+            if (logged) {
+                engine.openLog(logDirectory, WriteAheadLog.Sync.COMMIT, 10);
+            }
+            engine.executeSQL("CREATE TABLE users (id, name, age, city) USING " + kind);
+            long start = System.nanoTime();
+            for (String statement : statements) {
+                engine.executeSQL(statement);
+            }
+            best = Math.max(best, rows / ((System.nanoTime() - start) / 1e9));
+            if (engine.getTable("users").size() != rows) {
+                throw new IOException(kind + " loaded " + engine.getTable("users").size() + " rows, not " + rows);
+            }
+            if (logged) {
+                engine.closeLog();
+                deleteDirectory(logDirectory);
+            }
+        }
+        return best;
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // leave it to the temp directory cleanup
+        }
+        directory.toFile().delete();
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    // Statements per second from 1 to maxThreads clients sharing one engine, on the autoEvaluate mix
+    // and on its SELECTs alone. Each point starts from a freshly populated engine.
+    private static void concurrency(int maxThreads) {
+        int perThread = 2000;
+        String[] mix = sampleStatements(new Random(42), perThread * maxThreads);
+        String[] reads = Arrays.stream(sampleStatements(new Random(7), perThread * maxThreads * 4))
+                .filter(statement -> statement.startsWith("SELECT"))
+                .limit((long) perThread * maxThreads)
+                .toArray(String[]::new);
+        System.out.println("(" + Runtime.getRuntime().availableProcessors() + " processors)");
+        for (int round = 0; round < 3; round++) {
+            runClients(mix, maxThreads, perThread); // warm-up
+            runClients(reads, maxThreads, perThread);
+        }
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            double mixRate = runClients(mix, threads, perThread);
+            double readRate = runClients(reads, threads, perThread);
+            System.out.printf("%2d threads: mix %,10.0f stmts/s   selects %,10.0f stmts/s%n", threads, mixRate, readRate);
+        }
+    }
+
+    // Runs perThread statements on each of the given number of threads, each thread taking its own
+    // slice of the statements, and returns the statements per second over all threads
+    private static double runClients(String[] statements, int threads, int perThread) {
+        return runClients(new Engine(), statements, threads, perThread);
+    }
+
+    private static double runClients(Engine engine, String[] statements, int threads, int perThread) {
+        engine.executeSQL("CREATE TABLE users (id, name, age, city)");
+        engine.executeSQL("CREATE TABLE products (id, name, price, category)");
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            engine.executeSQL("INSERT INTO users VALUES (" + i + ", 'User" + i + "', " + (20 + random.nextInt(41)) + ", 'Boston')");
+            engine.executeSQL("INSERT INTO products VALUES (" + i + ", 'Product" + i + "', " + (50 + random.nextDouble() * 1000)
+                    + ", 'Toys')");
+        }
+
+        Thread[] clients = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * perThread;
+            clients[t] = new Thread(() -> {
+                for (int i = first; i < first + perThread; i++) {
+                    engine.executeSQL(statements[i]);
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread client : clients) {
+            client.start();
+        }
+        for (Thread client : clients) {
+            try {
+                client.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+        return threads * perThread / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    // Bytes the current thread allocates running the body once
+    private static long allocatedBy(Runnable body) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        body.run();
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private static ChainHashMap<String, Object> filled(ChainHashMap<String, Object> map, String[] keys, Object value) {
+        for (String key : keys) {
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    private static OpenHashMap<String, Object> filled(OpenHashMap<String, Object> map, String[] keys, Object value) {
+        for (String key : keys) {
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    private static Runnable hitLoop(Function<String, Object> get, String[] keys, int[] sink) {
+        return () -> {
+            for (String key : keys) {
+                sink[0] += get.apply(key) != null ? 1 : 0;
+            }
+        };
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Runs the body until it is warm, then prints the best throughput of the timed rounds
+    private static void report(String label, int operations, Runnable body) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            body.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double perSecond = operations / (best / 1_000_000_000.0);
+        System.out.printf("%-34s %,14.0f ops/s %10.1f ns/op%n", label, perSecond, (double) best / operations);
+    }
+
+    // The statement mix of Main.autoEvaluate, generated from a fixed seed
+    static String[] sampleStatements(Random random, int count) {
+        return sampleStatements(random, count, 10000);
+    }
+
+    // The same mix with row ids below idRange, for tables of about that many rows
+    static String[] sampleStatements(Random random, int count, int idRange) {
+        String[] cities = {"New York", "Los Angeles", "Chicago", "Boston", "Miami", "Seattle", "Austin", "Dallas", "Atlanta", "Denver"};
+        String[] categories = {"Electronics", "Appliances", "Clothing", "Furniture", "Toys", "Sports", "Books", "Beauty", "Garden"};
+        String[] statements = new String[count];
+        for (int i = 0; i < count; i++) {
+            int id = random.nextInt(idRange);
+            switch (random.nextInt(6)) {
+                case 0:
+                    statements[i] = "INSERT INTO users VALUES (" + id + ", 'User" + id + "', " + (random.nextInt(60) + 20)
+                            + ", '" + cities[random.nextInt(cities.length)] + "')";
+                    break;
+                case 1:
+                    statements[i] = "SELECT * FROM users";
+                    break;
+                case 2:
+                    statements[i] = "UPDATE users SET age = " + (random.nextInt(60) + 20) + " WHERE id = " + id;
+                    break;
+                case 3:
+                    statements[i] = "DELETE FROM products WHERE id = " + id;
+                    break;
+                case 4:
+                    double minPrice = 50 + random.nextDouble() * 200;
+                    statements[i] = "SELECT * FROM products WHERE price > " + minPrice + " AND price < " + (minPrice + random.nextDouble() * 500);
+                    break;
+                default:
+                    statements[i] = "UPDATE products SET price = " + (50 + random.nextDouble() * 1000)
+                            + " WHERE category = '" + categories[random.nextInt(categories.length)] + "'";
+            }
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,86 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Bitmap secondary index on a single column, built with CREATE BITMAP INDEX.
+ * Keeps a RoaringBitmap of row ordinals per distinct value, with ordinals shared by every bitmap
+ * index of the table (see RowOrdinals), so a WHERE clause comparing several such columns is
+ * answered by ANDing and ORing their bitmaps before any row is read (see Engine.matchBitmaps).
+ *
+ * Any comparison can be answered, not only "=": the bitmaps of all the distinct values the
+ * comparison holds for are ORed together, each value tested once the way Filter tests a cell. That
+ * reads every distinct value, so the index suits low-cardinality columns such as city, category
+ * or age. Values are kept as the storage returns them, and null values are left out as no
+ * comparison holds for them.
+ */
+public class BitmapIndex implements Index {
+    private final String name;
+    private final String column;
+    private final RowOrdinals ordinals;
+    private final OpenHashMap<String, RoaringBitmap> bitmaps = new OpenHashMap<>(); // rows by value
+
+    public BitmapIndex(String name, String column, RowOrdinals ordinals) {
+        this.name = name;
+        this.column = column;
+        this.ordinals = ordinals;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    // Table numbers the row in the RowOrdinals before adding it to its indexes
+    public void add(String cellValue, String rowKey) {
+        if (cellValue == null) {
+            return;
+        }
+        RoaringBitmap rows = bitmaps.get(cellValue);
+        if (rows == null) {
+            rows = new RoaringBitmap();
+            bitmaps.put(cellValue, rows);
+        }
+        rows.add(ordinals.get(rowKey));
+    }
+
+    public void remove(String cellValue, String rowKey) {
+        if (cellValue == null) {
+            return;
+        }
+        RoaringBitmap rows = bitmaps.get(cellValue);
+        if (rows != null) {
+            rows.remove(ordinals.get(rowKey));
+            if (rows.isEmpty()) {
+                bitmaps.remove(cellValue);
+            }
+        }
+    }
+
+    // Ordinals of the rows whose value passes the comparison. The bitmap may be the index's own,
+    // so callers only read it.
+    public RoaringBitmap match(Filter.TextComparison comparison) {
+        if (comparison.operator == Filter.EQ && !comparison.valueIsInt && !comparison.valueIsFloat) {
+            // Text that is not a number only equals the same text
+            RoaringBitmap rows = bitmaps.get(comparison.value);
+            return rows != null ? rows : new RoaringBitmap();
+        }
+        List<RoaringBitmap> matches = new ArrayList<>();
+        OpenHashMap<String, RoaringBitmap>.Cursor values = bitmaps.cursor();
+        while (values.next()) {
+            if (comparison.holds(values.key())) {
+                matches.add(values.value());
+            }
+        }
+        // A single match is also the index's own bitmap
+        return matches.size() == 1 ? matches.get(0) : RoaringBitmap.or(matches);
+    }
+
+    // Number of distinct values indexed
+    public int size() {
+        return bitmaps.size();
+    }
+}
@@ -0,0 +1,235 @@
+package edu.smu.smusql;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+ * Binary snapshot of every table, written by CHECKPOINT so a restart loads the tables directly
+ * instead of replaying the statements that built them.
+ *
+ * Layout, big-endian: a magic number and format version, the first log segment the snapshot does
+ * not cover, the table count, then per table its name, storage kind, columns with their declared
+ * types, index definitions (name, column, type), row count and rows (key, then one value per column), and an end marker.
+ * Strings are a byte length (-1 for null) and UTF-8 bytes.
+ *
+ * The snapshot is written to a temporary file, forced, and renamed over the previous one, so a
+ * crash leaves either the old snapshot or the new one. It is read back through memory-mapped
+ * windows of the file, which page in as they are read without copying through a read buffer, and
+ * indexes are rebuilt once each table's rows are in. Full scans come back in the same order as
+ * before; rows found through an index may come back in another order, as postings are hash sets.
+ */
+public class Checkpoint {
+    private static final String FILE_NAME = "checkpoint";
+    private static final int MAGIC = 0x534D5543; // "SMUC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int END_MARKER = 0x454E4421; // "END!"
+    private static final long WINDOW_BYTES = 1L << 30; // mapped at a time, since one mapping is limited to 2GB
+
+    private Checkpoint() {
+    }
+
+    public static Path file(Path directory) {
+        return directory.resolve(FILE_NAME);
+    }
+
+    // Writes the tables to the directory's snapshot, recording that replay resumes at firstSegment.
+    // Calls written with each table once its rows are out, so its lock can be released early.
+    // Returns the number of rows written.
+    public static long write(Path directory, long firstSegment, List<Table> tables, Consumer<Table> written) throws IOException {
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(firstSegment);
+            out.writeInt(tables.size());
+            for (Table table : tables) {
+                rows += writeTable(out, table);
+                written.accept(table);
+            }
+            out.writeInt(END_MARKER);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file(directory), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        WriteAheadLog.forceDirectory(directory);
+        return rows;
+    }
+
+    // Loads the directory's snapshot, passing each table to restored, and returns the first log
+    // segment to replay after it; 0 if there is no snapshot.
+    public static long load(Path directory, Consumer<Table> restored) throws IOException {
+        Path file = file(directory);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a checkpoint of this version: " + file);
+            }
+            long firstSegment = in.readLong();
+            int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; i++) {
+                restored.accept(readTable(in));
+            }
+            if (in.readInt() != END_MARKER) {
+                throw new IOException("Damaged checkpoint: " + file);
+            }
+            return firstSegment;
+        }
+    }
+
+    private static long writeTable(DataOutputStream out, Table table) throws IOException {
+        TableStorage storage = table.getStorage();
+        List<String> columns = table.getColumns();
+        writeString(out, table.getName());
+        writeString(out, storage.getKind());
+        out.writeInt(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            writeString(out, columns.get(i));
+            ColumnType declared = storage instanceof ColumnStorage ? ((ColumnStorage) storage).getDeclaredType(i) : null;
+            writeString(out, declared != null ? declared.name() : null);
+        }
+
+        List<Index> indexes = table.getIndexes();
+        out.writeInt(indexes.size());
+        for (Index index : indexes) {
+            writeString(out, index.getName());
+            writeString(out, index.getColumn());
+            writeString(out, index instanceof HashIndex ? "HASH" : index instanceof BitmapIndex ? "BITMAP" : "ORDERED");
+        }
+
+        out.writeLong(storage.size());
+        long rows = 0;
+        TableStorage.Cursor row = storage.scan();
+        while (row.next()) {
+            writeString(out, row.key());
+            for (int i = 0; i < columns.size(); i++) {
+                writeString(out, row.getString(i));
+            }
+            rows++;
+        }
+        if (rows != storage.size()) {
+            throw new IOException("Table " + table.getName() + " changed while it was written"); // the caller holds its lock
+        }
+        return rows;
+    }
+
+    private static Table readTable(MappedInput in) throws IOException {
+        String name = in.readString();
+        String kind = in.readString();
+        int columnCount = in.readInt();
+        List<String> columns = new ArrayList<>(columnCount);
+        ColumnType[] types = new ColumnType[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(in.readString());
+            String type = in.readString();
+            types[i] = type != null ? ColumnType.parse(type) : null;
+        }
+        TableStorage storage = TableStorage.create(kind, columns, types);
+        if (storage == null) {
+            throw new IOException("Unknown storage " + kind + " of table " + name);
+        }
+
+        int indexCount = in.readInt();
+        String[][] indexes = new String[indexCount][];
+        for (int i = 0; i < indexCount; i++) {
+            String indexName = in.readString();
+            String column = in.readString();
+            indexes[i] = new String[]{indexName, column, in.readString()};
+        }
+
+        Table table = new Table(name, columns, storage);
+        long rows = in.readLong();
+        String[] values = new String[columnCount];
+        for (long r = 0; r < rows; r++) {
+            String key = in.readString();
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = in.readString();
+            }
+            table.addRow(key, values); // storages copy the values they keep
+        }
+        table.commit(); // makes the rows visible to MVCC snapshots
+
+        // Built over all the rows at once rather than row by row
+        for (String[] index : indexes) {
+            table.createIndex(index[0], index[1], index[2]);
+        }
+        return table;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads the file through a mapped window, moving the window on when a read would run past it
+    private static class MappedInput {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart = 0;
+        private byte[] bytes = new byte[256];
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_BYTES));
+        }
+
+        // Makes sure the next count bytes are in the window
+        private void need(int count) throws IOException {
+            if (window.remaining() >= count) {
+                return;
+            }
+            long position = windowStart + window.position();
+            if (position + count > size) {
+                throw new IOException("Checkpoint ends early");
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, WINDOW_BYTES));
+        }
+
+        int readInt() throws IOException {
+            need(4);
+            return window.getInt();
+        }
+
+        long readLong() throws IOException {
+            need(8);
+            return window.getLong();
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            need(length);
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            window.get(bytes, 0, length);
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Columnar storage: one array per column, indexed by a row slot, instead of one map per row.
+ * INT columns are kept in an int[], DOUBLE columns in a double[] and STRING columns in a char[] of
+ * codes into a StringDictionary of the column, so scans read primitives, each distinct string is
+ * kept once, and no per-row objects besides the row key are kept. A STRING column whose distinct
+ * values outgrow the codes falls back to a String[]. Set smusql.dictionary=false to store every
+ * STRING column as a String[].
+ *
+ * A column's type is declared in CREATE TABLE or inferred from the first value stored in it.
+ * An inferred column only stays INT or DOUBLE while every value prints back exactly as it was
+ * written, and otherwise widens to STRING, so results are the same as with RowStorage.
+ * A declared column converts its values to the declared type and rejects values that do not fit.
+ * Slots of removed rows are kept on a free list and reused by later inserts.
+ */
+public class ColumnStorage implements TableStorage {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final boolean ENCODE_STRINGS = !"false".equals(System.getProperty("smusql.dictionary"));
+
+    private final ColumnType[] types;   // null until inferred from the first value
+    private final boolean[] declared;   // declared types reject values instead of widening
+    private final int[][] ints;         // per column, non-null only for INT columns
+    private final double[][] doubles;   // per column, non-null only for DOUBLE columns
+    private final char[][] codes;       // per column, non-null only for dictionary-encoded STRING columns
+    private final StringDictionary[] dictionaries;
+    private final String[][] strings;   // per column, non-null only for STRING columns not encoded
+
+    private String[] keys;              // row key per slot, null for a free slot
+    private OpenHashMap<String, Integer> slots = new OpenHashMap<>(); // row key -> slot
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int highWater = 0;          // slots at or above this have never been used
+    private int size = 0;
+
+    // One entry per column: its declared type, or null to infer it
+    public ColumnStorage(ColumnType[] declaredTypes) {
+        int columnCount = declaredTypes.length;
+        this.types = declaredTypes.clone();
+        this.declared = new boolean[columnCount];
+        this.ints = new int[columnCount][];
+        this.doubles = new double[columnCount][];
+        this.codes = new char[columnCount][];
+        this.dictionaries = new StringDictionary[columnCount];
+        this.strings = new String[columnCount][];
+        this.keys = new String[INITIAL_CAPACITY];
+        for (int i = 0; i < columnCount; i++) {
+            declared[i] = types[i] != null;
+            if (types[i] != null) {
+                allocate(i, types[i]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ColumnType getType(int column) {
+        return types[column] != null ? types[column] : ColumnType.STRING;
+    }
+
+    // Type given in CREATE TABLE, or null for a column whose type is inferred
+    public ColumnType getDeclaredType(int column) {
+        return declared[column] ? types[column] : null;
+    }
+
+    @Override
+    public void insert(String key, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            fit(i, values[i]);
+        }
+
+        Integer existing = slots.get(key);
+        int slot;
+        if (existing != null) {
+            slot = existing; // replaces the row stored under the same key
+        } else {
+            slot = allocateSlot();
+            keys[slot] = key;
+            slots.put(key, slot);
+            size++;
+        }
+        for (int i = 0; i < values.length; i++) {
+            write(slot, i, values[i]);
+        }
+    }
+
+    @Override
+    public void checkValue(int column, String value) {
+        if (declared[column] && !holds(column, value)) {
+            throw new IllegalArgumentException("Invalid " + types[column] + " value: " + value);
+        }
+    }
+
+    @Override
+    public int lookupCode(int column, String value) {
+        return codes[column] != null ? dictionaries[column].lookup(value) : -1;
+    }
+
+    @Override
+    public Cursor scan() {
+        return new SlotCursor(null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Cursor scan(int from, int to) {
+        return new SlotCursor(null, from, to);
+    }
+
+    @Override
+    public int getScanLimit() {
+        return highWater;
+    }
+
+    @Override
+    public Cursor scan(Iterable<String> keys) {
+        return new SlotCursor(keys.iterator(), 0, 0);
+    }
+
+    @Override
+    public void reserve(int rows) {
+        slots.ensureCapacity(size + rows);
+        int needed = highWater + Math.max(0, rows - freeCount); // free slots are used first
+        if (needed > keys.length) {
+            grow(needed);
+        }
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        Integer slot = slots.get(oldKey);
+        if (slot == null || oldKey.equals(newKey)) {
+            return;
+        }
+        Integer replaced = slots.get(newKey);
+        if (replaced != null) {
+            slots.remove(newKey);
+            release(replaced);
+        }
+        slots.remove(oldKey);
+        slots.put(newKey, slot);
+        keys[slot] = newKey;
+    }
+
+    @Override
+    public void addKeyMapStats(HashMapStats stats, boolean reset) {
+        slots.addStats(stats, reset);
+    }
+
+    @Override
+    public String getKind() {
+        return "COLUMNAR";
+    }
+
+    @Override
+    public void commit() {
+        // Writes are visible as soon as they are made
+    }
+
+    // Makes sure the column can hold the value, widening an inferred column if needed
+    private void fit(int column, String value) {
+        checkValue(column, value);
+        if (types[column] == null) {
+            types[column] = ColumnType.infer(value);
+            allocate(column, types[column]);
+        } else if (!holds(column, value)) {
+            widenToString(column);
+        }
+    }
+
+    // True if the column stores the value; inferred columns only take values that print back unchanged
+    private boolean holds(int column, String value) {
+        switch (types[column]) {
+            case INT: {
+                Integer parsed = ColumnType.parseInt(value);
+                return parsed != null && (declared[column] || Integer.toString(parsed).equals(value));
+            }
+            case DOUBLE: {
+                Double parsed = ColumnType.parseDouble(value);
+                return parsed != null && (declared[column] || Double.toString(parsed).equals(value));
+            }
+            default:
+                return true;
+        }
+    }
+
+    private void write(int slot, int column, String value) {
+        switch (types[column]) {
+            case INT:
+                ints[column][slot] = Integer.parseInt(value);
+                break;
+            case DOUBLE:
+                doubles[column][slot] = Double.parseDouble(value);
+                break;
+            default:
+                if (codes[column] != null) {
+                    int code = dictionaries[column].encode(value);
+                    if (code >= 0) {
+                        dictionaries[column].release(codes[column][slot]); // the value the slot held before, if any
+                        codes[column][slot] = (char) code;
+                        break;
+                    }
+                    decode(column); // one distinct value too many for the codes
+                }
+                strings[column][slot] = value;
+        }
+    }
+
+    private String read(int slot, int column) {
+        switch (types[column]) {
+            case INT:
+                return Integer.toString(ints[column][slot]);
+            case DOUBLE:
+                return Double.toString(doubles[column][slot]);
+            default:
+                return codes[column] != null ? dictionaries[column].decode(codes[column][slot]) : strings[column][slot];
+        }
+    }
+
+    private void allocate(int column, ColumnType type) {
+        switch (type) {
+            case INT:
+                ints[column] = new int[keys.length];
+                break;
+            case DOUBLE:
+                doubles[column] = new double[keys.length];
+                break;
+            default:
+                if (ENCODE_STRINGS) {
+                    codes[column] = new char[keys.length];
+                    dictionaries[column] = new StringDictionary();
+                } else {
+                    strings[column] = new String[keys.length];
+                }
+        }
+    }
+
+    // Rewrites an INT or DOUBLE column as the text of its values
+    private void widenToString(int column) {
+        String[] text = new String[keys.length];
+        for (int slot = 0; slot < highWater; slot++) {
+            if (keys[slot] != null) {
+                text[slot] = read(slot, column);
+            }
+        }
+        ints[column] = null;
+        doubles[column] = null;
+        strings[column] = text;
+        types[column] = ColumnType.STRING;
+        if (ENCODE_STRINGS) {
+            encode(column);
+        }
+    }
+
+    // Replaces a String[] column by codes, unless it has more distinct values than codes
+    private void encode(int column) {
+        StringDictionary dictionary = new StringDictionary();
+        char[] encoded = new char[keys.length];
+        for (int slot = 0; slot < highWater; slot++) {
+            if (keys[slot] != null) {
+                int code = dictionary.encode(strings[column][slot]);
+                if (code < 0) {
+                    return;
+                }
+                encoded[slot] = (char) code;
+            }
+        }
+        codes[column] = encoded;
+        dictionaries[column] = dictionary;
+        strings[column] = null;
+    }
+
+    // Replaces the codes of a column by its values in a String[]
+    private void decode(int column) {
+        String[] text = new String[keys.length];
+        for (int slot = 0; slot < highWater; slot++) {
+            text[slot] = dictionaries[column].decode(codes[column][slot]); // null for free slots, code 0
+        }
+        codes[column] = null;
+        dictionaries[column] = null;
+        strings[column] = text;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == keys.length) {
+            grow(keys.length * 2);
+        }
+        return highWater++;
+    }
+
+    // Frees a slot whose key has already been taken out of slots
+    private void release(int slot) {
+        keys[slot] = null;
+        for (String[] column : strings) {
+            if (column != null) {
+                column[slot] = null; // let the text be collected
+            }
+        }
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] != null) {
+                dictionaries[i].release(codes[i][slot]);
+                codes[i][slot] = 0;
+            }
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        for (int i = 0; i < types.length; i++) {
+            if (ints[i] != null) {
+                ints[i] = Arrays.copyOf(ints[i], capacity);
+            }
+            if (doubles[i] != null) {
+                doubles[i] = Arrays.copyOf(doubles[i], capacity);
+            }
+            if (strings[i] != null) {
+                strings[i] = Arrays.copyOf(strings[i], capacity);
+            }
+            if (codes[i] != null) {
+                codes[i] = Arrays.copyOf(codes[i], capacity);
+            }
+        }
+    }
+
+    // Walks slots in order, or the slots of the given keys
+    private class SlotCursor implements Cursor {
+        private final Iterator<String> lookups; // null to walk every slot
+        private final OpenHashMap<String, Integer>.Cursor keyCursor = slots.cursor();
+        private int slot;
+        private final int limit; // slot a full walk stops at
+
+        SlotCursor(Iterator<String> lookups, int from, int to) {
+            this.lookups = lookups;
+            this.slot = from - 1;
+            this.limit = to;
+        }
+
+        @Override
+        public boolean next() {
+            if (lookups != null) {
+                while (lookups.hasNext()) {
+                    if (keyCursor.seek(lookups.next())) {
+                        slot = keyCursor.value();
+                        return true;
+                    }
+                }
+                keyCursor.end(); // removals through the cursor leave shrinking to the end
+                return false;
+            }
+            while (++slot < highWater && slot < limit) {
+                if (keys[slot] != null) {
+                    return true;
+                }
+            }
+            keyCursor.end();
+            return false;
+        }
+
+        @Override
+        public String key() {
+            return keys[slot];
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return types[column];
+        }
+
+        @Override
+        public String getString(int column) {
+            return read(slot, column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return ints[column][slot];
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return doubles[column][slot];
+        }
+
+        @Override
+        public int getCode(int column) {
+            return codes[column] != null ? codes[column][slot] : -1;
+        }
+
+        @Override
+        public void set(int column, String value) {
+            fit(column, value);
+            write(slot, column, value);
+        }
+
+        @Override
+        public void remove() {
+            if (lookups == null) {
+                keyCursor.seek(keys[slot]);
+            }
+            keyCursor.remove();
+            release(slot);
+        }
+    }
+}
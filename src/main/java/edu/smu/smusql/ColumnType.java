@@ -0,0 +1,66 @@
+package edu.smu.smusql;
+
+/*
+ * Type of a column in typed storage, declared in CREATE TABLE (e.g. "age INT") or inferred from the first value stored.
+ */
+public enum ColumnType {
+    INT,
+    DOUBLE,
+    STRING;
+
+    // Maps a type name from CREATE TABLE to a ColumnType, or null if it is not one
+    public static ColumnType parse(String name) {
+        switch (name.toUpperCase()) {
+            case "INT":
+            case "INTEGER":
+                return INT;
+            case "DOUBLE":
+            case "FLOAT":
+            case "REAL":
+            case "DECIMAL":
+                return DOUBLE;
+            case "STRING":
+            case "TEXT":
+            case "VARCHAR":
+                return STRING;
+            default:
+                return null;
+        }
+    }
+
+    // Narrowest type that prints the value back exactly as written, so "7" is INT but "007" is STRING
+    public static ColumnType infer(String value) {
+        Integer intValue = parseInt(value);
+        if (intValue != null && intValue.toString().equals(value)) {
+            return INT;
+        }
+        Double doubleValue = parseDouble(value);
+        if (doubleValue != null && doubleValue.toString().equals(value)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    // The value as an int if it is a plain integer literal, else null
+    public static Integer parseInt(String value) {
+        Filter.NumberParser number = new Filter.NumberParser();
+        return number.parseInt(value) ? number.intValue : null;
+    }
+
+    // The value as a double if it is a plain decimal literal, else null.
+    // Java-only forms such as "1f", "0x1p3", "NaN" or "Infinity" stay strings.
+    public static Double parseDouble(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (!((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E')) {
+                return null;
+            }
+        }
+        Filter.NumberParser number = new Filter.NumberParser();
+        return number.parseDouble(value) ? number.doubleValue : null;
+    }
+}
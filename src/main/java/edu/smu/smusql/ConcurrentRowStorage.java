@@ -0,0 +1,166 @@
+package edu.smu.smusql;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+
+/*
+ * Row storage for tables written by many clients at once, chosen with USING CONCURRENT.
+ * Rows are String arrays in a StripedHashMap, replaced whole rather than changed in place, so a
+ * reader always sees a complete row. The Engine lets statements that write a single key share the
+ * table lock, holding the key's stripe lock instead (see lockFor), so point writes to different
+ * keys run side by side; statements that scan still lock the table for themselves.
+ * Full walks are weakly consistent and come in stripe order rather than insertion order.
+ */
+public class ConcurrentRowStorage implements TableStorage {
+    private final StripedHashMap<String, String[]> dataList = new StripedHashMap<>(); // rows by key
+
+    @Override
+    public int size() {
+        return dataList.size();
+    }
+
+    @Override
+    public void insert(String key, String[] values) {
+        dataList.put(key, values.clone());
+    }
+
+    @Override
+    public ColumnType getType(int column) {
+        return ColumnType.STRING;
+    }
+
+    @Override
+    public void checkValue(int column, String value) {
+        // Rows hold any text
+    }
+
+    @Override
+    public Cursor scan() {
+        return new StripeCursor(null, dataList.cursor());
+    }
+
+    @Override
+    public Cursor scan(Iterable<String> keys) {
+        return new StripeCursor(keys.iterator(), null);
+    }
+
+    // Ranges of a full scan are ranges of stripes
+    @Override
+    public Cursor scan(int from, int to) {
+        return new StripeCursor(null, dataList.cursor(from, to));
+    }
+
+    @Override
+    public int getScanLimit() {
+        return dataList.getStripeCount();
+    }
+
+    @Override
+    public void reserve(int rows) {
+        dataList.ensureCapacity(rows);
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        String[] row = dataList.get(oldKey);
+        if (row != null) {
+            dataList.remove(oldKey);
+            dataList.put(newKey, row);
+        }
+    }
+
+    @Override
+    public void addKeyMapStats(HashMapStats stats, boolean reset) {
+        dataList.addStats(stats, reset);
+    }
+
+    @Override
+    public String getKind() {
+        return "CONCURRENT";
+    }
+
+    @Override
+    public void commit() {
+        // Writes are visible as soon as they are made
+    }
+
+    // Lock that keeps other writers off the key while a statement reads and changes its row
+    public Lock lockFor(String key) {
+        return dataList.lockFor(key);
+    }
+
+    public StripedHashMap<String, String[]> getDataList() {
+        return dataList;
+    }
+
+    // Walks the stripes, or looks up the given keys one by one
+    private class StripeCursor implements Cursor {
+        private final Iterator<String> lookups; // null to walk every row
+        private final StripedHashMap<String, String[]>.Cursor entries;
+        private String key;
+        private String[] row;
+
+        StripeCursor(Iterator<String> lookups, StripedHashMap<String, String[]>.Cursor entries) {
+            this.lookups = lookups;
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean next() {
+            if (lookups == null) {
+                if (!entries.next()) {
+                    return false;
+                }
+                key = entries.key();
+                row = entries.value();
+                return true;
+            }
+            while (lookups.hasNext()) {
+                key = lookups.next();
+                row = dataList.get(key);
+                if (row != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String key() {
+            return key;
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            return row[column];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(row[column]);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(row[column]);
+        }
+
+        @Override
+        public void set(int column, String value) {
+            String[] changed = row.clone();
+            changed[column] = value;
+            dataList.put(key, changed);
+            row = changed;
+        }
+
+        @Override
+        public void remove() {
+            dataList.remove(key);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package edu.smu.smusql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Reads the rows of a file for COPY: one row per line, no header, values separated by commas.
+ * Values are written as they would be in VALUES, so text is in single quotes, and a comma inside
+ * quotes belongs to the value. Values are kept exactly as written, apart from surrounding spaces.
+ *
+ * The file is read through a channel into one buffer that is reused for the whole file, and each
+ * line is split in place, so the only objects made per row are the value strings. A line that does
+ * not fit the buffer grows it. Blank lines are skipped and a "\r\n" line ending is accepted.
+ */
+public class CsvReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final int columnCount;
+    private final int estimatedRows;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES); // in read mode between calls
+    private boolean endOfFile = false;
+    private long line = 0;
+
+    public CsvReader(Path file, int columnCount) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.columnCount = columnCount;
+        buffer.flip();
+        fill();
+
+        // Rows in the first buffer, scaled up to the size of the file
+        int lines = 0;
+        byte[] bytes = buffer.array();
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (bytes[i] == '\n') {
+                lines++;
+            }
+        }
+        long size = channel.size();
+        if (endOfFile || buffer.remaining() == 0) {
+            estimatedRows = lines + (buffer.hasRemaining() ? 1 : 0);
+        } else {
+            estimatedRows = (int) Math.min(Integer.MAX_VALUE, Math.max(1, lines) * size / buffer.remaining());
+        }
+    }
+
+    // Rough number of rows in the file, for sizing the table before loading it
+    public int estimateRows() {
+        return estimatedRows;
+    }
+
+    // Line number of the row last read
+    public long getLine() {
+        return line;
+    }
+
+    // Reads the next row into values; false at the end of the file
+    public boolean next(String[] values) throws IOException {
+        while (true) {
+            int end = findLineEnd();
+            if (end < 0) {
+                return false;
+            }
+            int start = buffer.position();
+            buffer.position(end < buffer.limit() ? end + 1 : end);
+            line++;
+            if (end > start && buffer.array()[end - 1] == '\r') {
+                end--;
+            }
+            if (!isBlank(start, end)) {
+                split(start, end, values);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Index of the '\n' ending the line at the buffer's position, reading more of the file as
+    // needed; the buffer's limit for a last line without one, or -1 at the end of the file
+    private int findLineEnd() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            byte[] bytes = buffer.array();
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            if (endOfFile) {
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            scanned = buffer.remaining(); // where the unscanned bytes start once compacted
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2); // a line longer than the buffer
+                larger.put(buffer);
+                larger.flip();
+                buffer = larger;
+            }
+            fill();
+        }
+    }
+
+    // Moves the unread bytes to the front of the buffer and reads after them
+    private void fill() throws IOException {
+        buffer.compact();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    private boolean isBlank(int start, int end) {
+        byte[] bytes = buffer.array();
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void split(int start, int end, String[] values) {
+        byte[] bytes = buffer.array();
+        int count = 0;
+        int fieldStart = start;
+        boolean quoted = false;
+        for (int i = start; i <= end; i++) {
+            if (i < end && bytes[i] == '\'') {
+                quoted = !quoted;
+            } else if (i == end || (bytes[i] == ',' && !quoted)) {
+                if (count == columnCount) {
+                    throw new IllegalArgumentException("Expected " + columnCount + " values, found more");
+                }
+                values[count++] = value(bytes, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (count != columnCount) {
+            Arrays.fill(values, count, columnCount, null);
+            throw new IllegalArgumentException("Expected " + columnCount + " values, found " + count);
+        }
+    }
+
+    private static String value(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] == ' ' || bytes[start] == '\t')) {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+}
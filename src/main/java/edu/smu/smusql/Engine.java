@@ -1,494 +1,1417 @@
-package edu.smu.smusql;
-
-import java.util.*;
-import java.util.stream.Collectors;
-
-public class Engine {
-
-    private HashMap<String, Table> tableMap = new HashMap<>();
-
-
-    public String executeSQL(String query) {
-        String[] tokens = query.trim().split("\\s+");
-        String command = tokens[0].toUpperCase();
-
-        switch (command) {
-            case "CREATE":
-                return create(tokens);
-            case "INSERT":
-                return insert(tokens);
-            case "SELECT":
-                return select(tokens);
-            case "UPDATE":
-                return update(tokens);
-            case "DELETE":
-                return delete(tokens);
-            default:
-                return "ERROR: Unknown command";
-        }
-    }
-
-    public String insert(String[] tokens) {
-        if (tokens.length < 5 || !tokens[1].equalsIgnoreCase("INTO")) {
-            return "ERROR: Invalid INSERT INTO syntax.";
-        }
-    
-        String tableName = tokens[2];
-    
-        // Look up the table in the hash map
-        Table tbl = tableMap.get(tableName);
-        if (tbl == null) {
-            return "ERROR: No such table: " + tableName;
-        }
-    
-        // Extract the values list between parentheses
-        String valueList = queryBetweenParentheses(tokens, 4); // Assuming this method is already defined
-        if (valueList.startsWith("ERROR:")) {
-            return valueList; // Return the error from queryBetweenParentheses
-        }
-    
-        // Split and trim values
-        List<String> values = Arrays.stream(valueList.split(","))
-                                    .map(String::trim)
-                                    .collect(Collectors.toList());
-    
-        List<String> columns = tbl.getColumns();
-    
-        // Ensure the number of values matches the number of columns
-        if (values.size() != columns.size()) {
-            return "ERROR: Column count doesn't match value count.";
-        }
-    
-        Map<String, String> rowData = new HashMap<>();
-        for (int i = 0; i < columns.size(); i++) {
-            rowData.put(columns.get(i), values.get(i));
-        }
-    
-        // Create a unique key for the row
-        String rowKey = generateUniqueKey(rowData); // Implement this method as needed
-    
-        // Add the new row to the table with the key
-        tbl.addRow(rowKey, rowData); 
-    
-        return "Row inserted into " + tableName;
-    }
-
-    public String delete(String[] tokens) {
-        if (!tokens[1].toUpperCase().equals("FROM")) {
-            return "ERROR: Invalid DELETE syntax";
-        }
-    
-        String tableName = tokens[2];
-        Table tbl = tableMap.get(tableName); // Access the table directly using the hash map
-    
-        if (tbl == null) {
-            return "Error: no such table: " + tableName;
-        }
-    
-        // Get the data from the table (assuming it's stored in a chain hash map)
-        ChainHashMap<String, Map<String, String>> tableData = tbl.getDataList(); // Assuming getData() returns your ChainHashMap
-        List<String> columns = tbl.getColumns();
-    
-        // Initialize whereClauseConditions list
-        List<String[]> whereClauseConditions = new ArrayList<>();
-    
-        // Parse WHERE clause conditions
-        if (tokens.length > 3 && tokens[3].toUpperCase().equals("WHERE")) {
-            for (int i = 4; i < tokens.length; i++) {
-                if (tokens[i].toUpperCase().equals("AND") || tokens[i].toUpperCase().equals("OR")) {
-                    // Add AND/OR conditions
-                    whereClauseConditions.add(new String[] {tokens[i].toUpperCase(), null, null, null});
-                } else if (isOperator(tokens[i])) {
-                    // Add condition with operator (column, operator, value)
-                    String column = tokens[i - 1];
-                    String operator = tokens[i];
-                    String value = tokens[i + 1];
-                    whereClauseConditions.add(new String[] {null, column, operator, value});
-                    i += 1; // Skip the value since it has been processed
-                }
-            }
-        }
-    
-        StringBuilder result = new StringBuilder();
-        result.append(String.join("\t", columns)).append("\n"); // Print column headers
-    
-        int ct = 0; // count number of rows affected.
-        
-        // Iterate over the keys in the hash map and check for matches
-        Iterable<String> keys = tableData.keys();
-        for (String key : keys) {
-            Map<String, String> row = tableData.get(key);
-            boolean match = evaluateWhereConditions(row, whereClauseConditions);
-    
-            if (match) {
-                tableData.remove(key); // Remove the matching entry
-                ct++; // Increment count of affected rows
-            }
-        }
-    
-        return "Rows deleted from " + tableName + ". " + ct + " rows affected.";
-    }
-
-    public String select(String[] tokens) {
-    if (!tokens[1].equals("*") || !tokens[2].equalsIgnoreCase("FROM")) {
-        return "ERROR: Invalid SELECT syntax.";
-    }
-
-    String tableName = tokens[3];
-    
-    // Use HashMap for direct table lookup
-    Table tbl = tableMap.get(tableName);
-    if (tbl == null) {
-        return "ERROR: No such table: " + tableName;
-    }
-
-    ChainHashMap<String, Map<String, String>> tableData = tbl.getDataList(); // Assuming getData() returns your ChainHashMap
-    List<String> columns = tbl.getColumns();
-
-    // Initialize whereClauseConditions list
-    List<String[]> whereClauseConditions = new ArrayList<>();
-
-    // Parse WHERE clause conditions
-    if (tokens.length > 4 && tokens[4].equalsIgnoreCase("WHERE")) {
-        for (int i = 5; i < tokens.length; i++) {
-            if (tokens[i].equalsIgnoreCase("AND") || tokens[i].equalsIgnoreCase("OR")) {
-                // Add AND/OR conditions
-                whereClauseConditions.add(new String[] {tokens[i].toUpperCase(), null, null, null});
-            } else if (isOperator(tokens[i])) {
-                // Add condition with operator (column, operator, value)
-                String column = tokens[i - 1];
-                String operator = tokens[i];
-                String value = tokens[i + 1];
-                whereClauseConditions.add(new String[] {null, column, operator, value});
-                i += 1; // Skip the value since it has been processed
-            }
-        }
-    }
-
-    StringBuilder result = new StringBuilder();
-    result.append(String.join("\t", columns)).append("\n"); // Print column headers
-
-    // Filter rows based on WHERE clause
-    for (String key : tableData.keys()) {
-        Map<String, String> row = tableData.get(key);
-        boolean match = evaluateWhereConditions(row, whereClauseConditions);
-        if (match) {
-            for (String column : columns) {
-                result.append(row.getOrDefault(column, "NULL")).append("\t");
-            }
-            result.append("\n");
-        }
-    }
-
-    return result.toString();
-    }
-
-    public String update(String[] tokens) {
-        if (tokens.length < 6 || !tokens[2].equalsIgnoreCase("SET")) {
-            return "ERROR: Invalid UPDATE syntax.";
-        }
-    
-        String tableName = tokens[1];
-        Table tbl = tableMap.get(tableName);
-        if (tbl == null) {
-            return "Error: no such table: " + tableName;
-        }
-    
-        String setColumn = tokens[3]; // column to be updated
-        String newValue = tokens[5]; // new value for above column
-    
-        List<String> columns = tbl.getColumns();
-    
-        // Retrieve table data
-        ChainHashMap<String, Map<String, String>> tableData = tbl.getDataList(); // Assuming getData() returns your ChainHashMap
-    
-        // Initialize whereClauseConditions list
-        List<String[]> whereClauseConditions = new ArrayList<>();
-    
-        // Parse WHERE clause conditions
-        if (tokens.length > 6 && tokens[6].equalsIgnoreCase("WHERE")) {
-            for (int i = 7; i < tokens.length; i++) {
-                if (tokens[i].equalsIgnoreCase("AND") || tokens[i].equalsIgnoreCase("OR")) {
-                    // Add AND/OR conditions
-                    whereClauseConditions.add(new String[]{tokens[i].toUpperCase(), null, null, null});
-                } else if (isOperator(tokens[i])) {
-                    // Add condition with operator (column, operator, value)
-                    String column = tokens[i - 1];
-                    String operator = tokens[i];
-                    String value = tokens[i + 1];
-                    whereClauseConditions.add(new String[]{null, column, operator, value});
-                    i += 1; // Skip the value since it has been processed
-                }
-            }
-        }
-    
-        StringBuilder result = new StringBuilder();
-        result.append(String.join("\t", columns)).append("\n"); // Print column headers
-    
-        // Update rows based on WHERE clause
-        int ct = 0; // count number of affected rows
-        for (String key : tableData.keys()) { // Ensure you have a keys() method to get all keys
-            Map<String, String> row = tableData.get(key);
-            boolean match = evaluateWhereConditions(row, whereClauseConditions);
-            if (match) {
-                row.put(setColumn, newValue);
-                ct++;
-            }
-        }
-    
-        return "Table " + tableName + " updated. " + ct + " rows affected.";
-    }
-
-    public String create(String[] tokens) { 
-        if (!tokens[1].equalsIgnoreCase("TABLE")) {
-            return "ERROR: Invalid CREATE TABLE syntax";
-        }
-
-        String tableName = tokens[2];
-
-        // Check if the table already exists
-        if (tableMap.containsKey(tableName)) {
-            return "ERROR: Table already exists";
-        }
-
-        // Extract the column list between parentheses
-        String columnList = queryBetweenParentheses(tokens, 3);
-        List<String> columns = Arrays.stream(columnList.split(","))
-                                     .map(String::trim)
-                                     .collect(Collectors.toList());
-
-        // Create the new table and add it to the hash map
-        Table newTable = new Table(tableName, columns);
-        tableMap.put(tableName, newTable); // Store table by name
-
-        return "Table " + tableName + " created";
-    }
-
-    //Additional methods
-    // private String queryBetweenParentheses(String[] tokens, int index) {
-    //     // Ensure the index is valid
-    //     if (index < tokens.length && tokens[index].startsWith("(") && tokens[index].endsWith(")")) {
-    //         // Remove parentheses and return the content
-    //         return tokens[index].substring(1, tokens[index].length() - 1);
-    //     }
-    //     return "ERROR: Invalid input does not start with ( or end with )"; // or handle the error appropriately
-    // }
-
-    private String queryBetweenParentheses(String[] tokens, int startIndex) {
-        StringBuilder result = new StringBuilder();
-        for (int i = startIndex; i < tokens.length; i++) {
-            result.append(tokens[i]).append(" ");
-        }
-        return result.toString().trim().replaceAll("\\(", "").replaceAll("\\)", "");
-    }
-
-// // Helper method to determine if a string is an operator
-// private boolean isOperator(String token) {
-//     if (token == null) {
-//         return false; // Handle null input
-//     }
-//     Set<String> operators = new HashSet<>(Set.of("=", ">", "<", ">=", "<="));
-//     return operators.contains(token);
-// }
-
-// private boolean evaluateWhereConditions(Map<String, String> row, List<String[]> conditions) {
-//     boolean overallMatch = false; // Start with false for OR logic
-//     boolean currentConditionResult = true; // Evaluate each condition independently
-    
-//     // Loop through conditions to evaluate AND/OR logic correctly
-//     for (String[] condition : conditions) {
-//         if (condition[0] != null) { // Logical operator (AND/OR)
-//             if (condition[0].equals("AND")) {
-//                 overallMatch = overallMatch && currentConditionResult;
-//             } else if (condition[0].equals("OR")) {
-//                 overallMatch = overallMatch || currentConditionResult;
-//             }
-//             currentConditionResult = true; // Reset for the next condition
-//         } else {
-//             // Evaluate single condition
-//             String column = condition[1];
-//             String operator = condition[2];
-//             String value = condition[3];
-//             String rowValue = row.get(column);
-//             boolean match = evaluateCondition(rowValue, operator, value);
-            
-//             // Update `currentConditionResult` for this condition
-//             currentConditionResult = currentConditionResult && match;
-//         }
-//     }
-    
-//     // Final combination of the last evaluated condition
-//     overallMatch = overallMatch || currentConditionResult;
-    
-//     return overallMatch;
-// }
-
-
-// // Helper method to evaluate a single condition
-// private boolean evaluateCondition(String columnValue, String operator, String value) {
-//     if (columnValue == null || value == null) return false;
-
-//     // Compare strings as numbers if possible
-//     boolean isNumeric = isNumeric(columnValue) && isNumeric(value);
-    
-//     if (isNumeric) {
-//         double columnNumber = Double.parseDouble(columnValue);
-//         double valueNumber = Double.parseDouble(value);
-
-//         switch (operator) {
-//             case "=": return columnNumber == valueNumber;
-//             case ">": return columnNumber > valueNumber;
-//             case "<": return columnNumber < valueNumber;
-//             case ">=": return columnNumber >= valueNumber;
-//             case "<=": return columnNumber <= valueNumber;
-//             default: throw new IllegalArgumentException("Invalid operator: " + operator);
-//         }
-//     } else {
-//         switch (operator) {
-//             case "=": return columnValue.equals(value);
-//             case ">": return columnValue.compareTo(value) > 0;
-//             case "<": return columnValue.compareTo(value) < 0;
-//             case ">=": return columnValue.compareTo(value) >= 0;
-//             case "<=": return columnValue.compareTo(value) <= 0;
-//             default: throw new IllegalArgumentException("Invalid operator: " + operator);
-//         }
-//     }
-// }
-
-//     // Helper method to determine if a string is numeric
-//     private boolean isNumeric(String str) {
-//         try {
-//             Double.parseDouble(str);
-//             return true;
-//         } catch (NumberFormatException e) {
-//             return false;
-//         }
-//     }
-    private boolean isOperator(String token) {
-        return token.equals("=") || token.equals(">") || token.equals("<") || token.equals(">=") || token.equals("<=");
-    }
-
-    private boolean evaluateWhereConditions(Map<String, String> row, List<String[]> conditions) {
-        // Edge case: If no conditions exist, return true (no filter applied).
-        if (conditions.isEmpty()) {
-            return true;
-        }
-
-        List<Boolean> results = new ArrayList<>();
-        List<String> operators = new ArrayList<>();
-
-        // Parse and evaluate each condition
-        for (String[] condition : conditions) {
-            if (condition[0] != null) {
-                // This is an AND/OR operator
-                operators.add(condition[0]);
-            } else {
-                // This is a condition (column, operator, value)
-                String column = condition[1];
-                String operator = condition[2];
-                String value = condition[3];
-
-                boolean result = evaluateCondition(row, column, operator, value);
-                results.add(result);
-            }
-        }
-
-        // Edge case: If no results (e.g., invalid conditions), return false.
-        if (results.isEmpty()) {
-            return false;
-        }
-
-        // Combine the results using the operators
-        return combineConditions(results, operators);
-    }
-
-    private boolean evaluateCondition(Map<String, String> row, String column, String operator, String value) {
-        String columnValue = row.get(column);
-    
-        // If column value or the value to compare is null, return false for any comparison
-        if (columnValue == null || value == null) {
-            return false;
-        }
-    
-        // Check if columnValue and value are numeric and handle accordingly
-        try {
-            // Attempt to parse as integer
-            int columnIntValue = Integer.parseInt(columnValue);
-            int comparisonValue = Integer.parseInt(value);
-    
-            return compareIntegers(operator, columnIntValue, comparisonValue);
-        } catch (NumberFormatException e1) {
-            // If integer parsing fails, try parsing as float
-            try {
-                float columnFloatValue = Float.parseFloat(columnValue);
-                float comparisonValue = Float.parseFloat(value);
-    
-                return compareFloats(operator, columnFloatValue, comparisonValue);
-            } catch (NumberFormatException e2) {
-                // If both integer and float parsing fail, treat values as strings
-                return compareStrings(operator, columnValue, value);
-            }
-        }
-    }
-    
-    // Method to compare integer values
-    private boolean compareIntegers(String operator, int columnValue, int comparisonValue) {
-        switch (operator) {
-            case "=": return columnValue == comparisonValue;
-            case "!=": return columnValue != comparisonValue;
-            case "<": return columnValue < comparisonValue;
-            case ">": return columnValue > comparisonValue;
-            case "<=": return columnValue <= comparisonValue;
-            case ">=": return columnValue >= comparisonValue;
-            default: return false;
-        }
-    }
-    
-    // Method to compare float values
-    private boolean compareFloats(String operator, float columnValue, float comparisonValue) {
-        switch (operator) {
-            case "=": return columnValue == comparisonValue;
-            case "!=": return columnValue != comparisonValue;
-            case "<": return columnValue < comparisonValue;
-            case ">": return columnValue > comparisonValue;
-            case "<=": return columnValue <= comparisonValue;
-            case ">=": return columnValue >= comparisonValue;
-            default: return false;
-        }
-    }
-    
-    // Method to compare string values
-    private boolean compareStrings(String operator, String columnValue, String comparisonValue) {
-        switch (operator) {
-            case "=": return columnValue.equals(comparisonValue);
-            case "!=": return !columnValue.equals(comparisonValue);
-            default: return false;
-        }
-    }
-    
-
-    private boolean combineConditions(List<Boolean> results, List<String> operators) {
-        // Start with the first result as the initial value
-        boolean current = results.get(0);
-
-        // Combine results using the operators
-        for (int i = 0; i < operators.size(); i++) {
-            String operator = operators.get(i);
-            boolean next = results.get(i + 1);
-
-            if (operator.equals("AND")) {
-                current = current && next;
-            } else if (operator.equals("OR")) {
-                current = current || next;
-            }
-        }
-
-        return current;
-    }
-
-    private String generateUniqueKey(Map<String, String> rowData) {
-        // Assuming "id" is a column in rowData that contains a unique identifier
-        return rowData.get("id"); // Change "id" to your actual column name
-    }
-    
-}
+package edu.smu.smusql;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class Engine {
+
+    private ConcurrentHashMap<String, Table> tableMap = new ConcurrentHashMap<>(); // clients may create tables concurrently
+    private static final String KEY_COLUMN = "id"; // rows are keyed by this column in the table storage
+    private PlanCache planCache; // parsed statements by shape, so repeated shapes skip parsing
+    private final LongAdder keyLookups = new LongAdder(); // number of statements answered with a single key lookup
+    private final LongAdder indexScans = new LongAdder(); // number of statements answered from an ordered index range
+    private final LongAdder hashLookups = new LongAdder(); // number of statements answered from a hash index posting list
+    private final LongAdder bitmapLookups = new LongAdder(); // number of statements answered from bitmap indexes
+    // storage of tables created without USING: ROW, or COLUMNAR / MVCC / CONCURRENT with -Dsmusql.storage=...
+    private volatile String defaultStorage = System.getProperty("smusql.storage", "ROW").toUpperCase();
+    private final LongAdder parallelScans = new LongAdder(); // number of full scans split across the scan pool
+    // Full scans of tables with at least parallelThreshold rows are split across parallelism threads
+    private volatile int parallelism = Integer.getInteger("smusql.parallelism", Runtime.getRuntime().availableProcessors());
+    private volatile int parallelThreshold = Integer.getInteger("smusql.parallelThreshold", 100000);
+    private ForkJoinPool scanPool; // started on first use
+    private static final int COPY_BATCH_ROWS = 1000; // rows of a COPY per log record
+    private static final long VERSION_COLLECTION_MILLIS = 100; // how often old row versions of MVCC tables are dropped
+    private ScheduledExecutorService versionCollector; // started with the first MVCC table
+    private volatile WriteAheadLog log; // changes are logged here before they are acknowledged, if set
+    private Path logDirectory;          // holds the log segments and the checkpoint
+    // Shared by CREATE TABLE, exclusive for CHECKPOINT, so no table is created while it cuts the log
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final Object checkpointLock = new Object(); // one checkpoint at a time
+    private final Stats stats = new Stats(); // latencies and row counts, reported by SHOW STATS
+
+    public Engine() {
+        this(PlanCache.DEFAULT_CAPACITY);
+    }
+
+    public Engine(int planCacheCapacity) {
+        this.planCache = new PlanCache(planCacheCapacity);
+
+        // -Dsmusql.wal=<directory> keeps the tables in a write-ahead log across restarts
+        String directory = System.getProperty("smusql.wal");
+        if (directory != null) {
+            try {
+                openLog(Paths.get(directory), WriteAheadLog.Sync.parse(System.getProperty("smusql.walSync", "COMMIT")),
+                        Long.getLong("smusql.walSyncMillis", 10));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Rebuilds the tables from the checkpoint and log in the directory, then logs every change from
+    // here on. Call on a new engine, before running any statement.
+    public synchronized void openLog(Path directory, WriteAheadLog.Sync sync, long syncMillis) throws IOException {
+        if (log != null) {
+            throw new IllegalStateException("A write-ahead log is already open");
+        }
+        long firstSegment = Checkpoint.load(directory, table -> {
+            if (table.getStorage() instanceof VersionedStorage) {
+                startVersionCollector();
+            }
+            tableMap.put(table.getName(), table);
+        });
+        log = WriteAheadLog.open(directory, firstSegment, sync, syncMillis, this::replay);
+        logDirectory = directory;
+    }
+
+    // Forces and closes the log; changes after this are not logged
+    public synchronized void closeLog() throws IOException {
+        if (log != null) {
+            WriteAheadLog closing = log;
+            log = null;
+            closing.close();
+        }
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    public String executeSQL(String query) {
+        long start = System.nanoTime();
+        // Take the literals out of the statement and reuse the plan of any earlier statement with the same shape
+        PlanCache.Shape shape = PlanCache.normalize(query);
+        Plan plan = prepare(shape);
+        Stats.Rows rows = new Stats.Rows();
+        if (plan.statement instanceof Statement.Explain) {
+            rows.explain = new Explain(((Statement.Explain) plan.statement).analyze, System.nanoTime() - start);
+        }
+        String result = execute(plan, shape.getLiterals(), rows);
+        record(plan, System.nanoTime() - start, rows.scanned, rows.returned);
+        return result;
+    }
+
+    // Runs a statement read back from the log: its shape, where each "?" takes the next literal
+    private void replay(String shape, String[] literals) {
+        Plan plan = planCache.get(shape);
+        if (plan == null) {
+            plan = plan(new Lexer(shape), true);
+            plan.shape = shape;
+            planCache.put(shape, plan);
+        }
+        execute(plan, literals, new Stats.Rows());
+    }
+
+    private String execute(Plan plan, String[] literals, Stats.Rows rows) {
+        if (plan.error != null) {
+            return plan.error;
+        }
+
+        Statement statement = plan.statement;
+        if (statement instanceof Statement.Select) {
+            return select(plan, literals, rows);
+        } else if (statement instanceof Statement.Update) {
+            return update(plan, literals, rows);
+        } else if (statement instanceof Statement.Insert) {
+            return insert(plan, literals, rows);
+        } else if (statement instanceof Statement.Delete) {
+            return delete(plan, literals, rows);
+        } else if (statement instanceof Statement.CreateTable) {
+            return create(plan);
+        } else if (statement instanceof Statement.CreateIndex) {
+            return createIndex(plan);
+        } else if (statement instanceof Statement.Copy) {
+            return copy(plan, literals, rows);
+        } else if (statement instanceof Statement.Checkpoint) {
+            return checkpoint();
+        } else if (statement instanceof Statement.ShowStats) {
+            return getStats().format();
+        } else if (statement instanceof Statement.ResetStats) {
+            String reading = readByOpenResultSet();
+            if (reading != null) {
+                return reading;
+            }
+            resetStats();
+            return "Statistics reset";
+        } else if (statement instanceof Statement.Explain) {
+            return explain(plan, literals, rows);
+        }
+        return "ERROR: Unknown command";
+    }
+
+    // Runs the statement like executeSQL, but a SELECT hands back its rows one at a time instead of
+    // as one string. Other statements give a ResultSet holding executeSQL's message.
+    public ResultSet query(String query) {
+        long start = System.nanoTime();
+        PlanCache.Shape shape = PlanCache.normalize(query);
+        Plan plan = prepare(shape);
+        if (plan.error == null && plan.statement instanceof Statement.Select) {
+            ResultSet rows = openSelect(plan, shape.getLiterals());
+            rows.whenClosed(() -> record(plan, System.nanoTime() - start, rows.getRowsScanned(), rows.getRowCount()));
+            return rows;
+        }
+        return new ResultSet(executeSQL(query));
+    }
+
+    // Plan of the statement shape, from the cache if an earlier statement had the same shape
+    private Plan prepare(PlanCache.Shape shape) {
+        Plan plan = planCache.get(shape.getText());
+        if (plan == null) {
+            plan = plan(shape.getLexer(), false);
+            plan.shape = shape.getText();
+            planCache.put(shape.getText(), plan);
+        }
+        return plan;
+    }
+
+    public String insert(Plan plan, String[] literals, Stats.Rows rows) {
+        Statement.Insert statement = (Statement.Insert) plan.statement;
+        String tableName = statement.tableName;
+    
+        // Look up the table in the hash map
+        Table tbl = tableMap.get(tableName);
+        if (tbl == null) {
+            return "ERROR: No such table: " + tableName;
+        }
+        if (tbl.getColumnIndex(KEY_COLUMN) < 0) {
+            return "ERROR: Table " + tableName + " has no id column to key its rows";
+        }
+        String reading = readByOpenResultSet(tbl);
+        if (reading != null) {
+            return reading;
+        }
+    
+        List<String> columns = tbl.getColumns();
+        List<List<Literal>> valueRows = statement.rows;
+        String[][] rowData = new String[valueRows.size()][];
+        for (int r = 0; r < valueRows.size(); r++) {
+            List<Literal> values = valueRows.get(r);
+
+            // Ensure the number of values matches the number of columns
+            if (values.size() != columns.size()) {
+                return "ERROR: Column count doesn't match value count.";
+            }
+
+            rowData[r] = new String[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                rowData[r][i] = values.get(i).resolve(literals);
+            }
+        }
+    
+        // Create a unique key for the row; a multi-row INSERT locks the whole table
+        String rowKey = rowData.length == 1 ? generateUniqueKey(tbl, rowData[0]) : null;
+    
+        // Add the new rows to the table with their keys
+        long logged;
+        Runnable unlock = lockForWrite(tbl, rowKey);
+        try {
+            if (rowData.length == 1) {
+                tbl.addRow(rowKey, rowData[0]);
+            } else {
+                // Check every row first, so a value that does not fit leaves the table as it was
+                for (String[] row : rowData) {
+                    for (int i = 0; i < row.length; i++) {
+                        tbl.checkValue(i, row[i]);
+                    }
+                }
+                tbl.reserve(rowData.length);
+                for (String[] row : rowData) {
+                    tbl.addRow(generateUniqueKey(tbl, row), row);
+                }
+            }
+            logged = log(plan, literals);
+        } catch (IllegalArgumentException e) {
+            return "ERROR: " + e.getMessage(); // value does not fit a declared column type
+        } finally {
+            tbl.commit(); // publish the writes to snapshot readers
+            unlock.run();
+        }
+    
+        rows.returned = rowData.length;
+        String result = rowData.length == 1 ? "Row inserted into " + tableName : rowData.length + " rows inserted into " + tableName;
+        return acknowledge(logged, result);
+    }
+
+    // COPY table FROM 'file' loads the rows of a CSV file (see CsvReader) under one write lock,
+    // logged in batches as the multi-row INSERTs that would load them. A bad line stops the load;
+    // the rows before it stay loaded.
+    public String copy(Plan plan, String[] literals, Stats.Rows rows) {
+        Statement.Copy statement = (Statement.Copy) plan.statement;
+        String tableName = statement.tableName;
+        Table tbl = tableMap.get(tableName);
+        if (tbl == null) {
+            return "ERROR: No such table: " + tableName;
+        }
+        String file = statement.file.resolve(literals);
+        if (file.length() >= 2 && file.startsWith("'") && file.endsWith("'")) {
+            file = file.substring(1, file.length() - 1);
+        }
+
+        if (tbl.getColumnIndex(KEY_COLUMN) < 0) {
+            return "ERROR: Table " + tableName + " has no id column to key its rows";
+        }
+        String reading = readByOpenResultSet(tbl);
+        if (reading != null) {
+            return reading;
+        }
+
+        int columnCount = tbl.getColumns().size();
+        int loaded = 0;
+        long logged = 0;
+        String error = null;
+        Runnable unlock = lockForWrite(tbl, null);
+        try (CsvReader csv = new CsvReader(Paths.get(file), columnCount)) {
+            tbl.reserve(csv.estimateRows());
+            String[] values = new String[columnCount];
+            String[] batch = new String[COPY_BATCH_ROWS * columnCount];
+            int batched = 0;
+            try {
+                while (csv.next(values)) {
+                    tbl.addRow(generateUniqueKey(tbl, values), values);
+                    loaded++;
+                    if (log != null) {
+                        System.arraycopy(values, 0, batch, batched * columnCount, columnCount);
+                        if (++batched == COPY_BATCH_ROWS) {
+                            logged = logRows(tableName, batch, batched, columnCount);
+                            batched = 0;
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                error = "ERROR: Line " + csv.getLine() + ": " + e.getMessage();
+            } finally {
+                if (batched > 0) {
+                    logged = logRows(tableName, batch, batched, columnCount); // the rows in the table so far
+                }
+            }
+        } catch (IOException e) {
+            error = "ERROR: Cannot read " + file + ": " + e.getMessage();
+        } finally {
+            tbl.commit();
+            unlock.run();
+        }
+        rows.returned = loaded;
+
+        if (error != null) {
+            return acknowledge(logged, error + " (" + loaded + " rows loaded)");
+        }
+        return acknowledge(logged, loaded + " rows copied into " + tableName);
+    }
+
+    public String delete(Plan plan, String[] literals, Stats.Rows rows) {
+        Statement.Delete statement = (Statement.Delete) plan.statement;
+        String tableName = statement.tableName;
+        Table tbl = tableMap.get(tableName); // Access the table directly using the hash map
+    
+        if (tbl == null) {
+            return "Error: no such table: " + tableName;
+        }
+        String reading = readByOpenResultSet(tbl);
+        if (reading != null) {
+            return reading;
+        }
+    
+        int ct = 0; // count number of rows affected.
+        long logged = 0;
+        Runnable unlock = lockForWrite(tbl, findKeyEquality(tbl, plan, literals));
+        try {
+            Filter filter = Filter.compile(statement.where, tbl, literals); // WHERE clause, parsed once for all rows
+
+            // Only visit the rows the key or an index can match, otherwise every row in the table
+            List<String> candidates = planCandidates(tbl, plan, literals, rows.explain);
+            if (candidates == null && scanInParallel(tbl)) {
+                // Find the matches on the scan pool, then change them here one by one
+                candidates = runParallelScan(tbl, statement.where, literals, TableStorage.Cursor::key);
+                rows.scanned = tbl.size() - candidates.size(); // read on the pool and dropped there
+            }
+            TableStorage.Cursor row = candidates != null ? tbl.scan(candidates) : tbl.scan(filter);
+            while (row.next()) {
+                rows.scanned++;
+                boolean match = filter.test(row);
+
+                if (match) {
+                    tbl.removeRow(row); // Remove the matching entry
+                    ct++; // Increment count of affected rows
+                }
+            }
+            rows.returned = ct;
+            if (ct > 0) {
+                logged = log(plan, literals);
+            }
+        } finally {
+            tbl.commit();
+            unlock.run();
+        }
+
+        return acknowledge(logged, "Rows deleted from " + tableName + ". " + ct + " rows affected.");
+    }
+
+    public String select(Plan plan, String[] literals, Stats.Rows rows) {
+        StringBuilder result = new StringBuilder();
+        try (ResultSet selected = openSelect(plan, literals, rows.explain)) {
+            if (rows.explain != null) {
+                selected.timeFormatting();
+            }
+            selected.writeTo(result);
+            rows.scanned = selected.getRowsScanned();
+            rows.returned = selected.getRowCount();
+            if (rows.explain != null) {
+                rows.explain.addFormatTime(selected.getFormatNanos());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder does not throw
+        }
+        return result.toString();
+    }
+
+    // Rows of the SELECT, read lazily from the key, an index or the whole table. The table stays
+    // read-locked until the rows run out or the ResultSet is closed, except for a full scan of an
+    // MVCC table, which reads a snapshot without the lock, and a parallel scan, which copies its
+    // rows out first. While it holds the lock, statements on the same thread that write-lock the
+    // table (INSERT, UPDATE, DELETE, COPY, CREATE INDEX, CHECKPOINT, RESET STATS) return an ERROR
+    // instead of waiting on the lock forever: close the ResultSet before changing the table.
+    public ResultSet openSelect(Plan plan, String[] literals) {
+        return openSelect(plan, literals, null);
+    }
+
+    private ResultSet openSelect(Plan plan, String[] literals, Explain explain) {
+        Statement.Select statement = (Statement.Select) plan.statement;
+        String tableName = statement.tableName;
+
+        // Use HashMap for direct table lookup
+        Table tbl = tableMap.get(tableName);
+        if (tbl == null) {
+            return new ResultSet("ERROR: No such table: " + tableName);
+        }
+
+        Lock lock = tbl.getLock().readLock();
+        lock.lock();
+        try {
+            Filter filter = Filter.compile(statement.where, tbl, literals); // WHERE clause, parsed once for all rows
+
+            // Only visit the rows the key or an index can match, otherwise every row in the table
+            List<String> candidates = planCandidates(tbl, plan, literals, explain);
+            if (candidates == null && tbl.getStorage() instanceof VersionedStorage) {
+                // A full scan of an MVCC table reads a snapshot and lets writers carry on meanwhile
+                VersionedStorage.SnapshotCursor snapshot = ((VersionedStorage) tbl.getStorage()).openSnapshot();
+                lock.unlock();
+                ResultSet result = new ResultSet(tbl.getColumns(), tbl.getStorage(), snapshot, filter, snapshot::close);
+                result.releaseIfDropped();
+                return result;
+            }
+            if (candidates == null && scanInParallel(tbl)) {
+                int columnCount = tbl.getColumns().size();
+                List<String[]> rows = runParallelScan(tbl, statement.where, literals,
+                        row -> ParallelScan.values(row, columnCount));
+                int scanned = tbl.size();
+                lock.unlock(); // the matching rows are copied out
+                ResultSet result = new ResultSet(tbl.getColumns(), tbl.getStorage(), new ParallelScan.Rows(rows), new Filter.Constant(true), null);
+                result.addRowsScanned(scanned - rows.size()); // read on the pool and dropped there
+                return result;
+            }
+            TableStorage.Cursor row = candidates != null ? tbl.scan(candidates) : tbl.scan(filter);
+            return new ResultSet(tbl.getColumns(), tbl.getStorage(), row, filter, lock::unlock);
+        } catch (RuntimeException e) {
+            lock.unlock(); // the ResultSet was not made, so nothing else will release it
+            throw e;
+        }
+    }
+
+    public String update(Plan plan, String[] literals, Stats.Rows rows) {
+        Statement.Update statement = (Statement.Update) plan.statement;
+        String tableName = statement.tableName;
+        Table tbl = tableMap.get(tableName);
+        if (tbl == null) {
+            return "Error: no such table: " + tableName;
+        }
+        String reading = readByOpenResultSet(tbl);
+        if (reading != null) {
+            return reading;
+        }
+    
+        // Changing the id moves the row to another key, which a single key's lock does not cover
+        String key = statement.column.equals(KEY_COLUMN) ? null : findKeyEquality(tbl, plan, literals);
+        int ct = 0; // count number of affected rows
+        long logged = 0;
+        Runnable unlock = lockForWrite(tbl, key);
+        try {
+            String setColumn = statement.column; // column to be updated
+            String newValue = statement.value.resolve(literals); // new value for above column
+
+            int setIndex = tbl.getColumnIndex(setColumn); // -1 for an unknown column, which no row holds
+            if (setIndex >= 0) {
+                try {
+                    tbl.checkValue(setIndex, newValue);
+                } catch (IllegalArgumentException e) {
+                    return "ERROR: " + e.getMessage(); // value does not fit a declared column type
+                }
+            }
+            Filter filter = Filter.compile(statement.where, tbl, literals); // WHERE clause, parsed once for all rows
+
+            // Update rows based on WHERE clause
+            boolean rekey = setColumn.equals(KEY_COLUMN) && setIndex >= 0;
+            List<String> rekeyed = new ArrayList<>(); // rows whose id is to change, moving them to a new key
+
+            List<String> candidates = planCandidates(tbl, plan, literals, rows.explain);
+            if (candidates == null && scanInParallel(tbl)) {
+                // Find the matches on the scan pool, then change them here one by one
+                candidates = runParallelScan(tbl, statement.where, literals, TableStorage.Cursor::key);
+                rows.scanned = tbl.size() - candidates.size(); // read on the pool and dropped there
+            }
+            TableStorage.Cursor row = candidates != null ? tbl.scan(candidates) : tbl.scan(filter);
+            while (row.next()) {
+                rows.scanned++;
+                boolean match = filter.test(row);
+                if (match) {
+                    if (rekey) {
+                        rekeyed.add(row.key()); // changed below, once the new id is known to be free
+                    } else if (setIndex >= 0) {
+                        tbl.updateValue(row, setIndex, newValue);
+                    }
+                    ct++;
+                }
+            }
+
+            // Keep rows keyed by the current id so later key lookups still find the row. Moving a row
+            // onto a key in use would replace the row there, so the UPDATE is refused instead.
+            if (!rekeyed.isEmpty()) {
+                String oldKey = rekeyed.get(0);
+                if (rekeyed.size() > 1) {
+                    return "ERROR: UPDATE would give " + rekeyed.size() + " rows the same id";
+                }
+                if (newValue == null) {
+                    return "ERROR: id cannot be NULL";
+                }
+                if (!newValue.equals(oldKey) && tbl.containsKey(newValue)) {
+                    return "ERROR: id " + newValue + " is already in use";
+                }
+                TableStorage.Cursor moved = tbl.scan(rekeyed);
+                moved.next();
+                tbl.updateValue(moved, setIndex, newValue);
+                tbl.moveRow(oldKey, newValue);
+            }
+            rows.returned = ct;
+            if (ct > 0) {
+                logged = log(plan, literals);
+            }
+        } finally {
+            tbl.commit();
+            unlock.run();
+        }
+
+        return acknowledge(logged, "Table " + tableName + " updated. " + ct + " rows affected.");
+    }
+
+    public String create(Plan plan) { 
+        Statement.CreateTable statement = (Statement.CreateTable) plan.statement;
+        String tableName = statement.tableName;
+
+        // Check if the table already exists
+        if (tableMap.containsKey(tableName)) {
+            return "ERROR: Table already exists";
+        }
+
+        List<String> columns = new ArrayList<>(statement.columns);
+        ColumnType[] types = new ColumnType[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            String type = statement.types.get(i);
+            if (type != null) {
+                types[i] = ColumnType.parse(type);
+                if (types[i] == null) {
+                    return "ERROR: Unknown column type: " + type;
+                }
+            }
+        }
+
+        // Row storage keeps any text in any column; declared types only apply to columnar tables
+        String storageKind = statement.storage != null ? statement.storage.toUpperCase() : defaultStorage;
+        TableStorage storage = TableStorage.create(storageKind, columns, types);
+        if (storage == null) {
+            return "ERROR: Unknown storage: " + storageKind;
+        }
+        if (storage instanceof VersionedStorage) {
+            startVersionCollector();
+        }
+
+        // Create the new table and add it to the hash map, unless another client got there first.
+        // It is locked until logged, so no write to it can reach the log ahead of its creation.
+        Table newTable = new Table(tableName, columns, storage);
+        long logged;
+        Lock lock = newTable.getLock().writeLock();
+        catalogLock.readLock().lock();
+        lock.lock();
+        try {
+            if (tableMap.putIfAbsent(tableName, newTable) != null) {
+                return "ERROR: Table already exists";
+            }
+            logged = log(plan, new String[0]);
+        } finally {
+            lock.unlock();
+            catalogLock.readLock().unlock();
+        }
+
+        return acknowledge(logged, "Table " + tableName + " created");
+    }
+
+    // CHECKPOINT writes every table to a snapshot in the log directory, after which the log segments
+    // before it are deleted. Every table is write-locked while the log is cut, so the snapshot holds
+    // exactly the changes of the old segments; then each table is written and unlocked in turn.
+    // Tables other than CONCURRENT ones are only read-locked while they wait to be written.
+    public String checkpoint() {
+        synchronized (checkpointLock) { // not the engine's own lock, which writers may need while we wait for them
+            WriteAheadLog current = log;
+            if (current == null) {
+                return "ERROR: No write-ahead log to checkpoint";
+            }
+            String reading = readByOpenResultSet();
+            if (reading != null) {
+                return reading;
+            }
+            return checkpoint(current);
+        }
+    }
+
+    private String checkpoint(WriteAheadLog current) {
+        List<Table> tables;
+        Set<Table> locked = new HashSet<>();
+        long firstSegment;
+        catalogLock.writeLock().lock();
+        try {
+            // Listed under the catalog lock, so a table created before the roll is in the snapshot
+            tables = new ArrayList<>(tableMap.values());
+            tables.sort(Comparator.comparing(Table::getName));
+            for (Table tbl : tables) {
+                tbl.getLock().writeLock().lock();
+                locked.add(tbl);
+            }
+            firstSegment = current.roll();
+        } catch (IOException e) {
+            for (Table tbl : locked) {
+                tbl.getLock().writeLock().unlock();
+            }
+            return "ERROR: Checkpoint failed: " + e.getMessage();
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+
+        // Readers may go on while their table waits; CONCURRENT tables also take point writes under the read lock
+        for (Table tbl : tables) {
+            if (!(tbl.getStorage() instanceof ConcurrentRowStorage)) {
+                tbl.getLock().readLock().lock();
+                tbl.getLock().writeLock().unlock();
+            }
+        }
+        long rows;
+        try {
+            rows = Checkpoint.write(logDirectory, firstSegment, tables, tbl -> {
+                unlockAfterCheckpoint(tbl);
+                locked.remove(tbl);
+            });
+            current.deleteSegmentsBefore(firstSegment);
+        } catch (IOException e) {
+            return "ERROR: Checkpoint failed: " + e.getMessage(); // the log still holds every change
+        } finally {
+            for (Table tbl : locked) {
+                unlockAfterCheckpoint(tbl);
+            }
+        }
+        return "Checkpoint written: " + tables.size() + " tables, " + rows + " rows";
+    }
+
+    private static void unlockAfterCheckpoint(Table tbl) {
+        if (tbl.getStorage() instanceof ConcurrentRowStorage) {
+            tbl.getLock().writeLock().unlock();
+        } else {
+            tbl.getLock().readLock().unlock();
+        }
+    }
+
+    // Locks the table for a write statement and returns what unlocks it. A statement that writes only
+    // the given key of a CONCURRENT table without indexes shares the table with readers and other
+    // such writers, holding just the key's stripe lock; any other write locks the table for itself.
+    private Runnable lockForWrite(Table tbl, String key) {
+        if (key != null && tbl.getStorage() instanceof ConcurrentRowStorage) {
+            Lock shared = tbl.getLock().readLock();
+            shared.lock();
+            if (!tbl.hasIndexes()) { // indexes are only changed under the write lock
+                Lock keyLock = ((ConcurrentRowStorage) tbl.getStorage()).lockFor(key);
+                keyLock.lock();
+                return () -> {
+                    keyLock.unlock();
+                    shared.unlock();
+                };
+            }
+            shared.unlock();
+        }
+        Lock exclusive = tbl.getLock().writeLock();
+        exclusive.lock();
+        return exclusive::unlock;
+    }
+
+    // Error for a statement that needs the table's write lock on a thread still reading the table
+    // through an open ResultSet, or null if there is none. The thread holds the read lock, which
+    // cannot be upgraded, so waiting for the write lock would deadlock.
+    private static String readByOpenResultSet(Table tbl) {
+        if (!tbl.isReadLockedByCurrentThread()) {
+            return null;
+        }
+        return "ERROR: Table " + tbl.getName() + " is being read by an open ResultSet on this thread; close it first";
+    }
+
+    // As above, for statements that write-lock every table
+    private String readByOpenResultSet() {
+        for (Table tbl : tableMap.values()) {
+            String reading = readByOpenResultSet(tbl);
+            if (reading != null) {
+                return reading;
+            }
+        }
+        return null;
+    }
+
+    // Appends the statement to the log, if there is one, and returns the position to acknowledge it
+    // at, 0 if not logged. Called holding the table lock, so the log has each table's changes in the
+    // order they were made.
+    private long log(Plan plan, String[] literals) {
+        WriteAheadLog current = log;
+        return current != null ? current.append(plan.shape, literals) : 0;
+    }
+
+    // Logs rows of a COPY as "INSERT INTO table VALUES ( ? , ? ) , ( ? , ? ) ...", the shape such a
+    // statement normalizes to, with the values as its literals
+    private long logRows(String tableName, String[] values, int rows, int columnCount) {
+        WriteAheadLog current = log;
+        if (current == null) {
+            return 0;
+        }
+        StringBuilder shape = new StringBuilder(24 + tableName.length() + rows * (columnCount * 4 + 4));
+        shape.append("INSERT INTO ").append(tableName).append(" VALUES");
+        for (int r = 0; r < rows; r++) {
+            shape.append(r > 0 ? " , (" : " (");
+            for (int i = 0; i < columnCount; i++) {
+                shape.append(i > 0 ? " , ?" : " ?");
+            }
+            shape.append(" )");
+        }
+        return current.append(shape.toString(), Arrays.copyOf(values, rows * columnCount));
+    }
+
+    // Gives the result of a logged statement once the log holds it as its sync policy promises.
+    // Waits after the table lock is released, so writers arriving meanwhile share the next force.
+    private String acknowledge(long logged, String result) {
+        WriteAheadLog current = log;
+        if (logged > 0 && current != null) {
+            try {
+                current.awaitDurable(logged);
+            } catch (IOException e) {
+                return "ERROR: Change made but not logged, it may be lost on restart: " + e.getMessage();
+            }
+        }
+        return result;
+    }
+
+    // EXPLAIN: the plan the statement would take with these literals. EXPLAIN ANALYZE then runs it,
+    // changes and log record included, and adds the rows it read and what each phase took.
+    private String explain(Plan plan, String[] literals, Stats.Rows rows) {
+        Explain explain = rows.explain != null ? rows.explain : new Explain(((Statement.Explain) plan.statement).analyze, 0);
+        Plan explained = plan.explained;
+        if (explained.shape == null) {
+            // The shape without EXPLAIN [ANALYZE], as the explained statement is logged under it
+            String shape = plan.shape.substring(plan.shape.indexOf(' ') + 1);
+            explained.shape = explain.analyze ? shape.substring(shape.indexOf(' ') + 1) : shape;
+        }
+
+        String error = describe(explained, literals, explain);
+        if (error != null) {
+            return error;
+        }
+        if (explain.analyze) {
+            com.sun.management.ThreadMXBean threads = allocationCounter();
+            long allocatedBefore = threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+            Stats.Rows explainedRows = new Stats.Rows();
+            explainedRows.explain = explain;
+            long start = System.nanoTime();
+            String result = execute(explained, literals, explainedRows);
+            long nanos = System.nanoTime() - start;
+            long allocated = threads != null ? threads.getCurrentThreadAllocatedBytes() - allocatedBefore : -1;
+            explain.setRun(nanos, allocated, explainedRows, explained.statement instanceof Statement.Select ? null : result);
+            rows.scanned = explainedRows.scanned;
+            rows.returned = explainedRows.returned;
+        }
+        return explain.format();
+    }
+
+    // Sets the table, filter and access path of the statement on the explain, reading the table
+    // under its lock as the statement would. Returns an error if the table does not exist.
+    private String describe(Plan plan, String[] literals, Explain explain) {
+        Statement statement = plan.statement;
+        if (!(statement instanceof Statement.Select || statement instanceof Statement.Update
+                || statement instanceof Statement.Delete)) {
+            explain.setAccess("no scan", null, kindOf(plan), 0); // reads no rows to find its work
+            return null;
+        }
+        Table tbl = tableMap.get(statement.tableName);
+        if (tbl == null) {
+            return "ERROR: No such table: " + statement.tableName;
+        }
+
+        Lock lock = tbl.getLock().readLock();
+        lock.lock();
+        try {
+            Predicate where = whereOf(statement);
+            explain.setTable(tbl);
+            explain.setFilter(where, Filter.compile(where, tbl, literals).describe(tbl.getColumns()));
+            if (findCandidates(tbl, plan, literals, explain) == null) {
+                if (statement instanceof Statement.Select && tbl.getStorage() instanceof VersionedStorage) {
+                    explain.setAccess("snapshot scan", null, null, tbl.size());
+                } else if (isLargeForParallel(tbl)) {
+                    explain.setAccess("parallel scan", null, parallelism + " parts", tbl.size());
+                } else {
+                    explain.setAccess("full scan", null, null, tbl.size());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    // Counter of the bytes each thread allocates, or null if this JVM has none
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    // Whether a full scan of the table is split across the scan pool
+    private boolean scanInParallel(Table tbl) {
+        if (isLargeForParallel(tbl)) {
+            parallelScans.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isLargeForParallel(Table tbl) {
+        return parallelism > 1 && tbl.size() >= parallelThreshold;
+    }
+
+    // Pool of the current parallelism, replacing the old pool when the setting has changed. The old
+    // pool is shut down, which lets the scans running on it finish.
+    private synchronized ForkJoinPool scanPool() {
+        if (scanPool == null || scanPool.getParallelism() != parallelism) {
+            if (scanPool != null) {
+                scanPool.shutdown();
+            }
+            scanPool = new ForkJoinPool(parallelism);
+        }
+        return scanPool;
+    }
+
+    // Runs a parallel scan on the scan pool. A pool replaced after it was fetched but before the
+    // scan started rejects the scan, which then runs on the new pool.
+    private <R> List<R> runParallelScan(Table tbl, Predicate where, String[] literals, ParallelScan.Collector<R> collector) {
+        while (true) {
+            ForkJoinPool pool = scanPool();
+            try {
+                return ParallelScan.run(pool, tbl, where, literals, collector);
+            } catch (RejectedExecutionException e) {
+                // shut down by a parallelism change; scanPool() now returns its replacement
+            }
+        }
+    }
+
+    private synchronized void startVersionCollector() {
+        if (versionCollector == null) {
+            versionCollector = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "smusql-version-collector");
+                thread.setDaemon(true); // never keeps the program running
+                return thread;
+            });
+            versionCollector.scheduleWithFixedDelay(this::collectVersions,
+                    VERSION_COLLECTION_MILLIS, VERSION_COLLECTION_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Drops row versions of MVCC tables that no open snapshot can read. Runs in the background,
+    // taking a table's write lock only to compact away rows that were deleted.
+    public void collectVersions() {
+        for (Table tbl : tableMap.values()) {
+            if (!(tbl.getStorage() instanceof VersionedStorage)) {
+                continue;
+            }
+            VersionedStorage versions = (VersionedStorage) tbl.getStorage();
+            if (versions.collect()) {
+                Lock lock = tbl.getLock().writeLock();
+                lock.lock();
+                try {
+                    versions.compact();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // CREATE INDEX name ON table(column) builds an ordered index for ranges,
+    // CREATE HASH INDEX name ON table(column) a hash index for equality,
+    // CREATE BITMAP INDEX name ON table(column) a bitmap index for combining comparisons.
+    public String createIndex(Plan plan) {
+        Statement.CreateIndex statement = (Statement.CreateIndex) plan.statement;
+        String tableName = statement.tableName;
+        String column = statement.column;
+
+        Table tbl = tableMap.get(tableName);
+        if (tbl == null) {
+            return "ERROR: No such table: " + tableName;
+        }
+        String reading = readByOpenResultSet(tbl);
+        if (reading != null) {
+            return reading;
+        }
+
+        long logged;
+        Lock lock = tbl.getLock().writeLock();
+        lock.lock();
+        try {
+            tbl.createIndex(statement.indexName, column, statement.type);
+            logged = log(plan, new String[0]);
+        } catch (IllegalArgumentException e) {
+            return "ERROR: " + e.getMessage();
+        } finally {
+            lock.unlock();
+        }
+        return acknowledge(logged, "Index " + statement.indexName + " created on " + tableName + "(" + column + ")");
+    }
+
+    //Additional methods
+    // private String queryBetweenParentheses(String[] tokens, int index) {
+    //     // Ensure the index is valid
+    //     if (index < tokens.length && tokens[index].startsWith("(") && tokens[index].endsWith(")")) {
+    //         // Remove parentheses and return the content
+    //         return tokens[index].substring(1, tokens[index].length() - 1);
+    //     }
+    //     return "ERROR: Invalid input does not start with ( or end with )"; // or handle the error appropriately
+    // }
+
+// // Helper method to determine if a string is an operator
+// private boolean isOperator(String token) {
+//     if (token == null) {
+//         return false; // Handle null input
+//     }
+//     Set<String> operators = new HashSet<>(Set.of("=", ">", "<", ">=", "<="));
+//     return operators.contains(token);
+// }
+
+// private boolean evaluateWhereConditions(Map<String, String> row, List<String[]> conditions) {
+//     boolean overallMatch = false; // Start with false for OR logic
+//     boolean currentConditionResult = true; // Evaluate each condition independently
+    
+//     // Loop through conditions to evaluate AND/OR logic correctly
+//     for (String[] condition : conditions) {
+//         if (condition[0] != null) { // Logical operator (AND/OR)
+//             if (condition[0].equals("AND")) {
+//                 overallMatch = overallMatch && currentConditionResult;
+//             } else if (condition[0].equals("OR")) {
+//                 overallMatch = overallMatch || currentConditionResult;
+//             }
+//             currentConditionResult = true; // Reset for the next condition
+//         } else {
+//             // Evaluate single condition
+//             String column = condition[1];
+//             String operator = condition[2];
+//             String value = condition[3];
+//             String rowValue = row.get(column);
+//             boolean match = evaluateCondition(rowValue, operator, value);
+            
+//             // Update `currentConditionResult` for this condition
+//             currentConditionResult = currentConditionResult && match;
+//         }
+//     }
+    
+//     // Final combination of the last evaluated condition
+//     overallMatch = overallMatch || currentConditionResult;
+    
+//     return overallMatch;
+// }
+
+
+// // Helper method to evaluate a single condition
+// private boolean evaluateCondition(String columnValue, String operator, String value) {
+//     if (columnValue == null || value == null) return false;
+
+//     // Compare strings as numbers if possible
+//     boolean isNumeric = isNumeric(columnValue) && isNumeric(value);
+    
+//     if (isNumeric) {
+//         double columnNumber = Double.parseDouble(columnValue);
+//         double valueNumber = Double.parseDouble(value);
+
+//         switch (operator) {
+//             case "=": return columnNumber == valueNumber;
+//             case ">": return columnNumber > valueNumber;
+//             case "<": return columnNumber < valueNumber;
+//             case ">=": return columnNumber >= valueNumber;
+//             case "<=": return columnNumber <= valueNumber;
+//             default: throw new IllegalArgumentException("Invalid operator: " + operator);
+//         }
+//     } else {
+//         switch (operator) {
+//             case "=": return columnValue.equals(value);
+//             case ">": return columnValue.compareTo(value) > 0;
+//             case "<": return columnValue.compareTo(value) < 0;
+//             case ">=": return columnValue.compareTo(value) >= 0;
+//             case "<=": return columnValue.compareTo(value) <= 0;
+//             default: throw new IllegalArgumentException("Invalid operator: " + operator);
+//         }
+//     }
+// }
+
+//     // Helper method to determine if a string is numeric
+//     private boolean isNumeric(String str) {
+//         try {
+//             Double.parseDouble(str);
+//             return true;
+//         } catch (NumberFormatException e) {
+//             return false;
+//         }
+//     }
+    // The row's id as written: "007" and "7" are different rows, though "id = 7" matches both.
+    // Callers check first that the table has an id column.
+    private String generateUniqueKey(Table tbl, String[] rowData) {
+        return rowData[tbl.getColumnIndex(KEY_COLUMN)];
+    }
+
+    // Parses a statement and works out the parts of its access path that depend only on its
+    // shape, so both are done once per shape and cached
+    private Plan plan(Lexer lexer, boolean placeholders) {
+        Plan plan;
+        try {
+            plan = new Plan(new Parser(lexer, placeholders).parse());
+        } catch (IllegalArgumentException e) {
+            return new Plan(e.getMessage());
+        }
+        planAccess(plan);
+        if (plan.statement instanceof Statement.Explain) {
+            plan.explained = new Plan(((Statement.Explain) plan.statement).statement);
+            planAccess(plan.explained);
+        }
+        return plan;
+    }
+
+    private void planAccess(Plan plan) {
+        Predicate where = whereOf(plan.statement);
+        List<Predicate.Comparison> conjuncts = new ArrayList<>();
+        if (where != null && collectConjuncts(where, conjuncts)) {
+            plan.conjuncts = conjuncts;
+            for (Predicate.Comparison comparison : conjuncts) {
+                if (comparison.column.equals(KEY_COLUMN) && comparison.operator.equals("=")) {
+                    plan.keyCondition = comparison;
+                    break;
+                }
+            }
+        }
+    }
+
+    // WHERE clause of a SELECT, UPDATE or DELETE, else null
+    private static Predicate whereOf(Statement statement) {
+        if (statement instanceof Statement.Select) {
+            return ((Statement.Select) statement).where;
+        } else if (statement instanceof Statement.Update) {
+            return ((Statement.Update) statement).where;
+        } else if (statement instanceof Statement.Delete) {
+            return ((Statement.Delete) statement).where;
+        }
+        return null;
+    }
+
+    // Flattens a tree of ANDs into its comparisons. Returns false if it contains an OR.
+    private boolean collectConjuncts(Predicate predicate, List<Predicate.Comparison> conjuncts) {
+        if (predicate instanceof Predicate.And) {
+            Predicate.And and = (Predicate.And) predicate;
+            return collectConjuncts(and.left, conjuncts) && collectConjuncts(and.right, conjuncts);
+        }
+        if (predicate instanceof Predicate.Comparison) {
+            conjuncts.add((Predicate.Comparison) predicate);
+            return true;
+        }
+        return false;
+    }
+
+    // Picks the rows a statement has to look at. Returns the candidate row keys when the WHERE
+    // clause can be answered from the row key or an index, or null when every row must be scanned.
+    // Candidates may be a superset of the matches, so callers still evaluate the full WHERE clause.
+    // Under EXPLAIN ANALYZE the time taken is added to the explain's plan phase.
+    private List<String> planCandidates(Table tbl, Plan plan, String[] literals, Explain explain) {
+        if (explain == null) {
+            return findCandidates(tbl, plan, literals, null);
+        }
+        long start = System.nanoTime();
+        List<String> candidates = findCandidates(tbl, plan, literals, null);
+        explain.addPlanTime(System.nanoTime() - start);
+        return candidates;
+    }
+
+    // Candidates as planCandidates picks them. The access path taken is counted, or if describe is
+    // given, set on it instead, so that EXPLAIN does not count as a lookup.
+    private List<String> findCandidates(Table tbl, Plan plan, String[] literals, Explain describe) {
+        String lookupKey = findKeyEquality(tbl, plan, literals);
+        if (lookupKey != null) {
+            if (describe != null) {
+                describe.setAccess("key lookup", KEY_COLUMN, KEY_COLUMN + " = " + lookupKey, 1);
+            } else {
+                keyLookups.increment();
+            }
+            return List.of(lookupKey);
+        }
+
+        // Bitmaps combine across OR as well as AND, so they are tried before giving up on an OR
+        List<String> matched = findBitmapMatches(tbl, whereOf(plan.statement), literals, describe);
+        if (matched != null) {
+            if (describe == null) {
+                bitmapLookups.increment();
+            }
+            return matched;
+        }
+
+        if (plan.conjuncts == null) {
+            return null; // no WHERE clause, or an OR that can widen the match beyond one key or range
+        }
+
+        List<String> posted = findHashEquality(tbl, plan.conjuncts, literals, describe);
+        if (posted != null) {
+            if (describe == null) {
+                hashLookups.increment();
+            }
+            return posted;
+        }
+
+        List<String> indexed = findIndexRange(tbl, plan.conjuncts, literals, describe);
+        if (indexed != null && describe == null) {
+            indexScans.increment();
+        }
+        return indexed;
+    }
+
+    // Returns the row key to look up if the WHERE clause pins the key column with "id = N".
+    // Returns null when a scan is needed.
+    private String findKeyEquality(Table tbl, Plan plan, String[] literals) {
+        if (plan.keyCondition == null || !tbl.getColumns().contains(KEY_COLUMN)) {
+            return null;
+        }
+        // Only safe if no other key compares equal to the literal: "id = 5" also matches "5.0" and
+        // "005", and "id = 5.0" matches "5", through the number comparisons
+        String value = plan.keyCondition.value.resolve(literals);
+        return tbl.hasExactKeys() && value != null && value.equals(canonicalInt(value)) ? value : null;
+    }
+
+    // Returns the keys of the rows the bitmap indexes leave for the WHERE clause, or null if they
+    // cannot narrow it.
+    private List<String> findBitmapMatches(Table tbl, Predicate where, String[] literals, Explain describe) {
+        if (where == null || !tbl.hasBitmapIndexes()) {
+            return null;
+        }
+        Set<String> used = new LinkedHashSet<>();
+        RoaringBitmap rows = matchBitmaps(tbl, where, literals, used);
+        if (rows == null) {
+            return null;
+        }
+        List<String> keys = tbl.keysOf(rows);
+        if (describe != null) {
+            List<String> names = new ArrayList<>();
+            for (String column : used) {
+                names.add(tbl.getBitmapIndex(column).getName());
+            }
+            describe.setCombinedAccess((names.size() == 1 ? "bitmap index " : "bitmap indexes ") + String.join(", ", names),
+                    used, String.join(", ", used), keys.size());
+        }
+        return keys;
+    }
+
+    // Ordinals of the rows that may satisfy the predicate according to the bitmap indexes, or null
+    // if every row may. A comparison on a bitmap-indexed column reads its index; AND intersects the
+    // bitmaps of its sides, or keeps the one side that has a bitmap, and OR unites them only when
+    // both sides have one. Adds the columns whose indexes the result was read from to used.
+    private RoaringBitmap matchBitmaps(Table tbl, Predicate predicate, String[] literals, Set<String> used) {
+        if (predicate instanceof Predicate.And) {
+            Predicate.And and = (Predicate.And) predicate;
+            RoaringBitmap left = matchBitmaps(tbl, and.left, literals, used);
+            RoaringBitmap right = matchBitmaps(tbl, and.right, literals, used);
+            if (left == null || right == null) {
+                return left != null ? left : right;
+            }
+            return RoaringBitmap.and(left, right);
+        }
+        if (predicate instanceof Predicate.Or) {
+            Predicate.Or or = (Predicate.Or) predicate;
+            Set<String> sides = new LinkedHashSet<>();
+            RoaringBitmap left = matchBitmaps(tbl, or.left, literals, sides);
+            RoaringBitmap right = left != null ? matchBitmaps(tbl, or.right, literals, sides) : null;
+            if (right == null) {
+                return null;
+            }
+            used.addAll(sides);
+            return RoaringBitmap.or(left, right);
+        }
+        Predicate.Comparison comparison = (Predicate.Comparison) predicate;
+        BitmapIndex index = tbl.getBitmapIndex(comparison.column);
+        int operator = Filter.operatorCode(comparison.operator);
+        if (index == null || operator < 0) {
+            return null;
+        }
+        used.add(comparison.column);
+        return index.match(new Filter.TextComparison(tbl.getColumnIndex(comparison.column), operator,
+                comparison.value.resolve(literals)));
+    }
+
+    // Returns the posting list of the first hash-indexed column compared with "=", or null if none.
+    private List<String> findHashEquality(Table tbl, List<Predicate.Comparison> conjuncts, String[] literals, Explain describe) {
+        for (Predicate.Comparison comparison : conjuncts) {
+            if (comparison.operator.equals("=")) {
+                HashIndex index = tbl.getHashIndex(comparison.column);
+                if (index != null) {
+                    String value = comparison.value.resolve(literals);
+                    List<String> posted = index.lookup(value);
+                    if (describe != null) {
+                        describe.setAccess("hash index " + index.getName(), comparison.column,
+                                comparison.column + " = " + value, posted.size());
+                    }
+                    return posted;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Narrows the rows to a key range of the first ordered index whose column is compared with a
+    // numeric literal. All conditions on that column are folded into one inclusive [low, high].
+    private List<String> findIndexRange(Table tbl, List<Predicate.Comparison> conjuncts, String[] literals, Explain describe) {
+        OrderedIndex index = null;
+        float low = Float.NEGATIVE_INFINITY;
+        float high = Float.POSITIVE_INFINITY;
+
+        for (Predicate.Comparison comparison : conjuncts) {
+            if (index == null) {
+                index = tbl.getOrderedIndex(comparison.column);
+            }
+            if (index == null || !comparison.column.equals(index.getColumn())) {
+                continue;
+            }
+
+            Float value = OrderedIndex.parseKey(comparison.value.resolve(literals));
+            if (value == null) {
+                return null; // compared as strings, which the index does not order
+            }
+            switch (comparison.operator) {
+                case "=":
+                    low = Math.max(low, value);
+                    high = Math.min(high, value);
+                    break;
+                case ">":
+                case ">=":
+                    low = Math.max(low, value);
+                    break;
+                case "<":
+                case "<=":
+                    high = Math.min(high, value);
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        if (index == null) {
+            return null;
+        }
+        List<String> range = low > high ? new ArrayList<>() : index.range(low, high); // contradictory bounds match nothing
+        if (describe != null) {
+            describe.setAccess("ordered index " + index.getName(), index.getColumn(),
+                    low + " <= " + index.getColumn() + " <= " + high, range.size());
+        }
+        return range;
+    }
+
+    // Returns the canonical form of an integer literal ("007" -> "7"), or null if it is not one.
+    private String canonicalInt(String value) {
+        Filter.NumberParser number = new Filter.NumberParser();
+        return value != null && number.parseInt(value) ? Integer.toString(number.intValue) : null;
+    }
+
+    // Records a statement's latency and rows under its kind and, if the table exists, its table
+    private void record(Plan plan, long nanos, long scanned, long returned) {
+        if (plan.statementStats == null) {
+            plan.statementStats = stats.forStatement(kindOf(plan)); // any thread may set it; all get the same entry
+        }
+        plan.statementStats.record(nanos, scanned, returned);
+
+        String tableName = plan.statement != null ? plan.statement.tableName : null;
+        if (plan.tableStats == null && tableName != null && tableMap.containsKey(tableName)) {
+            plan.tableStats = stats.forTable(tableName);
+        }
+        if (plan.tableStats != null) {
+            plan.tableStats.record(nanos, scanned, returned);
+        }
+    }
+
+    private static String kindOf(Plan plan) {
+        Statement statement = plan.statement;
+        if (statement instanceof Statement.Select) {
+            return "SELECT";
+        } else if (statement instanceof Statement.Update) {
+            return "UPDATE";
+        } else if (statement instanceof Statement.Insert) {
+            return "INSERT";
+        } else if (statement instanceof Statement.Delete) {
+            return "DELETE";
+        } else if (statement instanceof Statement.CreateTable) {
+            return "CREATE TABLE";
+        } else if (statement instanceof Statement.CreateIndex) {
+            return "CREATE INDEX";
+        } else if (statement instanceof Statement.Copy) {
+            return "COPY";
+        } else if (statement instanceof Statement.Checkpoint) {
+            return "CHECKPOINT";
+        } else if (statement instanceof Statement.ShowStats) {
+            return "SHOW STATS";
+        } else if (statement instanceof Statement.ResetStats) {
+            return "RESET STATS";
+        } else if (statement instanceof Statement.Explain) {
+            return "EXPLAIN";
+        }
+        return "INVALID"; // did not parse
+    }
+
+    // Latencies and row counts so far, with the key maps of the tables and the engine's counters
+    public Stats.Snapshot getStats() {
+        Map<String, HashMapStats> keyMaps = new LinkedHashMap<>();
+        for (Table tbl : new TreeMap<>(tableMap).values()) {
+            keyMaps.put(tbl.getName(), keyMapStats(tbl, false));
+        }
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("key_lookups", keyLookups.sum());
+        counters.put("index_scans", indexScans.sum());
+        counters.put("hash_lookups", hashLookups.sum());
+        counters.put("bitmap_lookups", bitmapLookups.sum());
+        counters.put("parallel_scans", parallelScans.sum());
+        counters.put("plan_cache_hits", planCache.getHits());
+        counters.put("plan_cache_misses", planCache.getMisses());
+        WriteAheadLog current = log;
+        if (current != null) {
+            counters.put("log_forces", current.getForceCount());
+        }
+        return new Stats.Snapshot(stats.statementTimings(), stats.tableTimings(), keyMaps, counters);
+    }
+
+    // Zeroes the statistics of SHOW STATS: latencies, row counts, key map resize counts and the
+    // access path and plan cache counters. The log's force count keeps running. Throws
+    // IllegalStateException if this thread has a ResultSet open on a table, see openSelect.
+    public void resetStats() {
+        String reading = readByOpenResultSet();
+        if (reading != null) {
+            throw new IllegalStateException(reading.substring("ERROR: ".length()));
+        }
+        stats.reset();
+        for (Table tbl : tableMap.values()) {
+            keyMapStats(tbl, true);
+        }
+        keyLookups.reset();
+        indexScans.reset();
+        hashLookups.reset();
+        bitmapLookups.reset();
+        parallelScans.reset();
+        planCache.resetCounters();
+    }
+
+    // Shape of the table's key map, read under its lock; reset takes the write lock for the counts
+    private static HashMapStats keyMapStats(Table tbl, boolean reset) {
+        HashMapStats keyMap = new HashMapStats();
+        Lock lock = reset ? tbl.getLock().writeLock() : tbl.getLock().readLock();
+        lock.lock();
+        try {
+            tbl.getStorage().addKeyMapStats(keyMap, reset);
+        } finally {
+            lock.unlock();
+        }
+        return keyMap;
+    }
+
+    public long getKeyLookupCount() {
+        return keyLookups.sum();
+    }
+
+    public long getIndexScanCount() {
+        return indexScans.sum();
+    }
+
+    public long getHashLookupCount() {
+        return hashLookups.sum();
+    }
+
+    public long getBitmapLookupCount() {
+        return bitmapLookups.sum();
+    }
+
+    // The table with the given name, or null
+    public Table getTable(String tableName) {
+        return tableMap.get(tableName);
+    }
+
+    public long getParallelScanCount() {
+        return parallelScans.sum();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Threads a large full scan is split across; 1 scans every table on the calling thread
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    // Tables with fewer rows than this are always scanned on the calling thread
+    public void setParallelThreshold(int rows) {
+        this.parallelThreshold = rows;
+    }
+
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+    public String getDefaultStorage() {
+        return defaultStorage;
+    }
+
+    // Storage of tables created without USING, "ROW", "COLUMNAR", "MVCC", "CONCURRENT" or "OFFHEAP"
+    public void setDefaultStorage(String storage) {
+        this.defaultStorage = storage.toUpperCase();
+    }
+    
+}
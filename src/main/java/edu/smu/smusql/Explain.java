@@ -0,0 +1,158 @@
+package edu.smu.smusql;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Report of EXPLAIN and EXPLAIN ANALYZE for one statement.
+ * EXPLAIN shows the plan the engine picks for the statement with its literals: the table, the
+ * access path (key lookup, hash index, bitmap indexes, ordered index range or a full scan), the WHERE clause in the
+ * order its comparisons are tested, and the estimated number of matching rows. The estimate is
+ * exact for the rows the access path reads and uses fixed selectivities for the comparisons left
+ * to test on them (see selectivity()), as the engine keeps no statistics on values.
+ *
+ * EXPLAIN ANALYZE also runs the statement and adds the rows it actually scanned and matched, the
+ * time of each phase and the bytes its thread allocated. The phases are parse (from the call until
+ * the plan of the shape is found or made), plan (choosing the access path, including the index
+ * lookup that lists the candidate rows), execute (reading, testing and changing the rows) and
+ * format (writing the rows of a SELECT as text). Allocation is counted from planning on, and
+ * leaves out what scan pool threads allocate in a parallel scan.
+ */
+public class Explain {
+    final boolean analyze;
+    private final long parseNanos;
+
+    private String table;
+    private String storage;
+    private long tableRows;
+    private String access;        // e.g. "key lookup", "hash index name_idx", "full scan"
+    private String accessDetail;  // condition or range the access path uses, null for a scan
+    private Collection<String> accessColumns = List.of(); // columns the access path already narrows on
+    private long accessRows;      // rows the access path reads
+    private String filter;
+    private Predicate where;
+
+    private long planNanos;
+    private long executeNanos;
+    private long formatNanos;
+    private long allocatedBytes = -1; // -1 if the JVM cannot count it
+    private long rowsScanned;
+    private long rowsMatched;
+    private String result;            // message of a statement without rows
+
+    Explain(boolean analyze, long parseNanos) {
+        this.analyze = analyze;
+        this.parseNanos = parseNanos;
+    }
+
+    void setTable(Table tbl) {
+        this.table = tbl.getName();
+        this.storage = tbl.getStorage().getKind();
+        this.tableRows = tbl.size();
+    }
+
+    void setFilter(Predicate where, String filter) {
+        this.where = where;
+        this.filter = filter;
+    }
+
+    void setAccess(String access, String column, String detail, long rows) {
+        setCombinedAccess(access, column != null ? List.of(column) : List.of(), detail, rows);
+    }
+
+    // Access path that narrows on several columns at once, as bitmap indexes do
+    void setCombinedAccess(String access, Collection<String> columns, String detail, long rows) {
+        this.access = access;
+        this.accessColumns = columns;
+        this.accessDetail = detail;
+        this.accessRows = rows;
+    }
+
+    void addPlanTime(long nanos) {
+        planNanos += nanos;
+    }
+
+    void addFormatTime(long nanos) {
+        formatNanos += nanos;
+    }
+
+    // What running the statement took; the plan and format times are part of the total
+    void setRun(long totalNanos, long allocatedBytes, Stats.Rows rows, String result) {
+        this.executeNanos = Math.max(0, totalNanos - planNanos - formatNanos);
+        this.allocatedBytes = allocatedBytes;
+        this.rowsScanned = rows.scanned;
+        this.rowsMatched = rows.returned;
+        this.result = result;
+    }
+
+    // Rows expected to match: those the access path reads, thinned by the comparisons on other
+    // columns. At least one if any row is read, as a selectivity is only a guess.
+    public double getEstimatedRows() {
+        return accessRows > 0 ? Math.max(1, accessRows * selectivity(where, accessColumns)) : 0;
+    }
+
+    // Fraction of rows a WHERE clause is assumed to keep, leaving out comparisons on the given
+    // columns: 1/10 for "=", 9/10 for "!=" and 1/3 for a range, as in System R
+    static double selectivity(Predicate predicate, Collection<String> skipColumns) {
+        if (predicate == null) {
+            return 1;
+        }
+        if (predicate instanceof Predicate.And) {
+            Predicate.And and = (Predicate.And) predicate;
+            return selectivity(and.left, skipColumns) * selectivity(and.right, skipColumns);
+        }
+        if (predicate instanceof Predicate.Or) {
+            Predicate.Or or = (Predicate.Or) predicate;
+            double left = selectivity(or.left, skipColumns);
+            double right = selectivity(or.right, skipColumns);
+            return left + right - left * right;
+        }
+        Predicate.Comparison comparison = (Predicate.Comparison) predicate;
+        if (skipColumns.contains(comparison.column)) {
+            return 1;
+        }
+        switch (comparison.operator) {
+            case "=":
+                return 0.1;
+            case "!=":
+                return 0.9;
+            default:
+                return 1.0 / 3;
+        }
+    }
+
+    // Tab-separated lines of "plan detail", in the style of SHOW STATS
+    public String format() {
+        StringBuilder out = new StringBuilder("plan\tdetail");
+        if (table != null) {
+            line(out, "table", table + " (" + storage + ", " + tableRows + " rows)");
+        }
+        line(out, "access", accessDetail != null ? access + " (" + accessDetail + ")" : access);
+        if (table != null) {
+            line(out, "filter", filter);
+            line(out, "estimated_rows", String.format(Locale.ROOT, "%.0f", getEstimatedRows()));
+        }
+        if (analyze) {
+            line(out, "rows_scanned", Long.toString(rowsScanned));
+            line(out, "rows_matched", Long.toString(rowsMatched));
+            line(out, "parse_us", micros(parseNanos));
+            line(out, "plan_us", micros(planNanos));
+            line(out, "execute_us", micros(executeNanos));
+            line(out, "format_us", micros(formatNanos));
+            line(out, "allocated_bytes", allocatedBytes >= 0 ? Long.toString(allocatedBytes) : "unknown");
+            if (result != null) {
+                line(out, "result", result);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String name, String value) {
+        out.append('\n').append(name).append('\t').append(value);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+}
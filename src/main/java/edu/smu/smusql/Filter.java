@@ -0,0 +1,495 @@
+package edu.smu.smusql;
+
+import java.util.List;
+
+/*
+ * A WHERE clause compiled for one execution of a statement against one table.
+ * Columns are resolved to their positions and literals parsed once by compile(), so testing a row
+ * only reads the cells it needs, branches on int operator codes, stops at the first AND operand that
+ * fails or OR operand that holds, and allocates nothing.
+ *
+ * Values compare as they always have in smuSQL: as ints if both sides are ints, otherwise as floats
+ * if both sides are numbers, otherwise as strings, where only = and != can hold.
+ */
+public abstract class Filter {
+    static final int EQ = 0;
+    static final int NE = 1;
+    static final int LT = 2;
+    static final int GT = 3;
+    static final int LE = 4;
+    static final int GE = 5;
+    private static final String[] OPERATORS = {"=", "!=", "<", ">", "<=", ">="}; // by operator code
+
+    public abstract boolean test(TableStorage.Cursor row);
+
+    // False only if no row of the zone map's block can pass, so a scan may skip the block
+    boolean mayMatch(ZoneMap zones, int block) {
+        return true;
+    }
+
+    // Appends the filter as EXPLAIN shows it: comparisons in the order they are tested, each
+    // followed by how it compares, e.g. "age > 30 (int)"
+    abstract void describe(StringBuilder out, List<String> columns);
+
+    public String describe(List<String> columns) {
+        StringBuilder out = new StringBuilder();
+        describe(out, columns);
+        return out.toString();
+    }
+
+    // Compiles the clause with the given literal vector; a missing clause matches every row
+    public static Filter compile(Predicate where, Table table, String[] literals) {
+        if (where == null) {
+            return new Constant(true);
+        }
+        if (where instanceof Predicate.And) {
+            Predicate.And and = (Predicate.And) where;
+            return new And(compile(and.left, table, literals), compile(and.right, table, literals));
+        }
+        if (where instanceof Predicate.Or) {
+            Predicate.Or or = (Predicate.Or) where;
+            return new Or(compile(or.left, table, literals), compile(or.right, table, literals));
+        }
+
+        Predicate.Comparison comparison = (Predicate.Comparison) where;
+        int column = table.getColumnIndex(comparison.column);
+        int operator = operatorCode(comparison.operator);
+        if (column < 0 || operator < 0) {
+            return new Constant(false); // no row has a value for an unknown column
+        }
+        TextComparison text = new TextComparison(column, operator, comparison.value.resolve(literals));
+
+        // Typed columns compare their primitives, falling back to text if the column is widened mid-scan
+        ColumnType type = table.getStorage().getType(column);
+        if (type == ColumnType.INT) {
+            if (text.valueIsInt) {
+                return new IntComparison(text);
+            }
+            if (text.valueIsFloat) {
+                return new FloatComparison(text, ColumnType.INT);
+            }
+            return new TypedConstant(text, ColumnType.INT, operator == NE); // no number prints as this text
+        }
+        if (type == ColumnType.DOUBLE) {
+            if (text.valueIsFloat) {
+                return new FloatComparison(text, ColumnType.DOUBLE);
+            }
+            return new TypedConstant(text, ColumnType.DOUBLE, operator == NE);
+        }
+        if ((operator == EQ || operator == NE) && !text.valueIsFloat) {
+            // Text compared as text: a dictionary-encoded column compares codes instead
+            int code = table.getStorage().lookupCode(column, text.value);
+            if (code >= 0) {
+                return new CodeComparison(text, code);
+            }
+        }
+        return text;
+    }
+
+    static int operatorCode(String operator) {
+        switch (operator) {
+            case "=": return EQ;
+            case "!=": return NE;
+            case "<": return LT;
+            case ">": return GT;
+            case "<=": return LE;
+            case ">=": return GE;
+            default: return -1;
+        }
+    }
+
+    static boolean compareIntegers(int operator, int columnValue, int comparisonValue) {
+        switch (operator) {
+            case EQ: return columnValue == comparisonValue;
+            case NE: return columnValue != comparisonValue;
+            case LT: return columnValue < comparisonValue;
+            case GT: return columnValue > comparisonValue;
+            case LE: return columnValue <= comparisonValue;
+            case GE: return columnValue >= comparisonValue;
+            default: return false;
+        }
+    }
+
+    static boolean compareFloats(int operator, float columnValue, float comparisonValue) {
+        switch (operator) {
+            case EQ: return columnValue == comparisonValue;
+            case NE: return columnValue != comparisonValue;
+            case LT: return columnValue < comparisonValue;
+            case GT: return columnValue > comparisonValue;
+            case LE: return columnValue <= comparisonValue;
+            case GE: return columnValue >= comparisonValue;
+            default: return false;
+        }
+    }
+
+    static boolean compareStrings(int operator, String columnValue, String comparisonValue) {
+        switch (operator) {
+            case EQ: return columnValue.equals(comparisonValue);
+            case NE: return !columnValue.equals(comparisonValue);
+            default: return false;
+        }
+    }
+
+    static class Constant extends Filter {
+        private final boolean result;
+
+        Constant(boolean result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            return result;
+        }
+
+        @Override
+        boolean mayMatch(ZoneMap zones, int block) {
+            return result;
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            out.append(result);
+        }
+    }
+
+    static class And extends Filter {
+        private final Filter left;
+        private final Filter right;
+
+        And(Filter left, Filter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            return left.test(row) && right.test(row);
+        }
+
+        @Override
+        boolean mayMatch(ZoneMap zones, int block) {
+            return left.mayMatch(zones, block) && right.mayMatch(zones, block);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            left.describe(out, columns);
+            out.append(" AND ");
+            right.describe(out, columns);
+        }
+    }
+
+    static class Or extends Filter {
+        private final Filter left;
+        private final Filter right;
+
+        Or(Filter left, Filter right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            return left.test(row) || right.test(row);
+        }
+
+        @Override
+        boolean mayMatch(ZoneMap zones, int block) {
+            return left.mayMatch(zones, block) || right.mayMatch(zones, block);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            out.append('(');
+            left.describe(out, columns);
+            out.append(" OR ");
+            right.describe(out, columns);
+            out.append(')');
+        }
+    }
+
+    // Compares a cell by its text, parsing it as a number when the literal is one
+    static class TextComparison extends Filter {
+        final int column;
+        final int operator;
+        final String value;
+        final boolean valueIsInt;
+        final boolean valueIsFloat;
+        final int intValue;
+        final float floatValue;
+        private final NumberParser cell = new NumberParser();
+
+        TextComparison(int column, int operator, String value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+            NumberParser parsed = new NumberParser();
+            this.valueIsInt = parsed.parseInt(value);
+            this.intValue = parsed.intValue;
+            this.valueIsFloat = parsed.parseFloat(value);
+            this.floatValue = parsed.floatValue;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            return holds(row.getString(column));
+        }
+
+        // Whether the comparison holds for a cell of the given text
+        boolean holds(String columnValue) {
+            if (columnValue == null) {
+                return false;
+            }
+            if (valueIsInt && cell.parseInt(columnValue)) {
+                return compareIntegers(operator, cell.intValue, intValue);
+            }
+            if (valueIsFloat && cell.parseFloat(columnValue)) {
+                return compareFloats(operator, cell.floatValue, floatValue);
+            }
+            return compareStrings(operator, columnValue, value);
+        }
+
+        @Override
+        boolean mayMatch(ZoneMap zones, int block) {
+            if (operator == NE || !(valueIsInt || valueIsFloat)) {
+                return true; // may hold for text, which the zone map does not summarize
+            }
+            return zones.mayHold(block, column, operator, valueIsInt, intValue, valueIsFloat, floatValue);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            describe(out, columns, valueIsFloat ? "parsed per row" : "string");
+        }
+
+        void describe(StringBuilder out, List<String> columns, String comparedAs) {
+            out.append(columns.get(column)).append(' ').append(OPERATORS[operator]).append(' ')
+                    .append(value).append(" (").append(comparedAs).append(')');
+        }
+    }
+
+    // INT column against an int literal
+    static class IntComparison extends Filter {
+        private final TextComparison text;
+
+        IntComparison(TextComparison text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            if (row.type(text.column) != ColumnType.INT) {
+                return text.test(row);
+            }
+            return compareIntegers(text.operator, row.getInt(text.column), text.intValue);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            text.describe(out, columns, "int");
+        }
+    }
+
+    // INT or DOUBLE column against a non-int number, compared as floats like their text would be
+    static class FloatComparison extends Filter {
+        private final TextComparison text;
+        private final ColumnType type;
+
+        FloatComparison(TextComparison text, ColumnType type) {
+            this.text = text;
+            this.type = type;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            if (row.type(text.column) != type) {
+                return text.test(row);
+            }
+            float columnValue = type == ColumnType.INT ? row.getInt(text.column) : (float) row.getDouble(text.column);
+            return compareFloats(text.operator, columnValue, text.floatValue);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            text.describe(out, columns, "float");
+        }
+    }
+
+    // Dictionary-encoded STRING column against text that is not a number, with = or !=: equal
+    // values have equal codes, so the cell's text is never read
+    static class CodeComparison extends Filter {
+        private final TextComparison text;
+        private final int code; // 0 if no row held the value when compiled
+
+        CodeComparison(TextComparison text, int code) {
+            this.text = text;
+            this.code = code;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            int rowCode = row.getCode(text.column);
+            if (rowCode < 0) {
+                return text.test(row); // the column stopped being encoded mid-scan
+            }
+            return rowCode != 0 && (rowCode == code) == (text.operator == EQ);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            text.describe(out, columns, "dictionary code");
+        }
+    }
+
+    // Numeric column against text that is not a number: only != can hold
+    static class TypedConstant extends Filter {
+        private final TextComparison text;
+        private final ColumnType type;
+        private final boolean result;
+
+        TypedConstant(TextComparison text, ColumnType type, boolean result) {
+            this.text = text;
+            this.type = type;
+            this.result = result;
+        }
+
+        @Override
+        public boolean test(TableStorage.Cursor row) {
+            return row.type(text.column) == type ? result : text.test(row);
+        }
+
+        @Override
+        void describe(StringBuilder out, List<String> columns) {
+            text.describe(out, columns, "always " + result + " for " + type + " values");
+        }
+    }
+
+    // Parses numbers the way Integer.parseInt, Float.parseFloat and Double.parseDouble do, but
+    // answers "not a number" for ordinary text without throwing: the syntax is checked here first,
+    // so the JDK parsers only see text they accept. Holds the last result so no value is boxed.
+    static class NumberParser {
+        int intValue;
+        float floatValue;
+        double doubleValue;
+
+        boolean parseInt(String s) {
+            int length = s.length();
+            int i = 0;
+            boolean negative = false;
+            if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) {
+                negative = s.charAt(0) == '-';
+                i = 1;
+            }
+            if (i == length) {
+                return false;
+            }
+            long result = 0;
+            for (; i < length; i++) {
+                char c = s.charAt(i);
+                int digit = c >= '0' && c <= '9' ? c - '0' : c > 127 ? Character.digit(c, 10) : -1; // other Unicode digits are rare
+                if (digit < 0) {
+                    return false;
+                }
+                result = result * 10 + digit;
+                if (result > 1L + Integer.MAX_VALUE) {
+                    return false; // out of range whatever the sign, and leading zeros never get here
+                }
+            }
+            result = negative ? -result : result;
+            if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+                return false;
+            }
+            intValue = (int) result;
+            return true;
+        }
+
+        boolean parseFloat(String s) {
+            if (!isFloat(s)) {
+                return false; // e.g. a quoted string, "5th Avenue" or "New York"
+            }
+            floatValue = Float.parseFloat(s);
+            return true;
+        }
+
+        // As parseFloat, to the precision of Double.parseDouble
+        boolean parseDouble(String s) {
+            if (!isFloat(s)) {
+                return false;
+            }
+            doubleValue = Double.parseDouble(s);
+            return true;
+        }
+
+        // Whether Float.parseFloat and Double.parseDouble accept the text
+        private static boolean isFloat(String s) {
+            int start = 0;
+            int end = s.length();
+            while (start < end && s.charAt(start) <= ' ') {
+                start++; // they trim like String.trim
+            }
+            while (end > start && s.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start < end && (s.charAt(start) == '-' || s.charAt(start) == '+')) {
+                start++;
+            }
+            return isUnsignedFloat(s, start, end);
+        }
+
+        // Whether s[i, end) is a float without its sign as Float.parseFloat reads it: NaN, Infinity,
+        // or decimal or hexadecimal digits with an optional point, exponent and f/F/d/D suffix
+        private static boolean isUnsignedFloat(String s, int i, int end) {
+            if (s.startsWith("NaN", i)) {
+                return i + 3 == end;
+            }
+            if (s.startsWith("Infinity", i)) {
+                return i + 8 == end;
+            }
+            boolean hex = end - i > 2 && s.charAt(i) == '0' && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X');
+            if (hex) {
+                i += 2;
+            }
+            int digits = 0;
+            while (i < end && isDigit(s.charAt(i), hex)) {
+                i++;
+                digits++;
+            }
+            if (i < end && s.charAt(i) == '.') {
+                i++;
+                while (i < end && isDigit(s.charAt(i), hex)) {
+                    i++;
+                    digits++;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+            // The exponent is optional for decimal digits and required for hexadecimal ones
+            char marker = i < end ? s.charAt(i) : 0;
+            if (hex ? marker == 'p' || marker == 'P' : marker == 'e' || marker == 'E') {
+                i++;
+                if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                    i++;
+                }
+                int exponent = i;
+                while (i < end && isDigit(s.charAt(i), false)) {
+                    i++;
+                }
+                if (i == exponent) {
+                    return false;
+                }
+            } else if (hex) {
+                return false;
+            }
+            if (i < end && "fFdD".indexOf(s.charAt(i)) >= 0) {
+                i++;
+            }
+            return i == end;
+        }
+
+        private static boolean isDigit(char c, boolean hex) {
+            return (c >= '0' && c <= '9') || (hex && ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Hash secondary index on a single column, built with CREATE HASH INDEX.
+ * Maps each distinct value to the set of row keys holding it, so an equality predicate reads one
+ * posting set instead of scanning the table. Suited to low-cardinality columns such as city or category.
+ */
+public class HashIndex implements Index {
+    private final String name;
+    private final String column;
+    private final OpenHashMap<String, Set<String>> postings = new OpenHashMap<>();       // text values
+    private final IntHashMap<Set<String>> numericPostings = new IntHashMap<>();           // numbers, by float bits
+
+    public HashIndex(String name, String column) {
+        this.name = name;
+        this.column = column;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public void add(String cellValue, String rowKey) {
+        if (cellValue == null) {
+            return;
+        }
+        Set<String> rowKeys = postingsOf(cellValue);
+        if (rowKeys == null) {
+            rowKeys = new HashSet<>();
+            Float number = OrderedIndex.parseKey(cellValue);
+            if (number != null) {
+                numericPostings.put(numericKey(number), rowKeys);
+            } else {
+                postings.put(cellValue, rowKeys);
+            }
+        }
+        rowKeys.add(rowKey);
+    }
+
+    public void remove(String cellValue, String rowKey) {
+        if (cellValue == null) {
+            return;
+        }
+        Float number = OrderedIndex.parseKey(cellValue);
+        Set<String> rowKeys = number != null ? numericPostings.get(numericKey(number)) : postings.get(cellValue);
+        if (rowKeys != null) {
+            rowKeys.remove(rowKey);
+            if (rowKeys.isEmpty()) {
+                if (number != null) {
+                    numericPostings.remove(numericKey(number));
+                } else {
+                    postings.remove(cellValue);
+                }
+            }
+        }
+    }
+
+    // Returns a copy of the keys of the rows whose value equals the given one,
+    // so callers may update the indexed column while walking the result.
+    public List<String> lookup(String value) {
+        Set<String> rowKeys = postingsOf(value);
+        return rowKeys == null ? new ArrayList<>() : new ArrayList<>(rowKeys);
+    }
+
+    // Engine.evaluateCondition compares numbers by value ("5" = "5.0"), so numeric cells are keyed
+    // by their float value. Two ints that round to the same float share a posting set, which only
+    // adds candidates that the caller's re-check filters out.
+    private Set<String> postingsOf(String value) {
+        Float number = OrderedIndex.parseKey(value);
+        return number != null ? numericPostings.get(numericKey(number)) : postings.get(value);
+    }
+
+    private static int numericKey(float number) {
+        return Float.floatToIntBits(number + 0.0f); // + 0.0f folds -0.0 into 0.0
+    }
+}
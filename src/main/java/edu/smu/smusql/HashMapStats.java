@@ -0,0 +1,43 @@
+package edu.smu.smusql;
+
+/*
+ * Shape of one or more OpenHashMaps, added up: how full their tables are, how often they were
+ * rebuilt, and how far lookups probe. An entry's probe length is 1 if it sits in its home slot,
+ * plus one per slot it had to move past, so a lookup of a key that is there reads that many slots.
+ */
+public class HashMapStats {
+    long entries;
+    long capacity;      // table slots
+    long resizes;       // rebuilds into a bigger table
+    long shrinks;       // rebuilds into a smaller table
+    long probeTotal;    // probe lengths of all entries, added up
+    int probeMax;
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getResizes() {
+        return resizes;
+    }
+
+    public long getShrinks() {
+        return shrinks;
+    }
+
+    public double getAverageProbeLength() {
+        return entries == 0 ? 0 : (double) probeTotal / entries;
+    }
+
+    public int getMaxProbeLength() {
+        return probeMax;
+    }
+
+    public double getLoadFactor() {
+        return capacity == 0 ? 0 : (double) entries / capacity;
+    }
+}
@@ -0,0 +1,15 @@
+package edu.smu.smusql;
+
+/*
+ * A secondary index on one column of a Table.
+ * Table calls add/remove for every row it stores or drops, so implementations only map cell values to row keys.
+ */
+public interface Index {
+    String getName();
+
+    String getColumn();
+
+    void add(String cellValue, String rowKey);
+
+    void remove(String cellValue, String rowKey);
+}
@@ -0,0 +1,143 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * OpenHashMap specialised for int keys.
+ * Keys are kept in an int[] and compared with ==, so numeric keys are neither boxed nor hashed
+ * through a String. Any int, including 0, is a valid key; a separate flag array marks used slots.
+ */
+public class IntHashMap<V> {
+    private static final int INITIAL_CAPACITY = 16; // must be a power of two
+    private static final float MAX_LOAD = 0.7f;
+
+    private int[] keys;
+    private boolean[] used;
+    private V[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+
+    public IntHashMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    // Sized so that expectedSize entries fit without a resize
+    public IntHashMap(int expectedSize) {
+        allocate(OpenHashMap.capacityFor(expectedSize));
+    }
+
+    private int slot(int key) {
+        return OpenHashMap.spread(key) & mask;
+    }
+
+    // Slot holding the key, or -1
+    private int find(int key) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public void put(int key, V value) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value; // Update value if key already exists
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        used[i] = true;
+        values[i] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public V get(int key) {
+        int i = find(key);
+        return i >= 0 ? values[i] : null; // null if the key is not found
+    }
+
+    public void remove(int key) {
+        int i = find(key);
+        if (i < 0) {
+            return;
+        }
+
+        // Backward-shift deletion, as in OpenHashMap.remove
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) {
+                break;
+            }
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        used[i] = false;
+        values[i] = null;
+        size--;
+
+        if (size <= keys.length / 8 && keys.length > INITIAL_CAPACITY) {
+            rehash(keys.length >> 1);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // A copy of the keys, so the map may be changed while walking them
+    public int[] keys() {
+        int[] copy = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                copy[n++] = keys[i];
+            }
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * MAX_LOAD);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        V[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldUsed[j]) {
+                int i = slot(oldKeys[j]);
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                used[i] = true;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
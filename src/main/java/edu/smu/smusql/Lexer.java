@@ -0,0 +1,121 @@
+package edu.smu.smusql;
+
+import java.util.Arrays;
+
+/*
+ * Single-pass tokenizer for smuSQL.
+ * Tokens are kept as offsets into the statement, so only literals, which the engine needs as
+ * values, and words the Parser asks for are ever copied out as Strings.
+ */
+public class Lexer {
+    public static final int WORD = 0;    // keywords and names, e.g. SELECT, users, user_id
+    public static final int NUMBER = 1;  // 42, -7, 3.14, .5
+    public static final int STRING = 2;  // 'New York', 'it''s', quotes included as the engine stores them
+    public static final int SYMBOL = 3;  // ( ) , * ; ? = < > <= >= != <>
+
+    private final String source;
+    private int count = 0;
+    private int[] kinds = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+
+    public Lexer(String source) {
+        this.source = source;
+        tokenize();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int kind(int token) {
+        return kinds[token];
+    }
+
+    public String text(int token) {
+        return source.substring(starts[token], ends[token]);
+    }
+
+    public boolean isLiteral(int token) {
+        return kinds[token] == NUMBER || kinds[token] == STRING;
+    }
+
+    // True if the token is the given word or symbol, ignoring case
+    public boolean is(int token, String text) {
+        int length = ends[token] - starts[token];
+        return kinds[token] != STRING && length == text.length()
+                && source.regionMatches(true, starts[token], text, 0, length);
+    }
+
+    // Appends the token to a shape without copying it into its own String
+    void appendTo(StringBuilder shape, int token) {
+        shape.append(source, starts[token], ends[token]);
+    }
+
+    private void tokenize() {
+        int length = source.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                // Quoted string runs to the next quote, or to the end if it is never closed. A doubled
+                // quote, as in 'it''s', is part of the string and is kept as written.
+                int end = source.indexOf('\'', i + 1);
+                while (end >= 0 && end + 1 < length && source.charAt(end + 1) == '\'') {
+                    end = source.indexOf('\'', end + 2);
+                }
+                end = end < 0 ? length : end + 1;
+                add(STRING, i, end);
+                i = end;
+            } else if (isSymbol(c)) {
+                int end = i + 1;
+                if (end < length && ((source.charAt(end) == '=' && (c == '<' || c == '>' || c == '!'))
+                        || (c == '<' && source.charAt(end) == '>'))) {
+                    end++; // two-character comparison operator
+                }
+                add(SYMBOL, i, end);
+                i = end;
+            } else {
+                int end = i + 1;
+                while (end < length && !Character.isWhitespace(source.charAt(end))
+                        && source.charAt(end) != '\'' && !isSymbol(source.charAt(end))) {
+                    end++;
+                }
+                add(isNumberStart(i, end) ? NUMBER : WORD, i, end);
+                i = end;
+            }
+        }
+    }
+
+    private void add(int kind, int start, int end) {
+        if (count == kinds.length) {
+            kinds = Arrays.copyOf(kinds, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        kinds[count] = kind;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static boolean isSymbol(char c) {
+        return c == '(' || c == ')' || c == ',' || c == '*' || c == ';' || c == '?'
+                || c == '=' || c == '<' || c == '>' || c == '!';
+    }
+
+    // A word is a number if it starts like one: 5, -5, +5, .5, -.5
+    private boolean isNumberStart(int start, int end) {
+        int i = start;
+        if (i < end && (source.charAt(i) == '-' || source.charAt(i) == '+')) {
+            i++;
+        }
+        if (i < end && source.charAt(i) == '.') {
+            i++;
+        }
+        return i < end && Character.isDigit(source.charAt(i));
+    }
+}
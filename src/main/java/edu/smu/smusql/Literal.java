@@ -0,0 +1,65 @@
+package edu.smu.smusql;
+
+import java.util.List;
+
+/*
+ * A value in a parsed statement.
+ * Numbers and quoted strings are parameters: the node holds the position of the literal in the
+ * statement, and each execution supplies the literal vector from PlanCache.Shape. Bare words used
+ * as values (e.g. VALUES (1, NULL)) are part of the shape and are kept as constant text. A bare
+ * value of several tokens, such as VALUES (1, Apt 5), joins its parts with spaces.
+ */
+public class Literal {
+    private final int slot;      // index into the literal vector, -1 for constant text
+    private final String text;
+    private final Literal[] parts; // for a joined value, else null
+
+    private Literal(int slot, String text, Literal[] parts) {
+        this.slot = slot;
+        this.text = text;
+        this.parts = parts;
+    }
+
+    public static Literal parameter(int slot) {
+        return new Literal(slot, null, null);
+    }
+
+    public static Literal constant(String text) {
+        return new Literal(-1, text, null);
+    }
+
+    public static Literal joined(List<Literal> parts) {
+        return new Literal(-1, null, parts.toArray(new Literal[0]));
+    }
+
+    public boolean isParameter() {
+        return slot >= 0;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String resolve(String[] literals) {
+        if (parts != null) {
+            StringBuilder joined = new StringBuilder(parts[0].resolve(literals));
+            for (int i = 1; i < parts.length; i++) {
+                joined.append(' ').append(parts[i].resolve(literals));
+            }
+            return joined.toString();
+        }
+        return slot >= 0 ? literals[slot] : text;
+    }
+
+    @Override
+    public String toString() {
+        if (parts != null) {
+            StringBuilder joined = new StringBuilder(parts[0].toString());
+            for (int i = 1; i < parts.length; i++) {
+                joined.append(' ').append(parts[i]);
+            }
+            return joined.toString();
+        }
+        return slot >= 0 ? "?" + slot : text;
+    }
+}
@@ -1,7 +1,18 @@
 package edu.smu.smusql;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 // @author ziyuanliu@smu.edu.sg
 
@@ -145,6 +156,201 @@ public class Main {
             )
         ));
 
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE id = 3 AND age > 25",
+            List.of("id name age") // Key matches but the ANDed condition does not
+        ));
+        testCases.add(new TestCase(
+            "UPDATE student SET id = 7 WHERE id = 6",
+            List.of("Table student updated. 1 rows affected.")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE id = 7",
+            List.of(
+                "id name age",
+                "7 'Sara' 24"
+            )
+        ));
+        testCases.add(new TestCase(
+            "UPDATE student SET id = 9 WHERE age = 22",
+            List.of("ERROR: UPDATE would give 2 rows the same id") // would leave one of the two
+        ));
+        testCases.add(new TestCase(
+            "UPDATE student SET id = 1 WHERE id = 3",
+            List.of("ERROR: id 1 is already in use") // would replace row 1
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student",
+            List.of(
+                "id name age",
+                "1 'Jon' 22",
+                "2 'Mary' 26",
+                "3 'Jane' 23",
+                "5 'Ali' 22",
+                "7 'Sara' 24"
+            )
+        ));
+        testCases.add(new TestCase(
+            "CREATE TABLE tally (a, b)",
+            List.of("Table tally created")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO tally VALUES (1, 2)",
+            List.of("ERROR: Table tally has no id column to key its rows") // rows are stored under their id
+        ));
+        testCases.add(new TestCase(
+            "COPY tally FROM 'tally.csv'",
+            List.of("ERROR: Table tally has no id column to key its rows")
+        ));
+        testCases.add(new TestCase(
+            "CREATE INDEX idx_age ON student(age)",
+            List.of("Index idx_age created on student(age)")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE age > 22 AND age < 26",
+            List.of(
+                "id name age",
+                "3 'Jane' 23",
+                "7 'Sara' 24"
+            )
+        ));
+        testCases.add(new TestCase(
+            "UPDATE student SET age = 40 WHERE age >= 26",
+            List.of("Table student updated. 1 rows affected.")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE age > 30",
+            List.of(
+                "id name age",
+                "2 'Mary' 40"
+            )
+        ));
+        testCases.add(new TestCase(
+            "CREATE HASH INDEX idx_name ON student(name)",
+            List.of("Index idx_name created on student(name)")
+        ));
+        testCases.add(new TestCase(
+            "UPDATE student SET age = 21 WHERE name = 'Jane'",
+            List.of("Table student updated. 1 rows affected.")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE name = 'Jane' AND age < 22",
+            List.of(
+                "id name age",
+                "3 'Jane' 21"
+            )
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO student VALUES (8, 'Li Na', 21)",
+            List.of("Row inserted into student")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM student WHERE name = 'Li Na'",
+            List.of(
+                "id name age",
+                "8 'Li Na' 21"
+            )
+        ));
+        testCases.add(new TestCase(
+            "CREATE TABLE course (id INT, title, credits DOUBLE, code) USING COLUMNAR",
+            List.of("Table course created")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO course VALUES (1, 'Data Structures', 4, 201)",
+            List.of("Row inserted into course")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO course VALUES (2, 'Databases', 3.5, 'IS112')",
+            List.of("Row inserted into course")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO course VALUES (3, 'Networks', 'four', 301)",
+            List.of("ERROR: Invalid DOUBLE value: 'four'")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM course WHERE credits > 3 AND code = 'IS112'",
+            List.of(
+                "id title credits code",
+                "2 'Databases' 3.5 'IS112'"
+            )
+        ));
+        testCases.add(new TestCase(
+            "UPDATE course SET credits = 4.5 WHERE id = 1",
+            List.of("Table course updated. 1 rows affected.")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM course WHERE credits >= 4",
+            List.of(
+                "id title credits code",
+                "1 'Data Structures' 4.5 201"
+            )
+        ));
+        testCases.add(new TestCase(
+            "DELETE FROM course WHERE code = 201",
+            List.of("Rows deleted from course. 1 rows affected.")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO course VALUES (3, 'Networks', 4, 'IS113')",
+            List.of("Row inserted into course")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO course VALUES (4, 'Algorithms', 3, 'CS201')",
+            List.of("Row inserted into course")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM course WHERE id = 2 OR credits = 4 AND code = 'CS201'",
+            List.of(
+                "id title credits code",
+                "2 'Databases' 3.5 'IS112'"
+            )
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM course WHERE (id = 2 OR credits = 4) AND code != 'IS112'",
+            List.of(
+                "id title credits code",
+                "3 'Networks' 4.0 'IS113'"
+            )
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM course WHERE credits <> 3.5 AND id != 3",
+            List.of(
+                "id title credits code",
+                "4 'Algorithms' 3.0 'CS201'"
+            )
+        ));
+        testCases.add(new TestCase(
+            "CREATE TABLE address (id, street, city)",
+            List.of("Table address created")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO address VALUES (1, Apt 5, New York), (2, 5th Avenue, Boston)",
+            List.of("2 rows inserted into address")
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO address VALUES (3, Apt 12, Austin)", // same shape as "Apt 5", other number
+            List.of("Row inserted into address")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM address WHERE id < 4",
+            List.of(
+                "id street city",
+                "1 Apt 5 New York",
+                "2 5th Avenue Boston",
+                "3 Apt 12 Austin"
+            )
+        ));
+        testCases.add(new TestCase(
+            "INSERT INTO address VALUES (4, 'Baker''s Row', 'St. John''s')", // a doubled quote stays in the string
+            List.of("Row inserted into address")
+        ));
+        testCases.add(new TestCase(
+            "SELECT * FROM address WHERE street = 'Baker''s Row'",
+            List.of(
+                "id street city",
+                "4 'Baker''s Row' 'St. John''s'"
+            )
+        ));
+
         // Execute and validate each test case
         for (TestCase testCase : testCases) {
             System.out.println("Executing query: " + testCase.query);
@@ -162,6 +368,825 @@ public class Main {
             }
             System.out.println();
         }
+
+        // Key-equality predicates should be answered with one lookup instead of a scan
+        runAccessPathTest("SELECT * FROM student WHERE id = 1", dbEngine::getKeyLookupCount, true);
+        runAccessPathTest("UPDATE student SET age = 30 WHERE id = 1 AND age = 22", dbEngine::getKeyLookupCount, true);
+        runAccessPathTest("DELETE FROM student WHERE id = 5", dbEngine::getKeyLookupCount, true);
+        runAccessPathTest("SELECT * FROM student WHERE id = 1 OR age = 23", dbEngine::getKeyLookupCount, false);
+
+        // Rows should keep their id as written, and "id = N" should match the same rows as a scan
+        for (String storage : new String[]{"ROW", "COLUMNAR", "MVCC", "CONCURRENT", "OFFHEAP"}) {
+            runKeyTextTest(storage);
+        }
+
+        // Range predicates on an indexed column should visit only the matching index range
+        runAccessPathTest("SELECT * FROM student WHERE age > 22 AND age < 26", dbEngine::getIndexScanCount, true);
+        runAccessPathTest("DELETE FROM student WHERE age >= 40", dbEngine::getIndexScanCount, true);
+        runAccessPathTest("SELECT * FROM student WHERE id > 4", dbEngine::getIndexScanCount, false);
+
+        // Equality predicates on a hash-indexed column should read the posting list
+        runAccessPathTest("SELECT * FROM student WHERE name = 'Jon'", dbEngine::getHashLookupCount, true);
+        runAccessPathTest("UPDATE student SET age = 24 WHERE name = 'Sara' AND age > 20", dbEngine::getHashLookupCount, true);
+        runAccessPathTest("SELECT * FROM student WHERE name = 'Jon' OR age = 24", dbEngine::getHashLookupCount, false);
+
+        // Statements that differ only in their literals should reuse the cached plan
+        runPlanCacheTest("SELECT * FROM student WHERE age >= 21 AND age <= 99", false);
+        runPlanCacheTest("SELECT * FROM student WHERE age >= 30 AND age <= 40", true);
+        runPlanCacheTest("SELECT   *  FROM student WHERE age>=5 AND age<='x'", true);
+
+        // Streamed results should match executeSQL byte for byte, even through a tiny buffer
+        runResultSetTest("SELECT * FROM student WHERE age > 20");
+        runResultSetTest("SELECT * FROM course WHERE credits >= 3.5");
+        runResultSetTest("SELECT * FROM nosuchtable");
+        runResultSetTest("INSERT INTO course VALUES (5, 'Compilers', 4, 'CS205')");
+        runOpenResultSetTest();
+
+        // Clients on several threads should leave exactly the rows they wrote
+        runConcurrencyTest("ROW", 8, 500);
+        runConcurrencyTest("CONCURRENT", 8, 500);
+
+        // A scan of an MVCC table should see the rows as they were when it started
+        runSnapshotTest();
+        runAbandonedSnapshotTest();
+
+        // Scans split across threads should give the same rows, in the same order, as serial scans
+        runParallelScanTest("SELECT * FROM student WHERE age > 21 OR name = 'Jon'");
+        runParallelScanTest("SELECT * FROM course WHERE credits >= 3.5 OR id = 1");
+        runParallelScanTest("SELECT * FROM stress_concurrent WHERE n = 1 AND owner < 3 OR id = 7");
+        runParallelScanTest("UPDATE stress_row SET n = 2 WHERE owner = 3 OR owner = 5");
+        runParallelScanTest("DELETE FROM stress_row WHERE n = 2 OR owner = 6");
+
+        // Replaying the write-ahead log should rebuild the tables, up to the last complete record
+        for (WriteAheadLog.Sync sync : WriteAheadLog.Sync.values()) {
+            runWriteAheadLogTest(sync, false);
+        }
+        runWriteAheadLogTest(WriteAheadLog.Sync.COMMIT, true);
+
+        // Multi-row INSERT and COPY should load the same rows as single-row INSERTs, and replay them
+        for (String storage : new String[]{"ROW", "COLUMNAR", "MVCC", "CONCURRENT", "OFFHEAP"}) {
+            runBulkLoadTest(storage);
+        }
+
+        // Statements should be timed and counted per kind and per table, until the stats are reset
+        runStatsTest();
+
+        // EXPLAIN should show the access path the statement takes; EXPLAIN ANALYZE should also run it
+        runExplainTest();
+
+        // Dictionary-encoded string columns should give the same results as text, past the last code
+        runDictionaryTest();
+
+        // Off-heap rows should behave like ROW storage, and reuse the memory of deleted rows
+        runOffHeapTest();
+
+        // Range scans of ROW tables should skip blocks whose values are out of range, and find the same rows
+        runZoneMapTest();
+
+        // Bitmap indexes should answer AND/OR clauses with the same rows as a scan, through INSERT/UPDATE/DELETE
+        runBitmapIndexTest();
+    }
+
+    private static void runBitmapIndexTest() {
+        System.out.println("Executing bitmap index check");
+        Engine engine = new Engine();
+        Engine reference = new Engine(); // no indexes
+        engine.executeSQL("CREATE TABLE users (id, city, age, category)");
+        reference.executeSQL("CREATE TABLE users (id, city, age, category)");
+        boolean passed = true;
+        for (int id = 1; id <= 9000; id += 100) { // past the 4096 values of an array container
+            StringBuilder insert = new StringBuilder("INSERT INTO users VALUES ");
+            for (int i = id; i < id + 100; i++) {
+                insert.append(i > id ? ", (" : "(").append(i).append(", 'City").append(i % 3 == 0 ? 0 : i % 7)
+                        .append("', ").append(18 + i % 50).append(", 'c").append(i % 4).append("')");
+            }
+            passed = passed && engine.executeSQL(insert.toString()).equals(reference.executeSQL(insert.toString()));
+        }
+        passed = passed && engine.executeSQL("CREATE BITMAP INDEX users_city ON users(city)").startsWith("Index users_city created")
+                && engine.executeSQL("CREATE BITMAP INDEX users_age ON users(age)").startsWith("Index users_age created");
+
+        String[] statements = {
+                "INSERT INTO users VALUES (9001, 'City9', 'unknown', 'c1'), (9002, NULL, 30.0, 'c2')",
+                "UPDATE users SET city = 'City8' WHERE city = 'City1' AND age < 30",
+                "UPDATE users SET age = 99 WHERE id = 15",
+                "DELETE FROM users WHERE city = 'City2' OR age = 20",
+                "INSERT INTO users VALUES (9, 'City9', 40, 'c0')",          // replaces a row
+                "UPDATE users SET id = 9500 WHERE id = 10",                  // moves a row to another key
+                "INSERT INTO users VALUES (20, 'City5', 21, 'c3')",          // takes a freed ordinal
+        };
+        String[] queries = {
+                "SELECT * FROM users WHERE city = 'City0'", "SELECT * FROM users WHERE city = 'City8' AND age = 25",
+                "SELECT * FROM users WHERE city = 'City9' OR age = 99", "SELECT * FROM users WHERE city = 'City5' AND category = 'c3'",
+                "SELECT * FROM users WHERE age >= 60 AND city != 'City0'", "SELECT * FROM users WHERE age = 30",
+                "SELECT * FROM users WHERE city = 'City4' OR category = 'c1'", "SELECT * FROM users WHERE age > 'a'",
+                "SELECT * FROM users WHERE (city = 'City3' OR city = 'City6') AND (age < 20 OR age > 65)",
+                "SELECT * FROM users WHERE id = 9500", "SELECT * FROM users WHERE city = 'City2'",
+        };
+        for (String statement : statements) {
+            passed = passed && engine.executeSQL(statement).equals(reference.executeSQL(statement));
+        }
+        long lookups = engine.getBitmapLookupCount();
+        for (String query : queries) {
+            passed = passed && sameRows(engine.executeSQL(query), reference.executeSQL(query));
+        }
+        // All but the clauses with an OR over category or a key lookup are answered from the bitmaps
+        passed = passed && engine.getBitmapLookupCount() == lookups + queries.length - 2
+                && engine.executeSQL("EXPLAIN SELECT * FROM users WHERE city = 'City3' OR age = 40").contains("bitmap indexes users_city, users_age");
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runZoneMapTest() {
+        System.out.println("Executing zone map check");
+        Engine engine = new Engine();
+        Engine reference = new Engine();
+        engine.executeSQL("CREATE TABLE orders (id, price, note) USING ROW");
+        reference.executeSQL("CREATE TABLE orders (id, price, note) USING CONCURRENT"); // keeps no zone maps
+        boolean passed = true;
+        for (int id = 1; id <= 3000; id += 100) {
+            StringBuilder insert = new StringBuilder("INSERT INTO orders VALUES ");
+            for (int i = id; i < id + 100; i++) {
+                insert.append(i > id ? ", (" : "(").append(i).append(", ").append(i).append(", 'n").append(i % 5).append("')");
+            }
+            passed = passed && engine.executeSQL(insert.toString()).equals(reference.executeSQL(insert.toString()));
+        }
+        // Prices rise with the scan position, so the 20 matches sit in one block of 256 rows
+        passed = passed && engine.executeSQL("EXPLAIN ANALYZE SELECT * FROM orders WHERE price > 1500 AND price <= 1520")
+                .contains("\nrows_scanned\t256\nrows_matched\t20\n");
+
+        List<String> statements = new ArrayList<>();
+        statements.add("INSERT INTO orders VALUES (3001, 'free', 'text'), (3002, NULL, 'null'), (3003, 2.5, 'float'), (3004, 16777217, 'big')");
+        statements.add("DELETE FROM orders WHERE price >= 1000 AND price < 1400");
+        statements.add("UPDATE orders SET price = 9000 WHERE id = 10");           // widens the first block
+        statements.add("INSERT INTO orders VALUES (20, 8000, 'replaced')");         // and again, replacing a row
+        statements.add("UPDATE orders SET price = 5 WHERE price > 2000 AND price <= 2100");
+        String[] queries = {
+                "SELECT * FROM orders WHERE price > 1500 AND price < 1520", "SELECT * FROM orders WHERE price = 1050",
+                "SELECT * FROM orders WHERE price >= 8000", "SELECT * FROM orders WHERE price <= 5",
+                "SELECT * FROM orders WHERE price < 2.6", "SELECT * FROM orders WHERE price = 'free'",
+                "SELECT * FROM orders WHERE price != 5 AND price > 2999", "SELECT * FROM orders WHERE price = 16777216.5",
+                "SELECT * FROM orders WHERE price > 2990 OR note = 'n3'", "SELECT * FROM orders WHERE price > 2990 OR price < 3",
+        };
+        for (String statement : statements) {
+            passed = passed && engine.executeSQL(statement).equals(reference.executeSQL(statement));
+        }
+        for (String query : queries) {
+            passed = passed && sameRows(engine.executeSQL(query), reference.executeSQL(query));
+        }
+        engine.setParallelism(4);
+        engine.setParallelThreshold(100);
+        passed = passed && sameRows(engine.executeSQL(queries[0]), reference.executeSQL(queries[0]));
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runOffHeapTest() {
+        System.out.println("Executing off-heap storage check");
+        Engine engine = new Engine();
+        Engine reference = new Engine();
+        engine.executeSQL("CREATE TABLE notes (id, author, body) USING OFFHEAP");
+        reference.executeSQL("CREATE TABLE notes (id, author, body) USING ROW");
+        String large = "x".repeat(5000); // past the 16-byte size classes
+        List<String> statements = new ArrayList<>();
+        for (int id = 1; id <= 3000; id++) {
+            statements.add("INSERT INTO notes VALUES (" + id + ", 'Author" + (id % 7) + "', 'n" + id + "')");
+        }
+        statements.add("INSERT INTO notes VALUES (3001, 'Zoë', 'naïve → ünïcode')");
+        statements.add("INSERT INTO notes VALUES (3002, '\u4e2d\u6587', '" + large + "')");
+        statements.add("UPDATE notes SET body = 'a body long enough to move the row to a bigger block' WHERE author = 'Author3'");
+        statements.add("UPDATE notes SET id = 5000 WHERE id = 20");
+        statements.add("INSERT INTO notes VALUES (7, 'Replaced', 'same key')");
+        statements.add("DELETE FROM notes WHERE author = 'Author1' OR id = 3002");
+        statements.add("CREATE HASH INDEX notes_author ON notes(author)");
+        statements.add("UPDATE notes SET author = 'Author9' WHERE author = 'Author2'");
+
+        boolean passed = true;
+        for (String statement : statements) {
+            passed = passed && engine.executeSQL(statement).equals(reference.executeSQL(statement));
+        }
+        String[] queries = {"SELECT * FROM notes", "SELECT * FROM notes WHERE id = 5000", "SELECT * FROM notes WHERE author = 'Author9'",
+                "SELECT * FROM notes WHERE author = 'Zoë' OR body = 'same key'", "SELECT * FROM notes WHERE id = 20"};
+        for (String query : queries) {
+            passed = passed && sameRows(engine.executeSQL(query), reference.executeSQL(query));
+        }
+        engine.setParallelism(4);
+        engine.setParallelThreshold(100);
+        passed = passed && sameRows(engine.executeSQL("SELECT * FROM notes WHERE author = 'Author4' OR id = 7"),
+                reference.executeSQL("SELECT * FROM notes WHERE author = 'Author4' OR id = 7"));
+
+        // Rows deleted and inserted again take the freed blocks instead of new slab memory
+        OffHeapStorage storage = (OffHeapStorage) engine.getTable("notes").getStorage();
+        engine.executeSQL("DELETE FROM notes WHERE author = 'Author5'");
+        long reserved = storage.getReservedBytes();
+        passed = passed && storage.getFreeBytes() > 0;
+        for (int id = 6000; id < 6300; id++) {
+            engine.executeSQL("INSERT INTO notes VALUES (" + id + ", 'Author5', 'n" + id + "')");
+        }
+        passed = passed && storage.getReservedBytes() == reserved && engine.executeSQL("SELECT * FROM notes WHERE id = 6299").contains("'n6299'");
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runDictionaryTest() {
+        System.out.println("Executing string dictionary check");
+        Engine engine = new Engine();
+        Engine reference = new Engine();
+        engine.executeSQL("CREATE TABLE shops (id INT, city, code) USING COLUMNAR");
+        reference.executeSQL("CREATE TABLE shops (id INT, city, code) USING ROW");
+        String[] statements = {
+                "INSERT INTO shops VALUES (1, 'Oslo', 'a'), (2, 'Rome', 7), (3, 'Oslo', 'b'), (4, 'Lima', 7.0), (5, 'Rome', 'x')",
+                "UPDATE shops SET city = 'Kyiv' WHERE city = 'Lima'",  // frees the code of 'Lima'
+                "INSERT INTO shops VALUES (6, 'Pune', 'c')",           // which 'Pune' takes
+                "DELETE FROM shops WHERE city = 'Oslo' AND id = 3",
+                "INSERT INTO shops VALUES (2, 'Oslo', 'd')",           // replaces a row, releasing 'Rome' once
+        };
+        String[] queries = {
+                "SELECT * FROM shops WHERE city = 'Oslo'", "SELECT * FROM shops WHERE city != 'Oslo'",
+                "SELECT * FROM shops WHERE city = 'Lima'", "SELECT * FROM shops WHERE city != 'Lima'",
+                "SELECT * FROM shops WHERE city = 'Pune' OR city = 'Kyiv'", "SELECT * FROM shops WHERE code = 7",
+                "SELECT * FROM shops WHERE code = '7'", "SELECT * FROM shops WHERE code > 'a'",
+        };
+        boolean passed = true;
+        for (String statement : statements) {
+            passed = passed && engine.executeSQL(statement).equals(reference.executeSQL(statement));
+        }
+        for (String query : queries) {
+            passed = passed && sameRows(engine.executeSQL(query), reference.executeSQL(query));
+        }
+        passed = passed && engine.executeSQL("EXPLAIN SELECT * FROM shops WHERE city = 'Oslo'").contains("(dictionary code)");
+
+        // More distinct values than codes: the column goes back to holding strings
+        for (int id = 10; id < 10 + StringDictionary.MAX_CODE + 10; id += 1000) {
+            StringBuilder insert = new StringBuilder("INSERT INTO shops VALUES ");
+            for (int i = id; i < id + 1000; i++) {
+                insert.append(i > id ? ", (" : "(").append(i).append(", 'Town").append(i).append("', 'e')");
+            }
+            passed = passed && engine.executeSQL(insert.toString()).equals(reference.executeSQL(insert.toString()));
+        }
+        for (String query : queries) {
+            passed = passed && sameRows(engine.executeSQL(query), reference.executeSQL(query));
+        }
+        passed = passed && engine.executeSQL("SELECT * FROM shops WHERE city = 'Town65000'").contains("\n65000\t'Town65000'\t'e'")
+                && !engine.executeSQL("EXPLAIN SELECT * FROM shops WHERE city = 'Oslo'").contains("(dictionary code)");
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    // Same lines in any order, as storages differ in the order they keep rows
+    private static boolean sameRows(String result, String expected) {
+        String[] lines = result.split("\n");
+        String[] expectedLines = expected.split("\n");
+        Arrays.sort(lines);
+        Arrays.sort(expectedLines);
+        return Arrays.equals(lines, expectedLines);
+    }
+
+    private static void runExplainTest() {
+        System.out.println("Executing EXPLAIN check");
+        boolean passed;
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("smusql-explain");
+            Engine engine = new Engine();
+            engine.openLog(directory, WriteAheadLog.Sync.COMMIT, 5);
+            engine.executeSQL("CREATE TABLE parts (id INT, name, size INT) USING COLUMNAR");
+            engine.executeSQL("CREATE HASH INDEX parts_name ON parts(name)");
+            engine.executeSQL("CREATE INDEX parts_size ON parts(size)");
+            for (int id = 1; id <= 100; id++) {
+                engine.executeSQL("INSERT INTO parts VALUES (" + id + ", 'Part" + (id % 5) + "', " + id + ")");
+            }
+
+            String key = engine.executeSQL("EXPLAIN SELECT * FROM parts WHERE id = 7 AND size > 3");
+            passed = key.equals("plan\tdetail\ntable\tparts (COLUMNAR, 100 rows)\naccess\tkey lookup (id = 7)"
+                    + "\nfilter\tid = 7 (int) AND size > 3 (int)\nestimated_rows\t1");
+            passed = passed && engine.executeSQL("EXPLAIN SELECT * FROM parts WHERE name = 'Part2' AND size < 50")
+                    .contains("\naccess\thash index parts_name (name = 'Part2')\nfilter\tname = 'Part2' (dictionary code) AND size < 50 (int)\nestimated_rows\t7");
+            passed = passed && engine.executeSQL("EXPLAIN SELECT * FROM parts WHERE size >= 91")
+                    .contains("\naccess\tordered index parts_size (91.0 <= size <= Infinity)\n")
+                    && engine.executeSQL("EXPLAIN DELETE FROM parts WHERE name != 'Part2' OR size = 1")
+                    .contains("\naccess\tfull scan\nfilter\t(name != 'Part2' (dictionary code) OR size = 1 (int))\nestimated_rows\t91");
+            passed = passed && engine.executeSQL("EXPLAIN SELECT * FROM nothing").equals("ERROR: No such table: nothing")
+                    && engine.executeSQL("EXPLAIN EXPLAIN SELECT * FROM parts").equals("ERROR: Invalid EXPLAIN syntax");
+            // Only planned: nothing ran, so no lookup was counted
+            Stats.Snapshot stats = engine.getStats();
+            passed = passed && stats.counters.get("key_lookups") == 0 && stats.counters.get("hash_lookups") == 0
+                    && stats.counters.get("index_scans") == 0 && timing(stats.statements, "EXPLAIN").count == 5;
+
+            String analyzed = engine.executeSQL("EXPLAIN ANALYZE SELECT * FROM parts WHERE size >= 91 AND name = 'Part0'");
+            passed = passed && analyzed.contains("\naccess\thash index parts_name (name = 'Part0')\n")
+                    && analyzed.contains("\nrows_scanned\t20\nrows_matched\t2\nparse_us\t")
+                    && analyzed.contains("\nformat_us\t") && analyzed.contains("\nallocated_bytes\t")
+                    && !analyzed.contains("\nresult\t") && engine.getStats().counters.get("hash_lookups") == 1;
+            // EXPLAIN ANALYZE of a change makes the change, and logs it as the statement itself
+            passed = passed && engine.executeSQL("EXPLAIN ANALYZE UPDATE parts SET name = 'Spare' WHERE size <= 3")
+                    .endsWith("\nresult\tTable parts updated. 3 rows affected.")
+                    && engine.executeSQL("explain analyze DELETE FROM parts WHERE id = 4").contains("\nrows_matched\t1\n");
+            String expected = engine.executeSQL("SELECT * FROM parts WHERE size < 10");
+            passed = passed && expected.contains("\t'Spare'\t") && !expected.contains("\n4\t");
+            engine.closeLog();
+
+            Engine restarted = new Engine();
+            restarted.openLog(directory, WriteAheadLog.Sync.COMMIT, 5);
+            passed = passed && restarted.executeSQL("SELECT * FROM parts WHERE size < 10").equals(expected);
+            restarted.closeLog();
+        } catch (IOException e) {
+            System.out.println("EXPLAIN failed: " + e.getMessage());
+            passed = false;
+        } finally {
+            deleteDirectory(directory);
+        }
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runStatsTest() {
+        System.out.println("Executing statistics check");
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE gauges (id, name, reading)");
+        for (int id = 1; id <= 100; id++) {
+            engine.executeSQL("INSERT INTO gauges VALUES (" + id + ", 'Gauge" + id + "', " + (id % 10) + ")");
+        }
+        engine.executeSQL("SELECT * FROM gauges WHERE reading > 7");   // scans 100, returns 20
+        engine.executeSQL("SELECT * FROM gauges WHERE id = 5");        // one key lookup
+        engine.executeSQL("UPDATE gauges SET reading = 0 WHERE reading = 9");
+        engine.executeSQL("DELETE FROM gauges WHERE id = 100");
+        engine.executeSQL("SELECT * FROM nosuchtable");
+        engine.executeSQL("FETCH everything");
+        try (ResultSet rows = engine.query("SELECT * FROM gauges WHERE reading = 1")) {
+            while (rows.next()) {
+                // read every row, so the query is recorded when it runs out
+            }
+        }
+
+        Stats.Snapshot stats = engine.getStats();
+        Stats.Timing select = timing(stats.statements, "SELECT");
+        Stats.Timing update = timing(stats.statements, "UPDATE");
+        Stats.Timing table = timing(stats.tables, "gauges");
+        HashMapStats keyMap = stats.keyMaps.get("gauges");
+        boolean passed = select != null && select.count == 4 && select.rowsScanned == 100 + 1 + 99 && select.rowsReturned == 20 + 1 + 10
+                && update != null && update.count == 1 && update.rowsScanned == 100 && update.rowsReturned == 10
+                && timing(stats.statements, "INSERT").count == 100 && timing(stats.statements, "INVALID").count == 1
+                && table != null && table.count == 1 + 100 + 2 + 1 + 1 + 1 // the missing table has no entry
+                && stats.tables.size() == 1
+                && select.p50 <= select.p99 && select.p99 <= select.p999 && select.p999 <= select.max && select.max > 0
+                && keyMap.getEntries() == 99 && keyMap.getResizes() > 0 && keyMap.getMaxProbeLength() >= 1
+                && stats.counters.get("key_lookups") == 2;
+        String shown = engine.executeSQL("SHOW STATS");
+        passed = passed && shown.startsWith("statement\tcount\tp50_us") && shown.contains("\nSELECT\t4\t")
+                && shown.contains("\ngauges\t99\t") && shown.contains("\nkey_lookups\t2");
+
+        // Resetting zeroes the counts in place
+        passed = passed && engine.executeSQL("RESET STATS").equals("Statistics reset");
+        stats = engine.getStats();
+        passed = passed && timing(stats.statements, "SELECT").count == 0 && timing(stats.statements, "RESET STATS").count == 1
+                && stats.keyMaps.get("gauges").getResizes() == 0 && stats.counters.get("key_lookups") == 0;
+        engine.executeSQL("SELECT * FROM gauges WHERE id = 7");
+        passed = passed && timing(engine.getStats().statements, "SELECT").count == 1;
+
+        // Percentiles are within a bucket, 1/16, of the exact ones
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        passed = passed && Math.abs(histogram.getPercentile(0.5) - 50_000_000L) <= 50_000_000L / 16
+                && Math.abs(histogram.getPercentile(0.99) - 99_000_000L) <= 99_000_000L / 16
+                && histogram.getMax() == 100_000_000L && histogram.getCount() == 100000;
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static Stats.Timing timing(List<Stats.Timing> timings, String name) {
+        for (Stats.Timing timing : timings) {
+            if (timing.name.equals(name)) {
+                return timing;
+            }
+        }
+        return null;
+    }
+
+    private static void runBulkLoadTest(String storage) {
+        System.out.println("Executing bulk load check: " + storage);
+        boolean passed;
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("smusql-bulk");
+            Engine engine = new Engine();
+            engine.openLog(directory, WriteAheadLog.Sync.COMMIT, 5);
+            Engine reference = new Engine(); // the same rows, one INSERT at a time
+            for (Engine e : new Engine[]{engine, reference}) {
+                e.executeSQL("CREATE TABLE crates (id INT, label, weight DOUBLE) USING " + storage);
+            }
+
+            passed = engine.executeSQL("INSERT INTO crates VALUES (1, 'a', 1.5), (2, 'b, c', 2.0), (3, 'd', 3)")
+                    .equals("3 rows inserted into crates");
+            // A row that does not fit rejects the whole statement
+            passed = passed && engine.executeSQL("INSERT INTO crates VALUES (4, 'e', 4.0), (5, 'f')").startsWith("ERROR:");
+            if (storage.equals("COLUMNAR")) {
+                passed = passed && engine.executeSQL("INSERT INTO crates VALUES (4, 'e', 4.0), (5, 'f', 'heavy')").startsWith("ERROR:");
+            }
+            reference.executeSQL("INSERT INTO crates VALUES (1, 'a', 1.5)");
+            reference.executeSQL("INSERT INTO crates VALUES (2, 'b, c', 2.0)");
+            reference.executeSQL("INSERT INTO crates VALUES (3, 'd', 3)");
+
+            // Enough rows for several log records, with blank lines, "\r\n" endings and quoted commas
+            Path csv = directory.resolve("crates.csv");
+            StringBuilder text = new StringBuilder();
+            for (int id = 10; id < 2510; id++) {
+                text.append(id).append(", 'Crate, no. ").append(id).append("' ,").append(id * 0.25).append(id % 7 == 0 ? "\r\n" : "\n");
+                if (id % 500 == 0) {
+                    text.append("\n");
+                }
+                reference.executeSQL("INSERT INTO crates VALUES (" + id + ", 'Crate, no. " + id + "', " + (id * 0.25) + ")");
+            }
+            Files.writeString(csv, text);
+            passed = passed && engine.executeSQL("COPY crates FROM '" + csv + "'").equals("2500 rows copied into crates");
+
+            // A bad line stops the load, keeping the rows before it
+            Path bad = directory.resolve("bad.csv");
+            Files.writeString(bad, "3000, 'x', 1.0\n3001, 'y', 2.0\n3002, 'z'\n3003, 'w', 3.0\n");
+            passed = passed && engine.executeSQL("COPY crates FROM '" + bad + "'")
+                    .equals("ERROR: Line 3: Expected 3 values, found 2 (2 rows loaded)");
+            reference.executeSQL("INSERT INTO crates VALUES (3000, 'x', 1.0)");
+            reference.executeSQL("INSERT INTO crates VALUES (3001, 'y', 2.0)");
+            passed = passed && engine.executeSQL("COPY crates FROM '" + directory.resolve("missing.csv") + "'").startsWith("ERROR:");
+
+            String expected = reference.executeSQL("SELECT * FROM crates");
+            passed = passed && engine.executeSQL("SELECT * FROM crates").equals(expected);
+            engine.closeLog();
+
+            Engine restarted = new Engine();
+            restarted.openLog(directory, WriteAheadLog.Sync.COMMIT, 5);
+            passed = passed && restarted.executeSQL("SELECT * FROM crates").equals(expected);
+            restarted.closeLog();
+        } catch (IOException e) {
+            System.out.println("Bulk load failed: " + e.getMessage());
+            passed = false;
+        } finally {
+            deleteDirectory(directory);
+        }
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runWriteAheadLogTest(WriteAheadLog.Sync sync, boolean checkpoint) {
+        System.out.println("Executing write-ahead log check: " + sync + (checkpoint ? " with CHECKPOINT" : ""));
+        boolean passed = true;
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("smusql-wal");
+            Engine engine = new Engine();
+            engine.openLog(directory, sync, 5);
+            engine.executeSQL("CREATE TABLE pets (id, name, age, owner)");
+            engine.executeSQL("CREATE TABLE toys (id INT, name, price DOUBLE) USING COLUMNAR");
+            engine.executeSQL("CREATE HASH INDEX pets_owner ON pets(owner)");
+            for (int id = 1; id <= 50; id++) {
+                engine.executeSQL("INSERT INTO pets VALUES (" + id + ", 'Pet ? " + id + "', " + (id % 9) + ", 'Owner" + (id % 4) + "')");
+                engine.executeSQL("INSERT INTO toys VALUES (" + id + ", 'Toy" + id + "', " + (id * 1.5) + ")");
+            }
+            if (checkpoint) {
+                // The snapshot replaces the log so far; later changes go to a new segment
+                passed = engine.executeSQL("CHECKPOINT").equals("Checkpoint written: 2 tables, 100 rows")
+                        && logSegments(directory).size() == 1;
+            }
+            engine.executeSQL("UPDATE pets SET age = 10 WHERE owner = 'Owner1' AND age < 5");
+            engine.executeSQL("UPDATE pets SET id = 99 WHERE id = 3");
+            engine.executeSQL("DELETE FROM toys WHERE price > 30 OR id = 2");
+            engine.executeSQL("INSERT INTO pets VALUES (7, 'duplicate key', 1, 'Owner0')");
+            engine.executeSQL("INSERT INTO toys VALUES (60, 'Bad price', 'cheap')"); // rejected, so not logged
+            String expected = dumpPetsAndToys(engine);
+            engine.executeSQL("INSERT INTO pets VALUES (100, 'Last', 1, 'Owner2')");
+            engine.closeLog();
+
+            // A crash in the middle of the last record leaves it cut short: it is dropped on replay
+            List<Path> segments = logSegments(directory);
+            Path last = segments.get(segments.size() - 1);
+            try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(last) - 5);
+            }
+            Engine restarted = new Engine();
+            restarted.openLog(directory, sync, 5);
+            passed = passed && dumpPetsAndToys(restarted).equals(expected)
+                    && restarted.executeSQL("SELECT * FROM pets WHERE owner = 'Owner1'").equals(engine.executeSQL("SELECT * FROM pets WHERE owner = 'Owner1'"));
+
+            // and the log carries on from the last complete record
+            restarted.executeSQL("DELETE FROM pets WHERE age = 10");
+            expected = dumpPetsAndToys(restarted);
+            restarted.closeLog();
+            Engine again = new Engine();
+            again.openLog(directory, sync, 5);
+            passed = passed && dumpPetsAndToys(again).equals(expected);
+            again.closeLog();
+        } catch (IOException e) {
+            System.out.println("Log failed: " + e.getMessage());
+            passed = false;
+        } finally {
+            deleteDirectory(directory);
+        }
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static List<Path> logSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("log-")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // leave it to the temp directory cleanup
+        }
+        directory.toFile().delete();
+    }
+
+    private static String dumpPetsAndToys(Engine engine) {
+        return engine.executeSQL("SELECT * FROM pets") + engine.executeSQL("SELECT * FROM toys");
+    }
+
+    private static void runParallelScanTest(String query) {
+        System.out.println("Executing parallel scan check: " + query);
+        int parallelism = dbEngine.getParallelism();
+        int threshold = dbEngine.getParallelThreshold();
+
+        String expected = null;
+        if (query.startsWith("SELECT")) {
+            dbEngine.setParallelism(1);
+            expected = dbEngine.executeSQL(query);
+        }
+
+        dbEngine.setParallelism(4);
+        dbEngine.setParallelThreshold(1);
+        long scansBefore = dbEngine.getParallelScanCount();
+        String result = dbEngine.executeSQL(query);
+        boolean passed = dbEngine.getParallelScanCount() == scansBefore + 1;
+        dbEngine.setParallelism(parallelism);
+        dbEngine.setParallelThreshold(threshold);
+
+        // Writes are checked by the rows they leave, read serially
+        if (query.startsWith("UPDATE")) {
+            passed = passed && result.endsWith(" 800 rows affected.")
+                    && formatResult(dbEngine.executeSQL("SELECT * FROM stress_row WHERE n = 2")).size() - 1 == 800;
+        } else if (query.startsWith("DELETE")) {
+            passed = passed && result.endsWith(" 1200 rows affected.")
+                    && formatResult(dbEngine.executeSQL("SELECT * FROM stress_row")).size() - 1 == 5 * 400;
+        } else {
+            passed = passed && result.equals(expected);
+        }
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runSnapshotTest() {
+        System.out.println("Executing snapshot check");
+        dbEngine.executeSQL("CREATE TABLE ledger (id, amount) USING MVCC");
+        for (int id = 1; id <= 40; id++) {
+            dbEngine.executeSQL("INSERT INTO ledger VALUES (" + id + ", 100)");
+        }
+
+        // The writes below run while the scan is open, on the same thread, and must not wait for it
+        int seen = 0;
+        boolean passed = true;
+        try (ResultSet scan = dbEngine.query("SELECT * FROM ledger WHERE amount = 100")) {
+            seen += scan.next() ? 1 : 0;
+            dbEngine.executeSQL("UPDATE ledger SET amount = 0 WHERE id > 0");
+            dbEngine.executeSQL("DELETE FROM ledger WHERE id > 10");
+            dbEngine.executeSQL("INSERT INTO ledger VALUES (41, 100)");
+            while (scan.next()) {
+                passed = passed && scan.getInt(0) <= 40;
+                seen++;
+            }
+        }
+        passed = passed && seen == 40;
+        passed = passed && formatResult(dbEngine.executeSQL("SELECT * FROM ledger WHERE amount = 0")).size() - 1 == 10;
+        passed = passed && formatResult(dbEngine.executeSQL("SELECT * FROM ledger")).size() - 1 == 11;
+
+        // With the snapshot closed, the deleted rows can be collected
+        VersionedStorage storage = (VersionedStorage) dbEngine.getTable("ledger").getStorage();
+        dbEngine.collectVersions();
+        passed = passed && storage.getLogSize() == 11;
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runAbandonedSnapshotTest() {
+        System.out.println("Executing abandoned snapshot check");
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE drafts (id, text) USING MVCC");
+        for (int id = 1; id <= 40; id++) {
+            engine.executeSQL("INSERT INTO drafts VALUES (" + id + ", 'draft')");
+        }
+        readOneRow(engine.query("SELECT * FROM drafts")); // and drop it unclosed
+        engine.executeSQL("DELETE FROM drafts WHERE id > 10");
+
+        // Once the dropped ResultSet is garbage collected, its snapshot no longer holds the deleted rows
+        VersionedStorage storage = (VersionedStorage) engine.getTable("drafts").getStorage();
+        for (int attempt = 0; attempt < 100 && storage.getLogSize() != 10; attempt++) {
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            engine.collectVersions();
+        }
+        boolean passed = storage.getLogSize() == 10;
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void readOneRow(ResultSet rows) {
+        rows.next();
+    }
+
+    private static void runConcurrencyTest(String storage, int threads, int rowsPerThread) {
+        System.out.println("Executing concurrency check: " + threads + " threads, " + storage + " storage");
+        String table = "stress_" + storage.toLowerCase();
+        AtomicInteger tablesCreated = new AtomicInteger();
+        AtomicInteger indexesCreated = new AtomicInteger();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int owner = t;
+            clients.add(new Thread(() -> {
+                try {
+                    // Every client races to create the table; once its CREATE returns the table exists
+                    if (dbEngine.executeSQL("CREATE TABLE " + table + " (id, owner, n) USING " + storage).startsWith("Table " + table + " created")) {
+                        tablesCreated.incrementAndGet();
+                    }
+                    int first = owner * rowsPerThread;
+                    for (int i = 0; i < rowsPerThread; i++) {
+                        expectPrefix(errors, dbEngine.executeSQL("INSERT INTO " + table + " VALUES (" + (first + i) + ", " + owner + ", 0)"), "Row inserted");
+                        if (i == rowsPerThread / 2 && dbEngine.executeSQL("CREATE HASH INDEX " + table + "_owner ON " + table + "(owner)").startsWith("Index")) {
+                            indexesCreated.incrementAndGet();
+                        }
+                        if (i % 50 == 0) {
+                            expectPrefix(errors, dbEngine.executeSQL("SELECT * FROM " + table + " WHERE owner = " + owner), "id\towner\tn");
+                        }
+                    }
+                    for (int i = 0; i < rowsPerThread; i += 5) {
+                        expectPrefix(errors, dbEngine.executeSQL("DELETE FROM " + table + " WHERE id = " + (first + i)), "Rows deleted");
+                    }
+                    expectPrefix(errors, dbEngine.executeSQL("UPDATE " + table + " SET n = 1 WHERE owner = " + owner + " AND n = 0"), "Table " + table + " updated");
+                } catch (RuntimeException e) {
+                    errors.add(e.toString());
+                }
+            }));
+        }
+        for (Thread client : clients) {
+            client.start();
+        }
+        for (Thread client : clients) {
+            try {
+                client.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors.add("interrupted");
+            }
+        }
+
+        // Each client deleted every fifth of its rows and marked the rest
+        boolean passed = errors.isEmpty() && tablesCreated.get() == 1 && indexesCreated.get() == 1;
+        int expectedRows = rowsPerThread - (rowsPerThread + 4) / 5;
+        for (int owner = 0; owner < threads && passed; owner++) {
+            List<String> rows = formatResult(dbEngine.executeSQL("SELECT * FROM " + table + " WHERE owner = " + owner + " AND n = 1"));
+            passed = rows.size() - 1 == expectedRows;
+        }
+        passed = passed && formatResult(dbEngine.executeSQL("SELECT * FROM " + table)).size() - 1 == threads * expectedRows;
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        if (!passed) {
+            System.out.println("Errors: " + errors);
+        }
+        System.out.println();
+    }
+
+    private static void expectPrefix(List<String> errors, String result, String prefix) {
+        if (!result.startsWith(prefix)) {
+            errors.add(result);
+        }
+    }
+
+    private static void runResultSetTest(String query) {
+        System.out.println("Executing result set check: " + query);
+        boolean rowsReturned = query.startsWith("SELECT");
+        String expected = rowsReturned ? dbEngine.executeSQL(query) : "Row inserted into course";
+
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        ResultSet rs = dbEngine.query(query);
+        boolean more;
+        do {
+            more = rs.writeTo(buffer);
+            streamed.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        } while (more);
+        boolean passed = expected.equals(new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+
+        // Typed getters read the same values as the text of the first row
+        if (passed && rowsReturned) {
+            try (ResultSet rows = dbEngine.query(query)) {
+                if (rows.getMessage() == null && rows.next()) {
+                    String firstRow = expected.split("\n")[1];
+                    passed = firstRow.startsWith(rows.getInt(0) + "\t") && rows.getString("id").equals(String.valueOf(rows.getInt(0)));
+                }
+            }
+        }
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runOpenResultSetTest() {
+        System.out.println("Executing open result set check");
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE boxes (id, size)");
+        engine.executeSQL("CREATE TABLE lids (id, size)");
+        for (int id = 1; id <= 5; id++) {
+            engine.executeSQL("INSERT INTO boxes VALUES (" + id + ", " + id + ")");
+        }
+
+        // The open cursor read-locks boxes: writes to it on this thread are refused instead of waiting on themselves
+        boolean passed;
+        try (ResultSet rows = engine.query("SELECT * FROM boxes WHERE size > 1")) {
+            passed = rows.next();
+            for (String write : new String[]{"UPDATE boxes SET size = 0 WHERE id = 2", "INSERT INTO boxes VALUES (6, 6)",
+                    "DELETE FROM boxes WHERE id = 3", "CREATE INDEX boxes_size ON boxes(size)", "RESET STATS"}) {
+                passed = passed && engine.executeSQL(write).equals("ERROR: Table boxes is being read by an open ResultSet on this thread; close it first");
+            }
+            // Reading it again, and writing other tables, still work
+            passed = passed && engine.executeSQL("SELECT * FROM boxes WHERE id = 2").contains("\n2\t2\t")
+                    && engine.executeSQL("INSERT INTO lids VALUES (1, 1)").equals("Row inserted into lids")
+                    && rows.next() && rows.getString("id").equals("3");
+        }
+        passed = passed && engine.executeSQL("UPDATE boxes SET size = 0 WHERE id = 2").equals("Table boxes updated. 1 rows affected.");
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runPlanCacheTest(String query, boolean expectHit) {
+        System.out.println("Executing plan cache check: " + query);
+        long hitsBefore = dbEngine.getPlanCache().getHits();
+        dbEngine.executeSQL(query);
+        boolean hit = dbEngine.getPlanCache().getHits() == hitsBefore + 1;
+
+        boolean passed = hit == expectHit;
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runKeyTextTest(String storage) {
+        System.out.println("Executing key text check: " + storage);
+        Engine engine = new Engine();
+        engine.executeSQL("CREATE TABLE tags (id, label) USING " + storage);
+        engine.executeSQL("INSERT INTO tags VALUES (1, 'a')");
+        engine.executeSQL("INSERT INTO tags VALUES (2, 'b')");
+
+        // While every id is a plain int, "id = N" is a key lookup
+        long lookups = engine.getKeyLookupCount();
+        boolean passed = engine.executeSQL("SELECT * FROM tags WHERE id = 2").equals(engine.executeSQL("SELECT * FROM tags WHERE id >= 2 AND id <= 2"))
+                && engine.getKeyLookupCount() == lookups + 1;
+
+        // "007" and "7" are two rows, and "id = 7" matches both
+        engine.executeSQL("INSERT INTO tags VALUES (007, 'c')");
+        engine.executeSQL("INSERT INTO tags VALUES (7, 'd')");
+        String sevens = engine.executeSQL("SELECT * FROM tags WHERE id = 7");
+        passed = passed && sevens.split("\n").length == 3 && sevens.equals(engine.executeSQL("SELECT * FROM tags WHERE id >= 7 AND id <= 7"));
+
+        // "5.0" is found by "id = 5", as a scan finds it
+        engine.executeSQL("INSERT INTO tags VALUES (5.0, 'e')");
+        String fives = engine.executeSQL("SELECT * FROM tags WHERE id = 5");
+        passed = passed && fives.split("\n").length == 2 && fives.equals(engine.executeSQL("SELECT * FROM tags WHERE id >= 5 AND id <= 5"))
+                && engine.executeSQL("UPDATE tags SET label = 'f' WHERE id = 5").equals("Table tags updated. 1 rows affected.")
+                && engine.executeSQL("DELETE FROM tags WHERE id = 7").equals("Rows deleted from tags. 2 rows affected.")
+                && engine.executeSQL("SELECT * FROM tags").split("\n").length == 4;
+
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
+    }
+
+    private static void runAccessPathTest(String query, LongSupplier counter, boolean expectTaken) {
+        System.out.println("Executing access path check: " + query);
+        long countBefore = counter.getAsLong();
+        dbEngine.executeSQL(query);
+        boolean taken = counter.getAsLong() == countBefore + 1;
+
+        boolean passed = taken == expectTaken;
+        System.out.println("Test " + (passed ? "PASSED" : "FAILED"));
+        System.out.println();
     }
 
     
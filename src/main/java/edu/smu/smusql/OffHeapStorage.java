@@ -0,0 +1,465 @@
+package edu.smu.smusql;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * Row storage kept off the Java heap, for tables large enough that the GC spends its time walking
+ * their rows. Chosen with CREATE TABLE ... USING OFFHEAP.
+ *
+ * Each row is one record in a SlabAllocator block: its key, then the text of each column in the
+ * order of Table.getColumns(). A string is an int header, -1 for null or else its length in chars
+ * shifted left by one with the low bit set for UTF-16, then one byte per char when every char fits
+ * in Latin-1 and two otherwise. Values are stored exactly as written and compared by their text, as
+ * in RowStorage.
+ *
+ * Rows are found by key through a hash table laid out like OpenHashMap's, except that an entry is
+ * only a spread hash and a record address: a table slot costs an int and a row twelve bytes more,
+ * with no objects, and keys are compared against the bytes of the record. A change that makes a row
+ * outgrow its block moves it to a new block and updates the entry's address. Freed blocks are
+ * reused through the allocator's free lists. Reading a value decodes a new String each time.
+ */
+public class OffHeapStorage implements TableStorage {
+    private static final int INITIAL_CAPACITY = 16; // must be a power of two
+    private static final float MAX_LOAD = 0.7f;
+    private static final long REMOVED = -1;
+
+    private final int columnCount;
+    private final SlabAllocator slabs = new SlabAllocator();
+
+    // Key map, as in OpenHashMap: entries in insertion order, a table of entry number + 1 per slot
+    private int[] table;
+    private int mask;
+    private int[] hashes;       // spread hash of the key per entry
+    private long[] addresses;   // record per entry, REMOVED once removed
+    private int count;          // entries used, removed ones included
+    private int size;           // entries not removed
+    private int resizes;
+    private int shrinks;
+
+    public OffHeapStorage(int columnCount) {
+        this.columnCount = columnCount;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void insert(String key, String[] values) {
+        int hash = OpenHashMap.spread(key.hashCode());
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            int entry = table[slot] - 1;
+            addresses[entry] = write(addresses[entry], key, values); // replaces the row stored under the same key
+            return;
+        }
+
+        if (count == addresses.length) {
+            // Entry arrays are full: compact away removed entries, doubling if most are live
+            rebuild(size >= addresses.length / 2 ? table.length << 1 : table.length);
+            slot = find(key, hash);
+        }
+        int entry = count++;
+        hashes[entry] = hash;
+        addresses[entry] = write(REMOVED, key, values);
+        table[-slot - 1] = entry + 1;
+        size++;
+    }
+
+    @Override
+    public ColumnType getType(int column) {
+        return ColumnType.STRING;
+    }
+
+    @Override
+    public void checkValue(int column, String value) {
+        // Rows hold any text
+    }
+
+    @Override
+    public Cursor scan() {
+        return new RecordCursor(null, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Cursor scan(Iterable<String> keys) {
+        return new RecordCursor(keys.iterator(), 0, 0);
+    }
+
+    @Override
+    public Cursor scan(int from, int to) {
+        return new RecordCursor(null, from, to);
+    }
+
+    @Override
+    public int getScanLimit() {
+        return count;
+    }
+
+    @Override
+    public void reserve(int rows) {
+        int capacity = OpenHashMap.capacityFor(size + rows);
+        if (capacity > table.length) {
+            rebuild(capacity);
+        }
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        int slot = find(oldKey, OpenHashMap.spread(oldKey.hashCode()));
+        if (slot < 0 || oldKey.equals(newKey)) {
+            return;
+        }
+        String[] values = readValues(addresses[table[slot] - 1]);
+        removeSlot(slot);
+        insert(newKey, values); // the key is part of the record, so it is written anew
+        trim();
+    }
+
+    @Override
+    public void addKeyMapStats(HashMapStats stats, boolean reset) {
+        stats.entries += size;
+        stats.capacity += table.length;
+        stats.resizes += resizes;
+        stats.shrinks += shrinks;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) {
+                int probeLength = ((i - hashes[table[i] - 1]) & mask) + 1;
+                stats.probeTotal += probeLength;
+                stats.probeMax = Math.max(stats.probeMax, probeLength);
+            }
+        }
+        if (reset) {
+            resizes = 0;
+            shrinks = 0;
+        }
+    }
+
+    @Override
+    public String getKind() {
+        return "OFFHEAP";
+    }
+
+    @Override
+    public void commit() {
+        // Writes are visible as soon as they are made
+    }
+
+    // Direct memory taken for rows, and how much of it is in freed blocks waiting for reuse
+    public long getReservedBytes() {
+        return slabs.getReservedBytes();
+    }
+
+    public long getFreeBytes() {
+        return slabs.getFreeBytes();
+    }
+
+    // Slot holding the key's entry, or the negative of (free slot + 1) where it would go
+    private int find(String key, int hash) {
+        int i = hash & mask;
+        int entry;
+        while ((entry = table[i]) != 0) {
+            entry--;
+            if (hashes[entry] == hash && keyEquals(addresses[entry], key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    // Removes the entry in the slot and frees its record, leaving the table size as it is
+    private void removeSlot(int i) {
+        int entry = table[i] - 1;
+        slabs.free(addresses[entry]);
+        addresses[entry] = REMOVED;
+        size--;
+        while (count > 0 && addresses[count - 1] == REMOVED) {
+            count--; // removed entries at the end can be reused right away
+        }
+
+        // Pull later slots of the probe run back into the gap, as OpenHashMap does
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int moved = table[j];
+            if (moved == 0) {
+                break;
+            }
+            int home = hashes[moved - 1] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = moved;
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    // Shrinks the table if removals have left it mostly empty
+    private void trim() {
+        if (size <= table.length / 8 && table.length > INITIAL_CAPACITY) {
+            rebuild(table.length >> 1);
+        }
+    }
+
+    private void allocate(int capacity) {
+        int entries = (int) (capacity * MAX_LOAD);
+        table = new int[capacity];
+        mask = capacity - 1;
+        hashes = new int[entries];
+        addresses = new long[entries];
+        count = 0;
+        size = 0;
+    }
+
+    // Moves the live entries, in order, into fresh arrays for a table of the given capacity
+    private void rebuild(int capacity) {
+        int[] oldHashes = hashes;
+        long[] oldAddresses = addresses;
+        int oldCount = count;
+        if (capacity > table.length) {
+            resizes++;
+        } else if (capacity < table.length) {
+            shrinks++;
+        }
+        allocate(capacity);
+
+        for (int old = 0; old < oldCount; old++) {
+            if (oldAddresses[old] != REMOVED) {
+                int entry = count++;
+                hashes[entry] = oldHashes[old];
+                addresses[entry] = oldAddresses[old];
+                int i = hashes[entry] & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry + 1;
+            }
+        }
+        size = count;
+    }
+
+    // Writes the row into its old block if it fits, else into a new one, freeing the old.
+    // Returns the row's address.
+    private long write(long address, String key, String[] values) {
+        int bytes = encodedLength(key);
+        for (String value : values) {
+            bytes += encodedLength(value);
+        }
+        if (address == REMOVED || slabs.capacity(address) < bytes) {
+            if (address != REMOVED) {
+                slabs.free(address);
+            }
+            address = slabs.allocate(bytes);
+        }
+        ByteBuffer slab = slabs.slab(address);
+        int position = writeString(slab, SlabAllocator.start(address), key);
+        for (String value : values) {
+            position = writeString(slab, position, value);
+        }
+        return address;
+    }
+
+    private String[] readValues(long address) {
+        ByteBuffer slab = slabs.slab(address);
+        int position = skipString(slab, SlabAllocator.start(address)); // the key
+        String[] values = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = readString(slab, position);
+            position = skipString(slab, position);
+        }
+        return values;
+    }
+
+    private boolean keyEquals(long address, String key) {
+        ByteBuffer slab = slabs.slab(address);
+        int position = SlabAllocator.start(address);
+        int header = slab.getInt(position);
+        if (header != key.length() << 1 && header != (key.length() << 1 | 1)) {
+            return false;
+        }
+        position += Integer.BYTES;
+        boolean wide = (header & 1) != 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = wide ? slab.getChar(position + 2 * i) : (char) (slab.get(position + i) & 0xFF);
+            if (c != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int encodedLength(String value) {
+        if (value == null) {
+            return Integer.BYTES;
+        }
+        return Integer.BYTES + (isLatin1(value) ? value.length() : 2 * value.length());
+    }
+
+    private static boolean isLatin1(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Writes the string at the position and returns the position after it
+    private static int writeString(ByteBuffer slab, int position, String value) {
+        if (value == null) {
+            slab.putInt(position, -1);
+            return position + Integer.BYTES;
+        }
+        int length = value.length();
+        boolean latin1 = isLatin1(value);
+        slab.putInt(position, length << 1 | (latin1 ? 0 : 1));
+        position += Integer.BYTES;
+        if (latin1) {
+            for (int i = 0; i < length; i++) {
+                slab.put(position + i, (byte) value.charAt(i));
+            }
+            return position + length;
+        }
+        for (int i = 0; i < length; i++) {
+            slab.putChar(position + 2 * i, value.charAt(i));
+        }
+        return position + 2 * length;
+    }
+
+    private static String readString(ByteBuffer slab, int position) {
+        int header = slab.getInt(position);
+        if (header < 0) {
+            return null;
+        }
+        int length = header >>> 1;
+        position += Integer.BYTES;
+        if ((header & 1) == 0) {
+            byte[] bytes = new byte[length];
+            slab.get(position, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = slab.getChar(position + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    private static int skipString(ByteBuffer slab, int position) {
+        int header = slab.getInt(position);
+        if (header < 0) {
+            return position + Integer.BYTES;
+        }
+        int length = header >>> 1;
+        return position + Integer.BYTES + ((header & 1) == 0 ? length : 2 * length);
+    }
+
+    // Walks the entries in insertion order, or seeks the given keys one by one. While it is open
+    // only the cursor may change the rows; removals leave shrinking the key map to the end.
+    private class RecordCursor implements Cursor {
+        private final Iterator<String> lookups; // null to walk every entry
+        private final int limit;                // entry position a walk stops at
+        private final int[] positions = new int[columnCount]; // of each value in the current record
+        private int entry;
+        private boolean located = false;        // whether positions hold the current record's
+        private boolean removed = false;
+
+        RecordCursor(Iterator<String> lookups, int from, int to) {
+            this.lookups = lookups;
+            this.entry = from - 1;
+            this.limit = to;
+        }
+
+        @Override
+        public boolean next() {
+            located = false;
+            if (lookups != null) {
+                while (lookups.hasNext()) {
+                    String key = lookups.next();
+                    int slot = find(key, OpenHashMap.spread(key.hashCode()));
+                    if (slot >= 0) {
+                        entry = table[slot] - 1;
+                        return true;
+                    }
+                }
+                end();
+                return false;
+            }
+            while (++entry < count && entry < limit) {
+                if (addresses[entry] != REMOVED) {
+                    return true;
+                }
+            }
+            end();
+            return false;
+        }
+
+        private void end() {
+            if (removed) {
+                removed = false;
+                trim();
+            }
+        }
+
+        @Override
+        public String key() {
+            long address = addresses[entry];
+            return readString(slabs.slab(address), SlabAllocator.start(address));
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            ByteBuffer slab = slabs.slab(addresses[entry]);
+            if (!located) {
+                int position = skipString(slab, SlabAllocator.start(addresses[entry]));
+                for (int i = 0; i < columnCount; i++) {
+                    positions[i] = position;
+                    position = skipString(slab, position);
+                }
+                located = true;
+            }
+            return readString(slab, positions[column]);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(getString(column));
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(getString(column));
+        }
+
+        @Override
+        public void set(int column, String value) {
+            long address = addresses[entry];
+            String[] values = readValues(address);
+            values[column] = value;
+            addresses[entry] = write(address, key(), values);
+            located = false;
+        }
+
+        @Override
+        public void remove() {
+            int hash = hashes[entry];
+            int slot = hash & mask;
+            while (table[slot] != entry + 1) {
+                slot = (slot + 1) & mask;
+            }
+            removeSlot(slot);
+            removed = true;
+            located = false;
+        }
+    }
+}
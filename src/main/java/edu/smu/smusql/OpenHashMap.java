@@ -0,0 +1,333 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Hash map with open addressing, a drop-in replacement for ChainHashMap with the same
+ * put/get/remove/keys/size contract.
+ * Entries sit in parallel arrays in insertion order; a separate power-of-two table of entry
+ * numbers is probed linearly from the spread hash of the key. A lookup reads neighbouring ints
+ * and one entry instead of following list nodes, an entry costs no objects of its own, and
+ * keys() walks a dense array and returns keys in the order they were first put.
+ * Removal shifts the following slots of the probe run back instead of leaving tombstones in the
+ * table, and the hole it leaves in the entry arrays is reclaimed on the next rebuild.
+ * A Cursor walks the entries in place, without copying the keys, and can remove the entry it is on;
+ * shrinking is put off until the walk ends, so a scan that deletes rows rebuilds the table at most once.
+ * Keys must not be null.
+ */
+public class OpenHashMap<K, V> {
+    private static final int INITIAL_CAPACITY = 16; // must be a power of two
+    private static final float MAX_LOAD = 0.7f;
+
+    private int[] table;   // entry number + 1 per slot, 0 for a free slot
+    private int mask;      // table.length - 1
+    private int[] hashes;  // spread hash per entry
+    private K[] keys;      // per entry, null once removed
+    private V[] values;
+    private int count;     // entries used, removed ones included
+    private int size;      // entries not removed
+    private int resizes;   // rebuilds into a bigger table, for HashMapStats
+    private int shrinks;   // rebuilds into a smaller table
+    private int renumbers; // rebuilds that closed up removed entries, moving the ones after them
+
+    public OpenHashMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    // Sized so that expectedSize entries fit without a resize
+    public OpenHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    // Spreads the hash code so keys that differ only in their high bits still land apart
+    static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Smallest table that holds expectedSize entries under the load limit
+    static int capacityFor(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Slot holding the key's entry, or the negative of (free slot + 1) where it would go
+    private int find(Object key, int hash) {
+        int i = hash & mask;
+        int entry;
+        while ((entry = table[i]) != 0) {
+            entry--;
+            if (hashes[entry] == hash && keys[entry].equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    // Returns the entry position the value is stored at, in the numbering of cursor(from, to)
+    public int put(K key, V value) {
+        int hash = spread(key.hashCode());
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            values[table[slot] - 1] = value; // Update value if key already exists
+            return table[slot] - 1;
+        }
+
+        if (count == keys.length) {
+            // Entry arrays are full: compact away removed entries, doubling if most are live
+            rebuild(size >= keys.length / 2 ? table.length << 1 : table.length);
+            slot = find(key, hash);
+        }
+        int entry = count++;
+        hashes[entry] = hash;
+        keys[entry] = key;
+        values[entry] = value;
+        table[-slot - 1] = entry + 1;
+        size++;
+        return entry;
+    }
+
+    // Grows the table at once so expectedSize entries fit, instead of doubling step by step while
+    // they are put
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > table.length) {
+            rebuild(capacity);
+        }
+    }
+
+    // Walks the entries in insertion order. While it is open only the cursor may change the map.
+    public class Cursor {
+        private int entry;
+        private final int limit; // entry position the walk stops at
+        private boolean done = false;
+        private boolean removed = false; // whether this cursor removed entries, so end() may shrink
+
+        Cursor(int from, int to) {
+            this.entry = from - 1;
+            this.limit = to;
+        }
+
+        // Moves to the next entry. At the end, shrinks the map if removals left it sparse.
+        public boolean next() {
+            if (done) {
+                return false;
+            }
+            while (++entry < count && entry < limit) {
+                if (keys[entry] != null) {
+                    return true;
+                }
+            }
+            done = true;
+            end();
+            return false;
+        }
+
+        // Ends a walk of seeks. A cursor that only read leaves the map untouched, so readers
+        // holding a shared lock can walk it side by side.
+        public void end() {
+            if (removed) {
+                removed = false;
+                trim();
+            }
+        }
+
+        // Moves to the entry of the key, for point lookups that may remove it. False if absent.
+        public boolean seek(K key) {
+            int slot = find(key, spread(key.hashCode()));
+            if (slot < 0) {
+                return false;
+            }
+            entry = table[slot] - 1;
+            return true;
+        }
+
+        // Position of the current entry, as put() returns it
+        public int position() {
+            return entry;
+        }
+
+        // Makes next() continue from the entry at the position, skipping those before it
+        public void skipTo(int position) {
+            entry = position - 1;
+        }
+
+        public K key() {
+            return keys[entry];
+        }
+
+        public V value() {
+            return values[entry];
+        }
+
+        public void setValue(V value) {
+            values[entry] = value;
+        }
+
+        // Removes the current entry; the table is not shrunk until the walk ends
+        public void remove() {
+            int hash = hashes[entry];
+            int slot = hash & mask;
+            while (table[slot] != entry + 1) {
+                slot = (slot + 1) & mask;
+            }
+            removeSlot(slot);
+            removed = true;
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor(0, Integer.MAX_VALUE);
+    }
+
+    // Walks the entries at positions from (inclusive) to to (exclusive) of the insertion order,
+    // removed entries included in the count. Cursors over disjoint ranges can split a walk.
+    public Cursor cursor(int from, int to) {
+        return new Cursor(from, to);
+    }
+
+    // Positions a walk covers, for splitting it with cursor(from, to)
+    public int getEntryLimit() {
+        return count;
+    }
+
+    public V get(K key) {
+        int slot = find(key, spread(key.hashCode()));
+        return slot >= 0 ? values[table[slot] - 1] : null; // null if the key is not found
+    }
+
+    public void remove(K key) {
+        int slot = find(key, spread(key.hashCode()));
+        if (slot >= 0) {
+            removeSlot(slot);
+            trim();
+        }
+    }
+
+    // Shrinks the table if removals have left it mostly empty, so walks stay proportional to the size
+    public void trim() {
+        if (size <= table.length / 8 && table.length > INITIAL_CAPACITY) {
+            rebuild(table.length >> 1);
+        }
+    }
+
+    // Removes the entry in the slot, leaving the table size as it is
+    private void removeSlot(int i) {
+        int entry = table[i] - 1;
+        keys[entry] = null;
+        values[entry] = null;
+        size--;
+        while (count > 0 && keys[count - 1] == null) {
+            count--; // removed entries at the end can be reused right away
+        }
+
+        // Pull later slots of the probe run back into the gap, unless that would put them
+        // before their own home slot
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int moved = table[j];
+            if (moved == 0) {
+                break;
+            }
+            int home = hashes[moved - 1] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = moved;
+                i = j;
+            }
+        }
+        table[i] = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Adds this map's shape to the stats, walking the table for probe lengths; reset restarts the
+    // resize counts
+    public void addStats(HashMapStats stats, boolean reset) {
+        stats.entries += size;
+        stats.capacity += table.length;
+        stats.resizes += resizes;
+        stats.shrinks += shrinks;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != 0) {
+                int probeLength = ((i - hashes[table[i] - 1]) & mask) + 1;
+                stats.probeTotal += probeLength;
+                stats.probeMax = Math.max(stats.probeMax, probeLength);
+            }
+        }
+        if (reset) {
+            resizes = 0;
+            shrinks = 0;
+        }
+    }
+
+    // Times the entries have been renumbered; positions taken before a change no longer hold
+    public int getRenumbers() {
+        return renumbers;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // A copy of the keys in insertion order, so the map may be changed while walking them
+    public Iterable<K> keys() {
+        List<K> copy = new ArrayList<>(size);
+        for (int entry = 0; entry < count; entry++) {
+            if (keys[entry] != null) {
+                copy.add(keys[entry]);
+            }
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        int entries = (int) (capacity * MAX_LOAD);
+        table = new int[capacity];
+        mask = capacity - 1;
+        hashes = new int[entries];
+        keys = (K[]) new Object[entries];
+        values = (V[]) new Object[entries];
+        count = 0;
+        size = 0;
+    }
+
+    // Moves the live entries, in order, into fresh arrays for a table of the given capacity
+    private void rebuild(int capacity) {
+        int[] oldHashes = hashes;
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        int oldCount = count;
+        if (capacity > table.length) {
+            resizes++;
+        } else if (capacity < table.length) {
+            shrinks++;
+        }
+        if (count != size) {
+            renumbers++;
+        }
+        allocate(capacity);
+
+        for (int old = 0; old < oldCount; old++) {
+            if (oldKeys[old] != null) {
+                int entry = count++;
+                hashes[entry] = oldHashes[old];
+                keys[entry] = oldKeys[old];
+                values[entry] = oldValues[old];
+                int i = hashes[entry] & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry + 1;
+            }
+        }
+        size = count;
+    }
+}
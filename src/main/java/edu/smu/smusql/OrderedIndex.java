@@ -0,0 +1,155 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Ordered secondary index on a single column, built with CREATE INDEX.
+ * A skip list keyed on the numeric value of the cell, where each node holds the keys of every row
+ * with that value. Values that do not parse as numbers are not indexed, which is safe because a
+ * numeric literal never matches them in Engine.evaluateCondition.
+ */
+public class OrderedIndex implements Index {
+    private static final int MAX_LEVEL = 24; // enough for ~16M distinct values at p = 1/2
+
+    private static class Node {
+        float value;
+        Set<String> rowKeys = new HashSet<>();
+        Node[] next;
+
+        Node(float value, int level) {
+            this.value = value;
+            this.next = new Node[level];
+        }
+    }
+
+    private final String name;
+    private final String column;
+    private final Node head = new Node(Float.NEGATIVE_INFINITY, MAX_LEVEL);
+    private int level = 1;
+    private final Random random = new Random();
+
+    public OrderedIndex(String name, String column) {
+        this.name = name;
+        this.column = column;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public void add(String cellValue, String rowKey) {
+        Float value = parseKey(cellValue);
+        if (value == null) {
+            return;
+        }
+
+        // Find the last node before value on every level
+        Node[] update = new Node[MAX_LEVEL];
+        Node current = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && current.next[i].value < value) {
+                current = current.next[i];
+            }
+            update[i] = current;
+        }
+
+        Node found = current.next[0];
+        if (found != null && found.value == value) {
+            found.rowKeys.add(rowKey); // value already present, just extend its key set
+            return;
+        }
+
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                update[i] = head;
+            }
+            level = nodeLevel;
+        }
+
+        Node node = new Node(value, nodeLevel);
+        node.rowKeys.add(rowKey);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+        }
+    }
+
+    public void remove(String cellValue, String rowKey) {
+        Float value = parseKey(cellValue);
+        if (value == null) {
+            return;
+        }
+
+        Node[] update = new Node[MAX_LEVEL];
+        Node current = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && current.next[i].value < value) {
+                current = current.next[i];
+            }
+            update[i] = current;
+        }
+
+        Node found = current.next[0];
+        if (found == null || found.value != value) {
+            return;
+        }
+        found.rowKeys.remove(rowKey);
+        if (!found.rowKeys.isEmpty()) {
+            return;
+        }
+
+        // Last key for this value is gone, unlink the node from every level it is on
+        for (int i = 0; i < found.next.length; i++) {
+            update[i].next[i] = found.next[i];
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+    }
+
+    // Collects the keys of all rows whose value lies in [low, high], both ends inclusive.
+    // Callers pass inclusive bounds and re-check the real predicate, so the result may be a superset.
+    public List<String> range(float low, float high) {
+        List<String> keys = new ArrayList<>();
+
+        Node current = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (current.next[i] != null && current.next[i].value < low) {
+                current = current.next[i];
+            }
+        }
+
+        current = current.next[0];
+        while (current != null && current.value <= high) {
+            keys.addAll(current.rowKeys);
+            current = current.next[0];
+        }
+        return keys;
+    }
+
+    // Parses a cell the same way Engine.evaluateCondition falls back to floats, so an int-int
+    // comparison on the cell always agrees with the float ordering used here.
+    public static Float parseKey(String cellValue) {
+        if (cellValue == null) {
+            return null;
+        }
+        Filter.NumberParser number = new Filter.NumberParser();
+        if (!number.parseFloat(cellValue)) {
+            return null;
+        }
+        return Float.isNaN(number.floatValue) ? null : number.floatValue; // NaN never satisfies a comparison
+    }
+
+    private int randomLevel() {
+        int nodeLevel = 1;
+        while (nodeLevel < MAX_LEVEL && random.nextBoolean()) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+}
@@ -0,0 +1,131 @@
+package edu.smu.smusql;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * A full scan of a table with a WHERE clause, split into ranges of scan positions (see
+ * TableStorage.scan(from, to)) and run on a ForkJoinPool.
+ * Each leaf walks its range with its own cursor and its own compiled Filter, since filters keep
+ * parsing state, and collects the matching rows in a local list. Lists are joined left to right,
+ * so the result is in the same order as a serial scan.
+ * The caller holds the table lock for the whole scan; the workers only read.
+ */
+public class ParallelScan<R> extends RecursiveTask<List<R>> {
+    private static final long serialVersionUID = 1L; // RecursiveTask is Serializable; scans never are
+    private static final int RANGES_PER_THREAD = 4; // more ranges than threads, so an uneven range does not hold up the rest
+
+    // What a leaf keeps from a matching row
+    interface Collector<R> {
+        R collect(TableStorage.Cursor row);
+    }
+
+    private final Table table;
+    private final Predicate where;
+    private final String[] literals;
+    private final Collector<R> collector;
+    private final int from;
+    private final int to;
+    private final int grain; // largest range scanned without splitting further
+
+    private ParallelScan(Table table, Predicate where, String[] literals, Collector<R> collector, int from, int to, int grain) {
+        this.table = table;
+        this.where = where;
+        this.literals = literals;
+        this.collector = collector;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    // Scans the whole table on the pool and returns what the collector kept of each matching row
+    public static <R> List<R> run(ForkJoinPool pool, Table table, Predicate where, String[] literals, Collector<R> collector) {
+        int limit = table.getStorage().getScanLimit();
+        int ranges = pool.getParallelism() * RANGES_PER_THREAD;
+        int grain = Math.max(1, (limit + ranges - 1) / ranges);
+        return pool.invoke(new ParallelScan<>(table, where, literals, collector, 0, limit, grain));
+    }
+
+    // Values of the row, for SELECT
+    public static String[] values(TableStorage.Cursor row, int columnCount) {
+        String[] values = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            values[i] = row.getString(i);
+        }
+        return values;
+    }
+
+    @Override
+    protected List<R> compute() {
+        if (to - from <= grain) {
+            List<R> matches = new ArrayList<>();
+            Filter filter = Filter.compile(where, table, literals);
+            TableStorage.Cursor row = table.getStorage().scan(from, to, filter);
+            while (row.next()) {
+                if (filter.test(row)) {
+                    matches.add(collector.collect(row));
+                }
+            }
+            return matches;
+        }
+
+        int middle = (from + to) >>> 1;
+        ParallelScan<R> left = new ParallelScan<>(table, where, literals, collector, from, middle, grain);
+        left.fork();
+        List<R> right = new ParallelScan<>(table, where, literals, collector, middle, to, grain).compute();
+        List<R> matches = left.join();
+        matches.addAll(right);
+        return matches;
+    }
+
+    // Rows collected by a scan, walked like a table. Read-only, and without row keys.
+    public static class Rows implements TableStorage.Cursor {
+        private final List<String[]> rows;
+        private int position = -1;
+
+        public Rows(List<String[]> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean next() {
+            return ++position < rows.size();
+        }
+
+        @Override
+        public String key() {
+            return null;
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            return rows.get(position)[column];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(getString(column));
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(getString(column));
+        }
+
+        @Override
+        public void set(int column, String value) {
+            throw new UnsupportedOperationException("Scan results are read-only");
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Scan results are read-only");
+        }
+    }
+}
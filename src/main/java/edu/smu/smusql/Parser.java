@@ -1,85 +1,300 @@
-package edu.smu.smusql;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-/*
- * This is a rudimentary parser you may want to use to parse smuSQL statements.
- * Use of this parser is optional.
- * You may decide to use your own parser.
- * Example usage of some code in this parser can be found in the sample implementation.
- * However, the sample implementation does not have a 'Parser' class.
- */
-public class Parser {
-
-    public void parseInsert(String[] tokens) {
-        String tableName = tokens[2]; // The name of the table to be inserted into.
-        String valueList = queryBetweenParentheses(tokens, 4); // Get values list between parentheses
-        List<String> values = Arrays.asList(valueList.split(",")); // These are the values in the row to be inserted.
-    }
-
-    public void parseDelete(String[] tokens) {
-        String tableName = tokens[2]; // The name of the table to be deleted from.
-
-        List<String[]> whereClauseConditions = new ArrayList<>(); // Array for storing conditions from the where clause.
-
-        // Parse WHERE clause conditions
-        if (tokens.length > 3 && tokens[3].toUpperCase().equals("WHERE")) {
-            for (int i = 4; i < tokens.length; i++) {
-                if (tokens[i].toUpperCase().equals("AND") || tokens[i].toUpperCase().equals("OR")) {
-                    // Add AND/OR conditions
-                    whereClauseConditions.add(new String[] {tokens[i].toUpperCase(), null, null, null});
-                } else if (isOperator(tokens[i])) {
-                    // Add condition with operator (column, operator, value)
-                    String column = tokens[i - 1];
-                    String operator = tokens[i];
-                    String value = tokens[i + 1];
-                    whereClauseConditions.add(new String[] {null, column, operator, value});
-                    i += 1; // Skip the value since it has been processed
-                }
-            }
-        }
-    }
-
-    public void parseUpdate(String[] tokens){
-        String tableName = tokens[1]; // name of the table to be updated
-
-        String setColumn = tokens[3]; // column to be updated
-        String newValue = tokens[5]; // new value for above column
-
-        // Initialize whereClauseConditions list
-        List<String[]> whereClauseConditions = new ArrayList<>();
-
-        // Parse WHERE clause conditions
-        if (tokens.length > 6 && tokens[6].equalsIgnoreCase("WHERE")) {
-            for (int i = 5; i < tokens.length; i++) {
-                if (tokens[i].equalsIgnoreCase("AND") || tokens[i].equalsIgnoreCase("OR")) {
-                    // Add AND/OR conditions
-                    whereClauseConditions.add(new String[] {tokens[i].toUpperCase(), null, null, null});
-                } else if (isOperator(tokens[i])) {
-                    // Add condition with operator (column, operator, value)
-                    String column = tokens[i - 1];
-                    String operator = tokens[i];
-                    String value = tokens[i + 1];
-                    whereClauseConditions.add(new String[] {null, column, operator, value});
-                    i += 1; // Skip the value since it has been processed
-                }
-            }
-        }
-    }
-
-    // Helper method to extract content inside parentheses
-    private String queryBetweenParentheses(String[] tokens, int startIndex) {
-        StringBuilder result = new StringBuilder();
-        for (int i = startIndex; i < tokens.length; i++) {
-            result.append(tokens[i]).append(" ");
-        }
-        return result.toString().trim().replaceAll("\\(", "").replaceAll("\\)", "");
-    }
-
-    // Helper method to determine if a string is an operator
-    private boolean isOperator(String token) {
-        return token.equals("=") || token.equals(">") || token.equals("<") || token.equals(">=") || token.equals("<=");
-    }
-}
\ No newline at end of file
+package edu.smu.smusql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Recursive-descent parser for smuSQL.
+ * Reads the tokens of a Lexer and builds a Statement tree. Numbers and quoted strings become
+ * parameter Literals numbered in order of appearance, so the tree can be cached by shape and
+ * reused with the literal vector of any statement of that shape.
+ *
+ * Grammar:
+ *   statement  := [EXPLAIN [ANALYZE]] command [;]
+ *   command    := create | insert | select | update | delete | copy | CHECKPOINT
+ *               | SHOW STATS | RESET STATS
+ *   create     := CREATE TABLE name ( name [type] {, name [type]} ) [USING name]
+ *               | CREATE [HASH | BITMAP] INDEX name ON name ( name )
+ *   insert     := INSERT INTO name VALUES row {, row}
+ *   row        := ( value {, value} )
+ *   select     := SELECT * FROM name [WHERE predicate]
+ *   update     := UPDATE name SET name = value [WHERE predicate]
+ *   delete     := DELETE FROM name [WHERE predicate]
+ *   copy       := COPY name FROM literal
+ *   predicate  := conjunction {OR conjunction}
+ *   conjunction:= primary {AND primary}                  AND binds tighter than OR
+ *   primary    := ( predicate ) | comparison
+ *   comparison := name (= | != | <> | < | > | <= | >=) value
+ *
+ * A parser for statement shapes (see PlanCache) also takes "?" wherever a literal may stand, for
+ * the next parameter; in statements typed by users a "?" is a syntax error.
+ */
+public class Parser {
+    private final Lexer lexer;
+    private final boolean placeholders; // whether "?" stands for a parameter
+    private int pos = 0;
+    private int nextSlot = 0;
+    private String syntaxError = "ERROR: Unknown command"; // reported if the statement does not parse
+
+    public Parser(Lexer lexer) {
+        this(lexer, false);
+    }
+
+    public Parser(Lexer lexer, boolean placeholders) {
+        this.lexer = lexer;
+        this.placeholders = placeholders;
+    }
+
+    // Parses the whole statement. Throws IllegalArgumentException with the error to report.
+    public Statement parse() {
+        Statement statement;
+        if (accept("EXPLAIN")) {
+            boolean analyze = accept("ANALYZE");
+            syntaxError = "ERROR: Invalid EXPLAIN syntax";
+            statement = new Statement.Explain(parseCommand(), analyze);
+        } else {
+            statement = parseCommand();
+        }
+
+        accept(";");
+        if (pos < lexer.size()) {
+            throw new IllegalArgumentException(syntaxError); // trailing tokens
+        }
+        return statement;
+    }
+
+    private Statement parseCommand() {
+        Statement statement;
+        if (accept("CREATE")) {
+            statement = parseCreate();
+        } else if (accept("INSERT")) {
+            statement = parseInsert();
+        } else if (accept("SELECT")) {
+            statement = parseSelect();
+        } else if (accept("UPDATE")) {
+            statement = parseUpdate();
+        } else if (accept("DELETE")) {
+            statement = parseDelete();
+        } else if (accept("COPY")) {
+            statement = parseCopy();
+        } else if (accept("CHECKPOINT")) {
+            statement = new Statement.Checkpoint();
+        } else if (accept("SHOW")) {
+            syntaxError = "ERROR: Invalid SHOW syntax";
+            expect("STATS");
+            statement = new Statement.ShowStats();
+        } else if (accept("RESET")) {
+            syntaxError = "ERROR: Invalid RESET syntax";
+            expect("STATS");
+            statement = new Statement.ResetStats();
+        } else {
+            throw new IllegalArgumentException(syntaxError);
+        }
+        return statement;
+    }
+
+    private Statement parseCreate() {
+        if (accept("INDEX")) {
+            return parseCreateIndex("ORDERED");
+        }
+        if (accept("HASH")) {
+            syntaxError = "ERROR: Invalid CREATE INDEX syntax";
+            expect("INDEX");
+            return parseCreateIndex("HASH");
+        }
+        if (accept("BITMAP")) {
+            syntaxError = "ERROR: Invalid CREATE INDEX syntax";
+            expect("INDEX");
+            return parseCreateIndex("BITMAP");
+        }
+
+        syntaxError = "ERROR: Invalid CREATE TABLE syntax";
+        expect("TABLE");
+        String tableName = parseName();
+
+        List<String> columns = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        expect("(");
+        do {
+            columns.add(parseName());
+            types.add(pos < lexer.size() && lexer.kind(pos) == Lexer.WORD ? parseName() : null);
+        } while (accept(","));
+        expect(")");
+
+        String storage = accept("USING") ? parseName() : null;
+        return new Statement.CreateTable(tableName, columns, types, storage);
+    }
+
+    private Statement parseCreateIndex(String type) {
+        syntaxError = "ERROR: Invalid CREATE INDEX syntax";
+        String indexName = parseName();
+        expect("ON");
+        String tableName = parseName();
+        expect("(");
+        String column = parseName();
+        expect(")");
+
+        return new Statement.CreateIndex(indexName, tableName, column, type);
+    }
+
+    private Statement parseInsert() {
+        syntaxError = "ERROR: Invalid INSERT INTO syntax.";
+        expect("INTO");
+        String tableName = parseName();
+        expect("VALUES");
+
+        List<List<Literal>> rows = new ArrayList<>();
+        do {
+            List<Literal> values = new ArrayList<>();
+            expect("(");
+            do {
+                values.add(parseListValue());
+            } while (accept(","));
+            expect(")");
+            rows.add(values);
+        } while (accept(","));
+
+        return new Statement.Insert(tableName, rows);
+    }
+
+    private Statement parseCopy() {
+        syntaxError = "ERROR: Invalid COPY syntax";
+        String tableName = parseName();
+        expect("FROM");
+        if (!isParameter()) {
+            throw new IllegalArgumentException(syntaxError); // the file is a quoted string
+        }
+        return new Statement.Copy(tableName, parseValue());
+    }
+
+    private Statement parseSelect() {
+        syntaxError = "ERROR: Invalid SELECT syntax.";
+        expect("*");
+        expect("FROM");
+        String tableName = parseName();
+        return new Statement.Select(tableName, parseWhere());
+    }
+
+    private Statement parseUpdate() {
+        syntaxError = "ERROR: Invalid UPDATE syntax.";
+        String tableName = parseName();
+        expect("SET");
+        String column = parseName();
+        expect("=");
+        Literal value = parseValue();
+        return new Statement.Update(tableName, column, value, parseWhere());
+    }
+
+    private Statement parseDelete() {
+        syntaxError = "ERROR: Invalid DELETE syntax";
+        expect("FROM");
+        String tableName = parseName();
+        return new Statement.Delete(tableName, parseWhere());
+    }
+
+    // Optional WHERE clause, null if absent
+    private Predicate parseWhere() {
+        if (!accept("WHERE")) {
+            return null;
+        }
+        syntaxError = "ERROR: Invalid WHERE clause";
+        return parsePredicate();
+    }
+
+    // OR of ANDs, so "a OR b AND c" is "a OR (b AND c)"
+    private Predicate parsePredicate() {
+        Predicate left = parseConjunction();
+        while (accept("OR")) {
+            left = new Predicate.Or(left, parseConjunction());
+        }
+        return left;
+    }
+
+    private Predicate parseConjunction() {
+        Predicate left = parsePrimary();
+        while (accept("AND")) {
+            left = new Predicate.And(left, parsePrimary());
+        }
+        return left;
+    }
+
+    private Predicate parsePrimary() {
+        if (accept("(")) {
+            Predicate inner = parsePredicate();
+            expect(")");
+            return inner;
+        }
+        return parseComparison();
+    }
+
+    private Predicate parseComparison() {
+        String column = parseName();
+        if (pos >= lexer.size() || lexer.kind(pos) != Lexer.SYMBOL) {
+            throw new IllegalArgumentException(syntaxError);
+        }
+        String operator = lexer.text(pos);
+        if (!isOperator(operator)) {
+            throw new IllegalArgumentException(syntaxError);
+        }
+        pos++;
+        if (operator.equals("<>")) {
+            operator = "!="; // both spellings of not-equal
+        }
+        return new Predicate.Comparison(column, operator, parseValue());
+    }
+
+    // A single literal or bare word
+    private Literal parseValue() {
+        if (isParameter()) {
+            pos++;
+            return Literal.parameter(nextSlot++);
+        }
+        return Literal.constant(parseName());
+    }
+
+    // A value in a VALUES list. Its tokens run up to the next comma or closing parenthesis, so
+    // VALUES (1, New York) and VALUES (2, 5th Avenue) still store "New York" and "5th Avenue" as
+    // the old comma split did. Numbers among them stay parameters of the shape.
+    private Literal parseListValue() {
+        List<Literal> parts = new ArrayList<>();
+        while (pos < lexer.size() && !lexer.is(pos, ",") && !lexer.is(pos, ")")) {
+            parts.add(isParameter() ? parseValue() : Literal.constant(lexer.text(pos++)));
+        }
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException(syntaxError);
+        }
+        return parts.size() == 1 ? parts.get(0) : Literal.joined(parts);
+    }
+
+    // Whether the next token is a literal, or a placeholder for one
+    private boolean isParameter() {
+        return pos < lexer.size() && (lexer.isLiteral(pos) || (placeholders && lexer.is(pos, "?")));
+    }
+
+    private String parseName() {
+        if (pos >= lexer.size() || lexer.kind(pos) != Lexer.WORD) {
+            throw new IllegalArgumentException(syntaxError);
+        }
+        return lexer.text(pos++);
+    }
+
+    private boolean accept(String text) {
+        if (pos < lexer.size() && lexer.is(pos, text)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String text) {
+        if (!accept(text)) {
+            throw new IllegalArgumentException(syntaxError);
+        }
+    }
+
+    // Helper method to determine if a string is an operator
+    private boolean isOperator(String token) {
+        return token.equals("=") || token.equals(">") || token.equals("<") || token.equals(">=") || token.equals("<=")
+                || token.equals("!=") || token.equals("<>");
+    }
+}
@@ -0,0 +1,33 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * A parsed and planned statement shape, as kept in the PlanCache.
+ * Holds the syntax tree from Parser, or the syntax error to report, together with the parts of
+ * the access path that depend only on the shape and not on the literals.
+ */
+public class Plan {
+    final Statement statement;               // null if the statement did not parse
+    final String error;                      // syntax error to report instead of executing
+    List<Predicate.Comparison> conjuncts;    // comparisons of a WHERE clause joined only by AND, else null
+    Predicate.Comparison keyCondition;       // conjunct comparing the key column with "=", if any
+    String shape;                            // the statement shape, as cached and as written to the log
+    Stats.Entry statementStats;              // where executions of the shape are recorded, set on first use
+    Stats.Entry tableStats;
+    Plan explained;                          // for EXPLAIN, the plan of the statement it explains
+
+    Plan(Statement statement) {
+        this.statement = statement;
+        this.error = null;
+    }
+
+    Plan(String error) {
+        this.statement = null;
+        this.error = error;
+    }
+
+    public Statement getStatement() {
+        return statement;
+    }
+}
@@ -0,0 +1,122 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Bounded LRU cache of parsed statements, keyed by statement shape.
+ * A shape is the statement with every literal (number or quoted string) replaced by "?" and
+ * whitespace collapsed, so "UPDATE users SET age = 30 WHERE id = 7" and "... age = 41 WHERE id = 9"
+ * share one Plan and differ only in their literal vectors.
+ * Methods are synchronized so clients on several threads can share one cache; parsing on a miss
+ * happens outside the lock, in the caller.
+ */
+public class PlanCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // A normalized statement: its shape and the literals taken out of it, in order of appearance
+    public static class Shape {
+        final String text;
+        final String[] literals;
+        final Lexer lexer; // tokens of the statement, for parsing it on a cache miss
+
+        Shape(String text, String[] literals, Lexer lexer) {
+            this.text = text;
+            this.literals = literals;
+            this.lexer = lexer;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String[] getLiterals() {
+            return literals;
+        }
+
+        public Lexer getLexer() {
+            return lexer;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<String, Plan> plans;
+    private long hits = 0; // guarded by this, like plans
+    private long misses = 0;
+
+    public PlanCache(int capacity) {
+        this.capacity = capacity;
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) { // access order, eldest = least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
+                return size() > PlanCache.this.capacity;
+            }
+        };
+    }
+
+    public synchronized Plan get(String shape) {
+        Plan plan = plans.get(shape);
+        if (plan != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return plan;
+    }
+
+    public synchronized void put(String shape, Plan plan) {
+        if (capacity > 0) {
+            plans.put(shape, plan);
+        }
+    }
+
+    public synchronized void clear() {
+        plans.clear();
+    }
+
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    // Tokenizes the statement once and builds its shape: words and symbols are copied in
+    // separated by single spaces, numbers and quoted strings are replaced by "?" and collected as
+    // literals, quotes included. A "?" typed in the statement itself is kept apart as "\?".
+    public static Shape normalize(String sql) {
+        Lexer lexer = new Lexer(sql);
+        StringBuilder shape = new StringBuilder(sql.length());
+        String[] literals = new String[lexer.size()];
+        int literalCount = 0;
+
+        for (int i = 0; i < lexer.size(); i++) {
+            if (i > 0) {
+                shape.append(' ');
+            }
+            if (lexer.isLiteral(i)) {
+                literals[literalCount++] = lexer.text(i);
+                shape.append('?');
+            } else {
+                if (lexer.is(i, "?")) {
+                    shape.append('\\');
+                }
+                lexer.appendTo(shape, i);
+            }
+        }
+        return new Shape(shape.toString(), Arrays.copyOf(literals, literalCount), lexer);
+    }
+}
@@ -0,0 +1,55 @@
+package edu.smu.smusql;
+
+/*
+ * WHERE clause tree produced by Parser.
+ * Leaves compare one column with a value; inner nodes join two subtrees with AND or OR.
+ */
+public abstract class Predicate {
+
+    public static class Comparison extends Predicate {
+        public final String column;
+        public final String operator;  // =, !=, <, >, <=, >=
+        public final Literal value;
+
+        public Comparison(String column, String operator, Literal value) {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return column + " " + operator + " " + value;
+        }
+    }
+
+    public static class And extends Predicate {
+        public final Predicate left;
+        public final Predicate right;
+
+        public And(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " AND " + right + ")";
+        }
+    }
+
+    public static class Or extends Predicate {
+        public final Predicate left;
+        public final Predicate right;
+
+        public Or(Predicate left, Predicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " OR " + right + ")";
+        }
+    }
+}
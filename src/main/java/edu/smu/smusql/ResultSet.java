@@ -0,0 +1,303 @@
+package edu.smu.smusql;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+ * Rows of a SELECT, produced one at a time as the caller asks for them, from Engine.query.
+ * Nothing is read from the table until next() or a writeTo method is called, so a caller that
+ * wants the first rows, or streams rows straight to a socket, never holds the whole result.
+ * Statements without rows (INSERT, UPDATE, errors, ...) give a ResultSet with only a message.
+ *
+ * The rows come from a live cursor over the table, which stays read-locked (or, for an MVCC table,
+ * its snapshot held) until the last row has been read or close() is called. Callers must close a
+ * ResultSet they stop reading early, best with try-with-resources as executeSQL does. Close it on
+ * the thread that opened it, and before that thread runs a statement that changes the same table:
+ * the read lock cannot be upgraded, so such a statement returns an ERROR until the ResultSet is
+ * closed. A snapshot of a ResultSet dropped without closing is released once it is garbage
+ * collected, so it does not keep old versions from being collected for good.
+ */
+public class ResultSet implements AutoCloseable {
+    private static final Cleaner CLEANER = Cleaner.create(); // releases snapshots of dropped ResultSets
+
+    private final String message;              // result of a statement without rows, else null
+    private final List<String> columns;
+    private final TableStorage storage;
+    private final TableStorage.Cursor row;
+    private final Filter filter;
+    private Runnable release;                  // unlocks the table or releases the snapshot, null once run
+    private Runnable closed;                   // run after release, null once run
+    private boolean headerWritten = false;
+    private boolean exhausted = false;
+    private int rowCount = 0;
+    private long rowsScanned = 0;              // rows read from the table, matching or not
+    private long formatNanos = -1;             // time spent writing rows as text, -1 unless timed
+
+    // Text being encoded into ByteBuffers, kept between calls when a line does not fit
+    private CharsetEncoder encoder;
+    private CharBuffer pending;
+    private StringBuilder line;
+    private byte[] ascii;
+
+    ResultSet(List<String> columns, TableStorage storage, TableStorage.Cursor row, Filter filter, Runnable release) {
+        this.message = null;
+        this.columns = columns;
+        this.storage = storage;
+        this.row = row;
+        this.filter = filter;
+        this.release = release;
+    }
+
+    ResultSet(String message) {
+        this.message = message;
+        this.columns = List.of();
+        this.storage = null;
+        this.row = null;
+        this.filter = null;
+        this.exhausted = true;
+    }
+
+    // Status or error text of a statement without rows, null for a SELECT
+    public String getMessage() {
+        return message;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    // Position of the column, or -1 if the result has no such column
+    public int getColumnIndex(String column) {
+        return columns.indexOf(column);
+    }
+
+    // Number of rows returned by next() so far
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // Number of rows read from the table so far, including those the WHERE clause dropped
+    public long getRowsScanned() {
+        return rowsScanned;
+    }
+
+    // Counts rows that were read and dropped before the rows reached this ResultSet
+    void addRowsScanned(long rows) {
+        rowsScanned += rows;
+    }
+
+    // Times the writing of rows as text by writeTo(Appendable), for EXPLAIN ANALYZE
+    void timeFormatting() {
+        formatNanos = 0;
+    }
+
+    long getFormatNanos() {
+        return Math.max(0, formatNanos);
+    }
+
+    // Runs the release also when the ResultSet is garbage collected without being closed. Only for
+    // a release that may run on any thread, such as a snapshot's, and that does not refer to the
+    // ResultSet, which it would otherwise keep reachable.
+    void releaseIfDropped() {
+        Cleaner.Cleanable cleanable = CLEANER.register(this, release);
+        release = cleanable::clean; // runs the release at most once, whichever comes first
+    }
+
+    // Runs the hook once the ResultSet is closed, after the table is released
+    void whenClosed(Runnable hook) {
+        closed = hook;
+    }
+
+    // Moves to the next matching row; false once there are no more
+    public boolean next() {
+        if (exhausted) {
+            return false;
+        }
+        while (row.next()) {
+            rowsScanned++;
+            if (filter.test(row)) {
+                rowCount++;
+                return true;
+            }
+        }
+        close();
+        return false;
+    }
+
+    // Stops reading rows and releases the table. Safe to call more than once.
+    @Override
+    public void close() {
+        exhausted = true;
+        if (release != null) {
+            release.run();
+            release = null;
+        }
+        if (closed != null) {
+            Runnable hook = closed;
+            closed = null;
+            hook.run();
+        }
+    }
+
+    public ColumnType getType(int column) {
+        return storage.getType(column);
+    }
+
+    public String getString(int column) {
+        return row.getString(column);
+    }
+
+    public String getString(String column) {
+        return row.getString(getColumnIndex(column));
+    }
+
+    // Throws NumberFormatException if the value is not an int
+    public int getInt(int column) {
+        return row.type(column) == ColumnType.INT ? row.getInt(column) : Integer.parseInt(row.getString(column));
+    }
+
+    // Throws NumberFormatException if the value is not a number
+    public double getDouble(int column) {
+        switch (row.type(column)) {
+            case INT:
+                return row.getInt(column);
+            case DOUBLE:
+                return row.getDouble(column);
+            default:
+                return Double.parseDouble(row.getString(column));
+        }
+    }
+
+    // Writes the rest of the result as executeSQL prints it: the header line, then one line per row
+    public void writeTo(Appendable out) throws IOException {
+        while (writeTo(out, Integer.MAX_VALUE) > 0) {
+            // keep going until every row is written
+        }
+    }
+
+    // Writes the header if it has not been written yet, then up to maxRows rows.
+    // Returns the number of rows written, 0 when there are no more.
+    public int writeTo(Appendable out, int maxRows) throws IOException {
+        if (message != null) {
+            if (!headerWritten) {
+                out.append(message);
+                headerWritten = true;
+            }
+            return 0;
+        }
+        if (!headerWritten) {
+            appendHeader(out);
+            headerWritten = true;
+        }
+        int written = 0;
+        while (written < maxRows && next()) {
+            if (formatNanos >= 0) {
+                long start = System.nanoTime();
+                appendRow(out);
+                formatNanos += System.nanoTime() - start;
+            } else {
+                appendRow(out);
+            }
+            written++;
+        }
+        return written;
+    }
+
+    // Fills the buffer with the UTF-8 text of the result, splitting a line across calls if it does
+    // not fit. Returns true if there is more to write: drain the buffer and call again.
+    public boolean writeTo(ByteBuffer buffer) {
+        if (encoder == null) {
+            encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            line = new StringBuilder();
+            pending = CharBuffer.allocate(0);
+            ascii = new byte[256];
+        }
+        while (true) {
+            if (pending.hasRemaining()) {
+                if (encoder.encode(pending, buffer, true).isOverflow()) {
+                    return true; // buffer full
+                }
+                encoder.reset(); // each line is encoded as a whole input
+            }
+
+            line.setLength(0);
+            try {
+                if (!headerWritten) {
+                    if (message != null) {
+                        line.append(message);
+                    } else {
+                        appendHeader(line);
+                    }
+                    headerWritten = true;
+                } else if (message == null && next()) {
+                    appendRow(line);
+                } else {
+                    return false;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // StringBuilder does not throw
+            }
+            if (!putAscii(line, buffer)) {
+                pending = fill(pending, line); // encoded, and split if needed, at the top of the loop
+            }
+        }
+    }
+
+    // Puts a plain ASCII line that fits straight into the buffer in one bulk copy, skipping the encoder.
+    // False, with the buffer unchanged, if the line needs encoding or does not fit.
+    private boolean putAscii(StringBuilder line, ByteBuffer buffer) {
+        int length = line.length();
+        if (length > buffer.remaining()) {
+            return false;
+        }
+        if (ascii.length < length) {
+            ascii = new byte[Math.max(length, ascii.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                return false;
+            }
+            ascii[i] = (byte) c;
+        }
+        buffer.put(ascii, 0, length);
+        return true;
+    }
+
+    private void appendHeader(Appendable out) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                out.append('\t');
+            }
+            out.append(columns.get(i));
+        }
+        out.append('\n');
+    }
+
+    private void appendRow(Appendable out) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            String value = row.getString(i);
+            out.append(value != null ? value : "NULL").append('\t');
+        }
+        out.append('\n');
+    }
+
+    // Copies the line into the reusable char buffer, growing it if needed, ready to be read
+    private static CharBuffer fill(CharBuffer chars, StringBuilder line) {
+        if (chars.capacity() < line.length()) {
+            chars = CharBuffer.allocate(Math.max(line.length(), chars.capacity() * 2));
+        }
+        chars.clear();
+        line.getChars(0, line.length(), chars.array(), 0);
+        chars.limit(line.length());
+        return chars;
+    }
+}
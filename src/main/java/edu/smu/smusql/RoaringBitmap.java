@@ -0,0 +1,441 @@
+package edu.smu.smusql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/*
+ * Compressed set of non-negative ints laid out like a Roaring bitmap.
+ * Values are split by their high 16 bits into chunks of 65536, and each chunk holding any value is
+ * kept in the container that suits how full it is: a sorted char array of the low bits while it
+ * holds at most ARRAY_LIMIT values (2 bytes a value), else a bitmap of 1024 longs (8 KB, a bit per
+ * value). Chunks are kept in order of their high bits.
+ *
+ * and() and or() combine two bitmaps chunk by chunk into a new one: two bitmap containers a word
+ * at a time, two arrays by merging, and an array with a bitmap by testing its bits, so a sparse
+ * chunk is never expanded. Where the result may be larger than an array holds, bits are set in a
+ * bitmap container and counted after. Used by BitmapIndex over the RowOrdinals of a table.
+ */
+public class RoaringBitmap {
+    private static final int ARRAY_LIMIT = 4096; // most values an array container holds; a bitmap is smaller past it
+
+    private char[] highs = new char[4];          // high 16 bits of each chunk, ascending
+    private Container[] containers = new Container[4];
+    private int chunks = 0;
+
+    public void add(int value) {
+        char high = (char) (value >>> 16);
+        int i = find(high);
+        if (i < 0) {
+            i = -i - 1;
+            insertChunk(i, high, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) value);
+    }
+
+    public void remove(int value) {
+        int i = find((char) (value >>> 16));
+        if (i < 0) {
+            return;
+        }
+        Container container = containers[i].remove((char) value);
+        if (container.cardinality == 0) {
+            removeChunk(i);
+        } else {
+            containers[i] = container;
+        }
+    }
+
+    public boolean contains(int value) {
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < chunks; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return chunks == 0;
+    }
+
+    // Passes every value to the action in ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < chunks; i++) {
+            containers[i].forEach(highs[i] << 16, action);
+        }
+    }
+
+    // Values in both bitmaps
+    public static RoaringBitmap and(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.chunks && j < b.chunks) {
+            if (a.highs[i] < b.highs[j]) {
+                i++;
+            } else if (a.highs[i] > b.highs[j]) {
+                j++;
+            } else {
+                Container both = a.containers[i].and(b.containers[j]);
+                if (both.cardinality > 0) {
+                    result.insertChunk(result.chunks, a.highs[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in either bitmap
+    public static RoaringBitmap or(RoaringBitmap a, RoaringBitmap b) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.chunks || j < b.chunks) {
+            if (j == b.chunks || (i < a.chunks && a.highs[i] < b.highs[j])) {
+                result.insertChunk(result.chunks, a.highs[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.chunks || a.highs[i] > b.highs[j]) {
+                result.insertChunk(result.chunks, b.highs[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.insertChunk(result.chunks, a.highs[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Values in any of the bitmaps. Each chunk whose containers hold more than ARRAY_LIMIT values
+    // between them is ORed into one bitmap container in place and counted once at the end, rather
+    // than merged a pair at a time.
+    public static RoaringBitmap or(List<RoaringBitmap> bitmaps) {
+        TreeMap<Character, List<Container>> chunks = new TreeMap<>();
+        for (RoaringBitmap bitmap : bitmaps) {
+            for (int i = 0; i < bitmap.chunks; i++) {
+                chunks.computeIfAbsent(bitmap.highs[i], high -> new ArrayList<>()).add(bitmap.containers[i]);
+            }
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Character, List<Container>> chunk : chunks.entrySet()) {
+            List<Container> containers = chunk.getValue();
+            int total = 0;
+            for (Container container : containers) {
+                total += container.cardinality;
+            }
+            Container either;
+            if (total > ARRAY_LIMIT) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (Container container : containers) {
+                    container.orInto(bitmap.words);
+                }
+                either = bitmap.recount();
+            } else {
+                either = containers.get(0).copy();
+                for (int i = 1; i < containers.size(); i++) {
+                    either = either.or(containers.get(i));
+                }
+            }
+            result.insertChunk(result.chunks, chunk.getKey(), either);
+        }
+        return result;
+    }
+
+    // Index of the chunk, or the negative of (index + 1) where it would go
+    private int find(char high) {
+        int low = 0;
+        int top = chunks - 1;
+        while (low <= top) {
+            int middle = (low + top) >>> 1;
+            if (highs[middle] < high) {
+                low = middle + 1;
+            } else if (highs[middle] > high) {
+                top = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertChunk(int i, char high, Container container) {
+        if (chunks == highs.length) {
+            highs = Arrays.copyOf(highs, chunks * 2);
+            containers = Arrays.copyOf(containers, chunks * 2);
+        }
+        System.arraycopy(highs, i, highs, i + 1, chunks - i);
+        System.arraycopy(containers, i, containers, i + 1, chunks - i);
+        highs[i] = high;
+        containers[i] = container;
+        chunks++;
+    }
+
+    private void removeChunk(int i) {
+        System.arraycopy(highs, i + 1, highs, i, chunks - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, chunks - i - 1);
+        containers[--chunks] = null;
+    }
+
+    // Low 16 bits of the values of one chunk. Changes return the container to keep, which is
+    // another kind of container when the change crossed ARRAY_LIMIT.
+    private abstract static class Container {
+        int cardinality;
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        // Sets the bits of its values in the words of a bitmap container
+        abstract void orInto(long[] words);
+
+        abstract void forEach(int base, IntConsumer action);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values; // ascending, cardinality of them used
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] both = new char[cardinality];
+            int count = 0;
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        both[count++] = values[i];
+                    }
+                }
+                return new ArrayContainer(both, count);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    both[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(both, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > ARRAY_LIMIT) {
+                // likely more than an array holds, so set bits rather than merge
+                BitmapContainer bitmap = new BitmapContainer();
+                orInto(bitmap.words);
+                array.orInto(bitmap.words);
+                return bitmap.recount();
+            }
+            char[] either = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    either[count++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    either[count++] = array.values[j++];
+                } else {
+                    either[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(either, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            orInto(bitmap.words);
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words = new long[1 << 10]; // bit (value & 63) of word (value >>> 6)
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) != 0) {
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            BitmapContainer both = new BitmapContainer();
+            for (int i = 0; i < words.length; i++) {
+                both.words[i] = words[i] & otherWords[i];
+            }
+            return both.recount();
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer either = (BitmapContainer) copy();
+            other.orInto(either.words);
+            return either.recount();
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer copy = new BitmapContainer();
+            System.arraycopy(words, 0, copy.words, 0, words.length);
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < words.length; i++) {
+                words[i] |= this.words[i];
+            }
+        }
+
+        // Counts the bits set directly in the words, and keeps the container in the smaller form
+        Container recount() {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+            return count <= ARRAY_LIMIT ? toArray() : this;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[count++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
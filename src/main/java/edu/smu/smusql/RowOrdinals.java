@@ -0,0 +1,55 @@
+package edu.smu.smusql;
+
+import java.util.Arrays;
+
+/*
+ * Dense numbering of the rows of a table, for its bitmap indexes to set one bit per row.
+ * Every row key gets an ordinal; the ordinal of a removed row goes on a free list and is given to
+ * the next row added, so the ordinals stay within about the number of rows however many have come
+ * and gone. Kept by Table while it has a bitmap index, and changed under its write lock.
+ */
+public class RowOrdinals {
+    private final OpenHashMap<String, Integer> ordinals = new OpenHashMap<>(); // row key -> ordinal
+    private String[] keys = new String[16];  // row key per ordinal, null for a free one
+    private int[] freeOrdinals = new int[16];
+    private int freeCount = 0;
+    private int next = 0;                    // ordinals at or above this have never been used
+
+    // Ordinal of the row, numbering it if it is new
+    public int add(String key) {
+        Integer existing = ordinals.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int ordinal = freeCount > 0 ? freeOrdinals[--freeCount] : next++;
+        if (ordinal == keys.length) {
+            keys = Arrays.copyOf(keys, ordinal * 2);
+        }
+        keys[ordinal] = key;
+        ordinals.put(key, ordinal);
+        return ordinal;
+    }
+
+    public void remove(String key) {
+        Integer ordinal = ordinals.get(key);
+        if (ordinal == null) {
+            return;
+        }
+        ordinals.remove(key);
+        keys[ordinal] = null;
+        if (freeCount == freeOrdinals.length) {
+            freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+        }
+        freeOrdinals[freeCount++] = ordinal;
+    }
+
+    // Ordinal of the row, or -1 if it has none
+    public int get(String key) {
+        Integer ordinal = ordinals.get(key);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public String keyOf(int ordinal) {
+        return keys[ordinal];
+    }
+}
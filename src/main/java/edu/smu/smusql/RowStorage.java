@@ -0,0 +1,221 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Row-at-a-time storage: every row is an array of its values' text, one per column in the order of
+ * Table.getColumns(), kept in an OpenHashMap under its row key. Values are stored exactly as
+ * written and compared by their text.
+ * A ZoneMap over the map's entry positions lets full scans with a WHERE clause skip blocks of rows
+ * whose numbers are all out of range. It is brought up to date by commit(), and not used by scans
+ * between a rebuild of the map that renumbers the entries and the next commit().
+ */
+public class RowStorage implements TableStorage {
+    private OpenHashMap<String, String[]> dataList = new OpenHashMap<>(); // rows by key
+    private final ZoneMap zones = new ZoneMap(); // bounds of numeric values by block of entry positions
+    private int zonesRenumbers = 0; // dataList.getRenumbers() the zone map's positions are from
+
+    @Override
+    public int size() {
+        return dataList.size();
+    }
+
+    @Override
+    public void insert(String key, String[] values) {
+        int size = dataList.size();
+        int position = dataList.put(key, values.clone()); // callers may reuse the array, as COPY does
+        if (zonesCurrent()) {
+            if (dataList.size() == size) {
+                zones.loosen(position); // replaced a row, whose values may have been bounds
+            }
+            zones.add(position, values);
+        }
+    }
+
+    @Override
+    public ColumnType getType(int column) {
+        return ColumnType.STRING;
+    }
+
+    @Override
+    public void checkValue(int column, String value) {
+        // Rows hold any text
+    }
+
+    @Override
+    public Cursor scan() {
+        return new RowCursor(null, dataList.cursor());
+    }
+
+    @Override
+    public Cursor scan(Filter filter) {
+        return new RowCursor(null, dataList.cursor(), zonesCurrent() ? filter : null);
+    }
+
+    @Override
+    public Cursor scan(Iterable<String> keys) {
+        return new RowCursor(keys.iterator(), dataList.cursor());
+    }
+
+    @Override
+    public Cursor scan(int from, int to) {
+        return new RowCursor(null, dataList.cursor(from, to));
+    }
+
+    @Override
+    public Cursor scan(int from, int to, Filter filter) {
+        return new RowCursor(null, dataList.cursor(from, to), zonesCurrent() ? filter : null);
+    }
+
+    @Override
+    public int getScanLimit() {
+        return dataList.getEntryLimit();
+    }
+
+    @Override
+    public void reserve(int rows) {
+        dataList.ensureCapacity(dataList.size() + rows);
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        String[] row = dataList.get(oldKey);
+        if (row != null) {
+            dataList.remove(oldKey);
+            int position = dataList.put(newKey, row);
+            if (zonesCurrent()) {
+                zones.add(position, row);
+            }
+        }
+    }
+
+    @Override
+    public void addKeyMapStats(HashMapStats stats, boolean reset) {
+        dataList.addStats(stats, reset);
+    }
+
+    @Override
+    public String getKind() {
+        return "ROW";
+    }
+
+    @Override
+    public void commit() {
+        // Writes are visible as soon as they are made; only the zone map is brought up to date
+        if (!zonesCurrent()) {
+            zones.clear();
+            addZones(0, dataList.getEntryLimit());
+            zonesRenumbers = dataList.getRenumbers();
+            return;
+        }
+        for (int block = zones.nextStale(0); block >= 0; block = zones.nextStale(block + 1)) {
+            zones.reset(block);
+            addZones(block << ZoneMap.BLOCK_SHIFT, (block + 1) << ZoneMap.BLOCK_SHIFT);
+        }
+    }
+
+    // Whether the zone map's blocks are still numbered like the entries of dataList
+    private boolean zonesCurrent() {
+        return zonesRenumbers == dataList.getRenumbers();
+    }
+
+    private void addZones(int from, int to) {
+        OpenHashMap<String, String[]>.Cursor entries = dataList.cursor(from, to);
+        while (entries.next()) {
+            zones.add(entries.position(), entries.value());
+        }
+    }
+
+    public OpenHashMap<String, String[]> getDataList() {
+        return dataList;
+    }
+
+    // Walks the map in place, skipping the blocks the filter cannot pass if one is given, or seeks
+    // the given keys one by one
+    private class RowCursor implements Cursor {
+        private final Iterator<String> lookups; // null to walk every row
+        private final OpenHashMap<String, String[]>.Cursor entries;
+        private final Filter filter; // null to read every block
+        private int block = -1;      // block of the last entry walked, which the filter may pass
+        private String[] row;
+
+        RowCursor(Iterator<String> lookups, OpenHashMap<String, String[]>.Cursor entries) {
+            this(lookups, entries, null);
+        }
+
+        RowCursor(Iterator<String> lookups, OpenHashMap<String, String[]>.Cursor entries, Filter filter) {
+            this.lookups = lookups;
+            this.entries = entries;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean next() {
+            if (lookups == null) {
+                while (entries.next()) {
+                    int entryBlock = ZoneMap.blockOf(entries.position());
+                    if (filter != null && entryBlock != block) {
+                        if (!filter.mayMatch(zones, entryBlock)) {
+                            entries.skipTo((entryBlock + 1) << ZoneMap.BLOCK_SHIFT);
+                            continue;
+                        }
+                        block = entryBlock;
+                    }
+                    row = entries.value();
+                    return true;
+                }
+                return false;
+            }
+            while (lookups.hasNext()) {
+                if (entries.seek(lookups.next())) {
+                    row = entries.value();
+                    return true;
+                }
+            }
+            entries.end(); // removals through the cursor leave shrinking to the end
+            return false;
+        }
+
+        @Override
+        public String key() {
+            return entries.key();
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            return row[column];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(getString(column));
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(getString(column));
+        }
+
+        @Override
+        public void set(int column, String value) {
+            row[column] = value;
+            if (zonesCurrent()) {
+                zones.loosen(entries.position());
+                zones.widen(entries.position(), column, value);
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (zonesCurrent()) {
+                zones.loosen(entries.position());
+            }
+            entries.remove();
+        }
+    }
+}
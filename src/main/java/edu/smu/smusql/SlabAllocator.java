@@ -0,0 +1,135 @@
+package edu.smu.smusql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Hands out blocks of direct (off-heap) memory carved from 1 MB slabs, for OffHeapStorage.
+ * A block is addressed by a long: slab number in the high 32 bits, byte offset in the low 32.
+ * Each block starts with an int holding its capacity, which the caller's bytes follow.
+ *
+ * Capacities are rounded up to a size class: a multiple of 16 bytes up to 4 KB, a power of two
+ * above that. A freed block goes on the free list of its class and is handed out again before new
+ * slab space is used, so a table that deletes and inserts rows of similar sizes stays the same size.
+ * Blocks bigger than a slab get a slab of their own, which is never released: freed, it only goes
+ * on the free list of its class, so its memory stays reserved until the allocator is dropped.
+ * Blocks are at most MAX_CAPACITY (1 GB) with their header.
+ *
+ * The memory is not on the Java heap, so the GC neither copies nor walks it. It is limited by
+ * -XX:MaxDirectMemorySize, which defaults to the heap limit, and is returned when the allocator is
+ * no longer reachable. Not thread-safe; blocks may be read from several threads through absolute
+ * ByteBuffer methods while nothing allocates or frees.
+ */
+public class SlabAllocator {
+    static final int SLAB_BYTES = 1 << 20;
+    static final int HEADER_BYTES = Integer.BYTES; // the block's capacity
+    private static final int SMALL_LIMIT = 4096;   // largest capacity counted in 16-byte steps
+    private static final int SMALL_CLASSES = SMALL_LIMIT / 16;
+    static final int MAX_CAPACITY = 1 << 30;        // largest power of two an int holds
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private ByteBuffer current;   // slab new blocks are carved from
+    private int currentSlab = -1;
+    private int used;             // bytes of the current slab handed out
+    private long[][] freeLists = new long[SMALL_CLASSES + 32][];
+    private int[] freeCounts = new int[SMALL_CLASSES + 32];
+    private long reservedBytes;   // slab memory taken from the system
+    private long freeBytes;       // capacity of the blocks on the free lists
+
+    // Address of a block of at least the given bytes after its header
+    public long allocate(int bytes) {
+        if (bytes < 0 || bytes > MAX_CAPACITY - HEADER_BYTES) {
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes off-heap");
+        }
+        int capacity = capacityFor(bytes + HEADER_BYTES);
+        int sizeClass = sizeClass(capacity);
+        if (freeCounts[sizeClass] > 0) {
+            freeBytes -= capacity;
+            return freeLists[sizeClass][--freeCounts[sizeClass]];
+        }
+
+        long address;
+        if (capacity > SLAB_BYTES) {
+            address = address(addSlab(capacity), 0);
+        } else {
+            if (current == null || used + capacity > SLAB_BYTES) {
+                currentSlab = addSlab(SLAB_BYTES);
+                current = slabs.get(currentSlab);
+                used = 0; // what was left of the old slab is too small, and is not used again
+            }
+            address = address(currentSlab, used);
+            used += capacity;
+        }
+        slab(address).putInt(offset(address), capacity);
+        return address;
+    }
+
+    // Puts the block back for reuse by the next block of its size class
+    public void free(long address) {
+        int capacity = capacity(address);
+        int sizeClass = sizeClass(capacity);
+        long[] list = freeLists[sizeClass];
+        if (list == null) {
+            list = freeLists[sizeClass] = new long[16];
+        } else if (freeCounts[sizeClass] == list.length) {
+            list = freeLists[sizeClass] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[freeCounts[sizeClass]++] = address;
+        freeBytes += capacity;
+    }
+
+    // Bytes the block can hold after its header
+    public int capacity(long address) {
+        return slab(address).getInt(offset(address)) - HEADER_BYTES;
+    }
+
+    public ByteBuffer slab(long address) {
+        return slabs.get((int) (address >>> 32));
+    }
+
+    // Offset in its slab of the block's first byte after the header
+    public static int start(long address) {
+        return offset(address) + HEADER_BYTES;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    private int addSlab(int bytes) {
+        slabs.add(ByteBuffer.allocateDirect(bytes));
+        reservedBytes += bytes;
+        return slabs.size() - 1;
+    }
+
+    private static long address(int slab, int offset) {
+        return (long) slab << 32 | offset;
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    static int capacityFor(int bytes) {
+        if (bytes > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes off-heap");
+        }
+        if (bytes <= SMALL_LIMIT) {
+            return (bytes + 15) & ~15;
+        }
+        return Integer.highestOneBit(bytes - 1) << 1;
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= SMALL_LIMIT) {
+            return capacity / 16 - 1;
+        }
+        return SMALL_CLASSES + Integer.numberOfTrailingZeros(capacity) - 12; // 8 KB is the first
+    }
+}
@@ -0,0 +1,132 @@
+package edu.smu.smusql;
+
+import java.util.List;
+
+/*
+ * Typed syntax tree of one smuSQL statement, produced by Parser.
+ * Statements are shared by every execution of the same shape, so they hold no literal values,
+ * only Literal nodes that are resolved against the literal vector of each execution.
+ */
+public abstract class Statement {
+    public final String tableName;
+
+    protected Statement(String tableName) {
+        this.tableName = tableName;
+    }
+
+    // CREATE TABLE name (column [type], ...) [USING storage]
+    public static class CreateTable extends Statement {
+        public final List<String> columns;
+        public final List<String> types; // declared type per column, null where none is given
+        public final String storage;     // null for the engine default
+
+        public CreateTable(String tableName, List<String> columns, List<String> types, String storage) {
+            super(tableName);
+            this.columns = columns;
+            this.types = types;
+            this.storage = storage;
+        }
+    }
+
+    // CREATE [HASH | BITMAP] INDEX name ON table(column)
+    public static class CreateIndex extends Statement {
+        public final String indexName;
+        public final String column;
+        public final String type; // "ORDERED", "HASH" or "BITMAP"
+
+        public CreateIndex(String indexName, String tableName, String column, String type) {
+            super(tableName);
+            this.indexName = indexName;
+            this.column = column;
+            this.type = type;
+        }
+    }
+
+    // INSERT INTO table VALUES (value, ...) [, (value, ...) ...]
+    public static class Insert extends Statement {
+        public final List<List<Literal>> rows;
+
+        public Insert(String tableName, List<List<Literal>> rows) {
+            super(tableName);
+            this.rows = rows;
+        }
+    }
+
+    // COPY table FROM 'file'
+    public static class Copy extends Statement {
+        public final Literal file;
+
+        public Copy(String tableName, Literal file) {
+            super(tableName);
+            this.file = file;
+        }
+    }
+
+    // SELECT * FROM table [WHERE predicate]
+    public static class Select extends Statement {
+        public final Predicate where; // null when there is no WHERE clause
+
+        public Select(String tableName, Predicate where) {
+            super(tableName);
+            this.where = where;
+        }
+    }
+
+    // UPDATE table SET column = value [WHERE predicate]
+    public static class Update extends Statement {
+        public final String column;
+        public final Literal value;
+        public final Predicate where;
+
+        public Update(String tableName, String column, Literal value, Predicate where) {
+            super(tableName);
+            this.column = column;
+            this.value = value;
+            this.where = where;
+        }
+    }
+
+    // DELETE FROM table [WHERE predicate]
+    public static class Delete extends Statement {
+        public final Predicate where;
+
+        public Delete(String tableName, Predicate where) {
+            super(tableName);
+            this.where = where;
+        }
+    }
+
+    // CHECKPOINT, which writes every table to a snapshot; names no table
+    public static class Checkpoint extends Statement {
+        public Checkpoint() {
+            super(null);
+        }
+    }
+
+    // SHOW STATS, which reports the engine's statistics (see Stats)
+    public static class ShowStats extends Statement {
+        public ShowStats() {
+            super(null);
+        }
+    }
+
+    // RESET STATS, which zeroes the engine's statistics and counters
+    public static class ResetStats extends Statement {
+        public ResetStats() {
+            super(null);
+        }
+    }
+
+    // EXPLAIN [ANALYZE] statement, which reports the plan of the statement and, with ANALYZE,
+    // runs it (see Explain)
+    public static class Explain extends Statement {
+        public final Statement statement;
+        public final boolean analyze;
+
+        public Explain(Statement statement, boolean analyze) {
+            super(statement.tableName);
+            this.statement = statement;
+            this.analyze = analyze;
+        }
+    }
+}
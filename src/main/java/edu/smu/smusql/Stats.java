@@ -0,0 +1,169 @@
+package edu.smu.smusql;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Statement statistics of an Engine: latencies and row counts per kind of statement ("SELECT",
+ * "INSERT", ...) and per table, for every statement run through executeSQL or query.
+ * The latency of a statement runs from the call until its result is ready, including parsing and
+ * waiting for the log; for query() it runs until the ResultSet is closed.
+ *
+ * Entries are made the first time a kind or table is seen and kept from then on; reset() zeroes
+ * them in place, so plans can hold on to the entries they record into instead of looking them up.
+ * Snapshot gathers them with the engine's other counters, and format() is the text of SHOW STATS.
+ */
+public class Stats {
+
+    // Latencies and row counts of one kind of statement, or of the statements on one table
+    public static class Entry {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+
+        void record(long nanos, long scanned, long returned) {
+            latency.record(nanos);
+            if (scanned != 0) {
+                rowsScanned.add(scanned);
+            }
+            if (returned != 0) {
+                rowsReturned.add(returned);
+            }
+        }
+
+        void reset() {
+            latency.reset();
+            rowsScanned.reset();
+            rowsReturned.reset();
+        }
+    }
+
+    // Rows a statement read from its table, and rows it returned (SELECT) or changed (other
+    // statements); filled in by the statement as it runs
+    static class Rows {
+        long scanned;
+        long returned;
+        Explain explain; // for EXPLAIN ANALYZE, which the statement reports its planning to
+    }
+
+    // One line of SHOW STATS: an entry as it was when the snapshot was taken. Times in nanoseconds.
+    public static class Timing {
+        public final String name;
+        public final long count;
+        public final long p50;
+        public final long p99;
+        public final long p999;
+        public final long max;
+        public final double mean;
+        public final long rowsScanned;
+        public final long rowsReturned;
+
+        Timing(String name, Entry entry) {
+            this.name = name;
+            this.count = entry.latency.getCount();
+            this.p50 = entry.latency.getPercentile(0.50);
+            this.p99 = entry.latency.getPercentile(0.99);
+            this.p999 = entry.latency.getPercentile(0.999);
+            this.max = entry.latency.getMax();
+            this.mean = entry.latency.getMean();
+            this.rowsScanned = entry.rowsScanned.sum();
+            this.rowsReturned = entry.rowsReturned.sum();
+        }
+    }
+
+    // Everything SHOW STATS reports, taken at one moment
+    public static class Snapshot {
+        public final List<Timing> statements;          // by kind of statement, in name order
+        public final List<Timing> tables;              // by table, in name order
+        public final Map<String, HashMapStats> keyMaps; // key map of each table, in name order
+        public final Map<String, Long> counters;       // engine counters, in a fixed order
+
+        Snapshot(List<Timing> statements, List<Timing> tables, Map<String, HashMapStats> keyMaps, Map<String, Long> counters) {
+            this.statements = statements;
+            this.tables = tables;
+            this.keyMaps = keyMaps;
+            this.counters = counters;
+        }
+
+        // Tab-separated sections, each with a header line: statement kinds, tables, key maps and
+        // counters. Times are in microseconds.
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            appendTimings(out, "statement", statements);
+            out.append('\n');
+            appendTimings(out, "table", tables);
+            out.append("\ntable\trows\tslots\tload\tresizes\tshrinks\tavg_probe\tmax_probe\n");
+            for (Map.Entry<String, HashMapStats> keyMap : keyMaps.entrySet()) {
+                HashMapStats map = keyMap.getValue();
+                out.append(keyMap.getKey()).append('\t').append(map.getEntries())
+                        .append('\t').append(map.getCapacity())
+                        .append('\t').append(String.format(Locale.ROOT, "%.2f", map.getLoadFactor()))
+                        .append('\t').append(map.getResizes())
+                        .append('\t').append(map.getShrinks())
+                        .append('\t').append(String.format(Locale.ROOT, "%.2f", map.getAverageProbeLength()))
+                        .append('\t').append(map.getMaxProbeLength()).append('\n');
+            }
+            out.append("\ncounter\tvalue");
+            for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                out.append('\n').append(counter.getKey()).append('\t').append(counter.getValue());
+            }
+            return out.toString();
+        }
+
+        private static void appendTimings(StringBuilder out, String label, List<Timing> timings) {
+            out.append(label).append("\tcount\tp50_us\tp99_us\tp999_us\tmax_us\tmean_us\trows_scanned\trows_returned\n");
+            for (Timing timing : timings) {
+                out.append(timing.name).append('\t').append(timing.count)
+                        .append('\t').append(micros(timing.p50))
+                        .append('\t').append(micros(timing.p99))
+                        .append('\t').append(micros(timing.p999))
+                        .append('\t').append(micros(timing.max))
+                        .append('\t').append(micros(timing.mean))
+                        .append('\t').append(timing.rowsScanned)
+                        .append('\t').append(timing.rowsReturned).append('\n');
+            }
+        }
+
+        private static String micros(double nanos) {
+            return String.format(Locale.ROOT, "%.1f", nanos / 1000);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> statements = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> tables = new ConcurrentHashMap<>();
+
+    Entry forStatement(String kind) {
+        return statements.computeIfAbsent(kind, k -> new Entry());
+    }
+
+    Entry forTable(String tableName) {
+        return tables.computeIfAbsent(tableName, k -> new Entry());
+    }
+
+    List<Timing> statementTimings() {
+        return timings(statements);
+    }
+
+    List<Timing> tableTimings() {
+        return timings(tables);
+    }
+
+    // Zeroes every entry. Statements running meanwhile may be partly kept.
+    public void reset() {
+        for (Entry entry : statements.values()) {
+            entry.reset();
+        }
+        for (Entry entry : tables.values()) {
+            entry.reset();
+        }
+    }
+
+    private static List<Timing> timings(Map<String, Entry> entries) {
+        List<Timing> timings = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+            timings.add(new Timing(entry.getKey(), entry.getValue()));
+        }
+        return timings;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.smu.smusql;
+
+import java.util.Arrays;
+
+/*
+ * Dictionary of the distinct values of one STRING column in ColumnStorage.
+ * Each value gets a code from 1 to MAX_CODE that rows store instead of the String, so a value
+ * repeated in a million rows is kept once, and two values are equal exactly when their codes are.
+ * Code 0 stands for no value. Codes are counted by the rows holding them; a code no row holds any
+ * more is freed and given to the next new value.
+ */
+public class StringDictionary {
+    static final int MAX_CODE = Character.MAX_VALUE; // codes are stored as chars
+
+    private final OpenHashMap<String, Integer> codes = new OpenHashMap<>();
+    private String[] values = new String[16];  // by code
+    private int[] counts = new int[16];        // rows holding each code
+    private int[] freeCodes = new int[16];
+    private int freeCount = 0;
+    private int nextCode = 1;
+
+    // Code of the value for one more row, adding the value if it is new. Returns -1 if the
+    // dictionary is full.
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            if (freeCount > 0) {
+                code = freeCodes[--freeCount];
+            } else if (nextCode <= MAX_CODE) {
+                code = nextCode++;
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                    counts = Arrays.copyOf(counts, code * 2);
+                }
+            } else {
+                return -1;
+            }
+            codes.put(value, code);
+            values[code] = value;
+        }
+        counts[code]++;
+        return code;
+    }
+
+    // Drops one row's use of the code, freeing it once no row holds it
+    public void release(int code) {
+        if (code == 0 || --counts[code] > 0) {
+            return;
+        }
+        codes.remove(values[code]);
+        values[code] = null;
+        if (freeCount == freeCodes.length) {
+            freeCodes = Arrays.copyOf(freeCodes, freeCount * 2);
+        }
+        freeCodes[freeCount++] = code;
+    }
+
+    // Code of the value, or 0 if no row holds it
+    public int lookup(String value) {
+        Integer code = codes.get(value);
+        return code != null ? code : 0;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    // Number of distinct values held
+    public int size() {
+        return codes.size();
+    }
+}
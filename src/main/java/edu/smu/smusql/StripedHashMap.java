@@ -0,0 +1,215 @@
+package edu.smu.smusql;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Concurrent hash map made of OpenHashMap stripes, each guarded by its own lock.
+ * A key's stripe is picked by the high bits of its spread hash, which the stripe's own table
+ * (indexed by the low bits) does not use, so keys still spread evenly inside a stripe.
+ * Threads working on keys of different stripes never wait for each other, and a stripe that fills
+ * up grows on its own: a resize only holds up writers to that one stripe, never the whole map.
+ *
+ * size(), keys() and cursors are weakly consistent: they visit the stripes one after another and
+ * reflect every change made before they reached a stripe, and possibly some made while they ran.
+ * They never fail because of concurrent writes. Keys come in stripe order, and in insertion order
+ * within a stripe. Keys and values must not be null.
+ */
+public class StripedHashMap<K, V> {
+    public static final int DEFAULT_STRIPES = 16; // must be a power of two
+
+    private final OpenHashMap<K, V>[] stripes;
+    private final ReentrantLock[] locks;
+    private final int shift; // 32 - log2(stripe count), to take the high bits of the hash
+
+    public StripedHashMap() {
+        this(DEFAULT_STRIPES);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedHashMap(int stripeCount) {
+        if (stripeCount < 2 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two, at least 2");
+        }
+        stripes = (OpenHashMap<K, V>[]) new OpenHashMap[stripeCount];
+        locks = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new OpenHashMap<>();
+            locks[i] = new ReentrantLock();
+        }
+        shift = 32 - Integer.numberOfTrailingZeros(stripeCount);
+    }
+
+    private int stripeOf(Object key) {
+        return OpenHashMap.spread(key.hashCode()) >>> shift;
+    }
+
+    // Lock of the key's stripe. Holding it keeps every other thread off the key, so a caller can
+    // read and then change the key's entry as one step; the map's own methods take it reentrantly.
+    public Lock lockFor(K key) {
+        return locks[stripeOf(key)];
+    }
+
+    public V get(K key) {
+        int stripe = stripeOf(key);
+        locks[stripe].lock();
+        try {
+            return stripes[stripe].get(key);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        int stripe = stripeOf(key);
+        locks[stripe].lock();
+        try {
+            stripes[stripe].put(key, value);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    public void remove(K key) {
+        int stripe = stripeOf(key);
+        locks[stripe].lock();
+        try {
+            stripes[stripe].remove(key);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                size += stripes[i].size();
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return size;
+    }
+
+    // Adds the shape of every stripe to the stats, one stripe at a time
+    public void addStats(HashMapStats stats, boolean reset) {
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                stripes[i].addStats(stats, reset);
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // A copy of the keys, taken a stripe at a time
+    public Iterable<K> keys() {
+        List<K> copy = new ArrayList<>();
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            copy.add(cursor.key());
+        }
+        return copy;
+    }
+
+    // Grows every stripe at once to fit its share of that many more keys
+    public void ensureCapacity(int additionalKeys) {
+        int perStripe = additionalKeys / stripes.length + 1;
+        for (int i = 0; i < stripes.length; i++) {
+            locks[i].lock();
+            try {
+                stripes[i].ensureCapacity(stripes[i].size() + perStripe + perStripe / 8); // room for an uneven spread
+            } finally {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    // Walks the entries a stripe at a time: each stripe is copied under its lock, then walked with
+    // the lock released, so a long walk holds up writers to one stripe only while it is copied.
+    public class Cursor {
+        private int stripe;
+        private final int lastStripe;
+        private Object[] keys = new Object[0];
+        private Object[] values = new Object[0];
+        private int count = 0;
+        private int position = 0;
+
+        Cursor(int fromStripe, int toStripe) {
+            this.stripe = fromStripe - 1;
+            this.lastStripe = Math.min(toStripe, stripes.length) - 1;
+        }
+
+        public boolean next() {
+            while (++position >= count) {
+                if (stripe >= lastStripe) {
+                    position = count;
+                    return false;
+                }
+                stripe++;
+                copyStripe();
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public K key() {
+            return (K) keys[position];
+        }
+
+        // Value when the stripe was copied
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) values[position];
+        }
+
+        public void remove() {
+            StripedHashMap.this.remove(key());
+        }
+
+        private void copyStripe() {
+            locks[stripe].lock();
+            try {
+                OpenHashMap<K, V> entries = stripes[stripe];
+                if (keys.length < entries.size()) {
+                    keys = new Object[entries.size()];
+                    values = new Object[entries.size()];
+                }
+                count = 0;
+                OpenHashMap<K, V>.Cursor entry = entries.cursor();
+                while (entry.next()) {
+                    keys[count] = entry.key();
+                    values[count] = entry.value();
+                    count++;
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+            Arrays.fill(keys, count, keys.length, null); // drop references left from a bigger stripe
+            Arrays.fill(values, count, values.length, null);
+            position = -1;
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor(0, stripes.length);
+    }
+
+    // Walks only the stripes from fromStripe (inclusive) to toStripe (exclusive), so a walk can be
+    // split across threads
+    public Cursor cursor(int fromStripe, int toStripe) {
+        return new Cursor(fromStripe, toStripe);
+    }
+}
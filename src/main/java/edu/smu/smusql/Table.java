@@ -1,56 +1,339 @@
-package edu.smu.smusql;
-
-import java.util.*;
-
-public class Table {
-    private ChainHashMap<String, Map<String, String>> dataList; // Use ChainHashMap for rows
-    private String name;
-    private List<String> columns;
-
-    public Table(String name, List<String> columns) {
-        this.name = name;
-        this.columns = columns;
-        this.dataList = new ChainHashMap<>(); // Initialize ChainHashMap
-    }
-
-    public String getName() {
-        return name;
-    }
-
-    public List<String> getColumns() {
-        return columns;
-    }
-
-    public void addRow(String key, Map<String, String> newRow) {
-        if (newRow.keySet().containsAll(columns)) {
-            dataList.put(key, newRow); // Add the row with the specified key
-        } else {
-            throw new IllegalArgumentException("Row must contain all columns");
-        }
-    }
-
-    public Map<String, String> getRow(String key) {
-        return dataList.get(key); // Retrieve a row by its key
-    }
-
-    public void removeRow(String key) {
-        dataList.remove(key); // Remove a row by its key
-    }
-
-    public ChainHashMap<String, Map<String, String>> getDataList() {
-        return dataList;
-    }
-
-    // public List<Map<String, String>> getDataList() {
-    //     List<Map<String, String>> rows = new ArrayList<>();
-    //     for (String key : dataList.keys()) { // Assuming you have a method to get keys from ChainHashMap
-    //         rows.add(dataList.get(key)); // Add each row to the list
-    //     }
-    //     return rows; // Return the list of rows
-    // }
-
-
-    public void setDataList(ChainHashMap<String, Map<String, String>> dataList) {
-        this.dataList = dataList; // Set the dataList to a new ChainHashMap
-    }
-}
+package edu.smu.smusql;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * A table: its columns, its indexes and the TableStorage holding its rows.
+ * Rows are stored under a row key and reached through cursors; every write goes through here so
+ * the indexes stay current whatever the storage layout.
+ * Nothing here is synchronized: callers hold getLock(), the read lock to scan and the write lock
+ * to change rows or indexes.
+ */
+public class Table {
+    private TableStorage storage; // rows, laid out by row or by column
+    private String name;
+    private List<String> columns;
+    private OpenHashMap<String, Integer> columnIndexes; // column name -> position in columns
+    private OpenHashMap<String, OrderedIndex> orderedIndexes; // Secondary indexes by column name
+    private OpenHashMap<String, HashIndex> hashIndexes;
+    private OpenHashMap<String, BitmapIndex> bitmapIndexes;
+    private RowOrdinals ordinals; // numbers the rows for the bitmap indexes, null until there is one
+    private List<Index> indexList; // All of the above, for maintenance on every write
+    private Set<String> indexNames;
+    private volatile boolean exactKeys = true; // false once a key reads as a number other than its text, e.g. "007"
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public Table(String name, List<String> columns) {
+        this(name, columns, new RowStorage());
+    }
+
+    public Table(String name, List<String> columns, TableStorage storage) {
+        this.name = name;
+        this.columns = columns;
+        this.storage = storage;
+        this.columnIndexes = new OpenHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndexes.put(columns.get(i), i);
+        }
+        this.orderedIndexes = new OpenHashMap<>();
+        this.hashIndexes = new OpenHashMap<>();
+        this.bitmapIndexes = new OpenHashMap<>();
+        this.indexList = new ArrayList<>();
+        this.indexNames = new HashSet<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    // Position of the column in getColumns(), or -1 if the table has no such column
+    public int getColumnIndex(String column) {
+        Integer index = columnIndexes.get(column);
+        return index != null ? index : -1;
+    }
+
+    // Shared by statements that only read the table, exclusive for those that change it
+    public ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    // True while the current thread holds the read lock, as it does while it reads the table
+    // through an open ResultSet. It cannot take the write lock then: that would wait on itself.
+    public boolean isReadLockedByCurrentThread() {
+        return lock.getReadHoldCount() > 0;
+    }
+
+    public TableStorage getStorage() {
+        return storage;
+    }
+
+    public int size() {
+        return storage.size();
+    }
+
+    // Stores a row with one value per column, replacing any row already stored under the key
+    public void addRow(String key, String[] values) {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Row must contain all columns");
+        }
+        for (int i = 0; i < values.length; i++) {
+            storage.checkValue(i, values[i]);
+        }
+
+        if (!indexList.isEmpty()) {
+            TableStorage.Cursor oldRow = storage.scan(List.of(key));
+            if (oldRow.next()) {
+                unindexRow(oldRow); // The new row replaces the old one under the same key
+            }
+        }
+        storage.insert(key, values);
+        checkKey(key);
+        if (!indexList.isEmpty()) {
+            TableStorage.Cursor newRow = storage.scan(List.of(key));
+            newRow.next();
+            indexRow(newRow); // as stored, which for typed columns may differ from the text written
+        }
+    }
+
+    // Makes room for that many more rows ahead of a bulk load
+    public void reserve(int rows) {
+        storage.reserve(rows);
+    }
+
+    // Every row
+    public TableStorage.Cursor scan() {
+        return storage.scan();
+    }
+
+    // Every row that may pass the filter, see TableStorage.scan(Filter)
+    public TableStorage.Cursor scan(Filter filter) {
+        return storage.scan(filter);
+    }
+
+    // The rows stored under the given keys
+    public TableStorage.Cursor scan(Iterable<String> keys) {
+        return storage.scan(keys);
+    }
+
+    // Ends a statement that changed the table; call before releasing the write lock
+    public void commit() {
+        storage.commit();
+    }
+
+    // Throws IllegalArgumentException if the column cannot hold the value
+    public void checkValue(int column, String value) {
+        storage.checkValue(column, value);
+    }
+
+    // True while every key is either an int in canonical form or not a number at all. Then a row
+    // matches "id = N", for N in canonical form, only if it is stored under the key N, as no other
+    // key compares equal to it as a number.
+    public boolean hasExactKeys() {
+        return exactKeys;
+    }
+
+    public boolean containsKey(String key) {
+        return storage.scan(List.of(key)).next();
+    }
+
+    // Removes the row under the cursor
+    public void removeRow(TableStorage.Cursor row) {
+        unindexRow(row);
+        row.remove();
+    }
+
+    // Changes one cell of the row under the cursor and keeps any index on that column current
+    public void updateValue(TableStorage.Cursor row, int column, String value) {
+        String columnName = columns.get(column);
+        OrderedIndex orderedIndex = orderedIndexes.get(columnName);
+        HashIndex hashIndex = hashIndexes.get(columnName);
+        BitmapIndex bitmapIndex = bitmapIndexes.get(columnName);
+        if (orderedIndex == null && hashIndex == null && bitmapIndex == null) {
+            row.set(column, value);
+            return;
+        }
+
+        String oldValue = row.getString(column);
+        row.set(column, value);
+        String newValue = row.getString(column);
+        if (orderedIndex != null) {
+            orderedIndex.remove(oldValue, row.key());
+            orderedIndex.add(newValue, row.key());
+        }
+        if (hashIndex != null) {
+            hashIndex.remove(oldValue, row.key());
+            hashIndex.add(newValue, row.key());
+        }
+        if (bitmapIndex != null) {
+            bitmapIndex.remove(oldValue, row.key());
+            bitmapIndex.add(newValue, row.key());
+        }
+    }
+
+    // Moves a row to a new key, replacing any row already stored there
+    public void moveRow(String oldKey, String newKey) {
+        if (oldKey.equals(newKey)) {
+            return;
+        }
+        TableStorage.Cursor replaced = storage.scan(List.of(newKey));
+        if (replaced.next()) {
+            removeRow(replaced);
+        }
+        TableStorage.Cursor row = storage.scan(List.of(oldKey));
+        if (!row.next()) {
+            return;
+        }
+        unindexRow(row);
+        storage.rename(oldKey, newKey);
+        checkKey(newKey);
+        TableStorage.Cursor moved = storage.scan(List.of(newKey));
+        moved.next();
+        indexRow(moved);
+    }
+
+    // Builds an index of the type named by CREATE [HASH | BITMAP] INDEX: "ORDERED", "HASH" or "BITMAP"
+    public void createIndex(String indexName, String column, String type) {
+        switch (type) {
+            case "HASH":
+                createHashIndex(indexName, column);
+                break;
+            case "BITMAP":
+                createBitmapIndex(indexName, column);
+                break;
+            default:
+                createIndex(indexName, column);
+        }
+    }
+
+    // Builds an ordered index over the rows already in the table
+    public void createIndex(String indexName, String column) {
+        checkNewIndex(indexName, column);
+        if (orderedIndexes.get(column) != null) {
+            throw new IllegalArgumentException("Index already exists");
+        }
+
+        OrderedIndex index = new OrderedIndex(indexName, column);
+        fillIndex(index);
+        orderedIndexes.put(column, index);
+    }
+
+    // Builds a hash index over the rows already in the table
+    public void createHashIndex(String indexName, String column) {
+        checkNewIndex(indexName, column);
+        if (hashIndexes.get(column) != null) {
+            throw new IllegalArgumentException("Index already exists");
+        }
+
+        HashIndex index = new HashIndex(indexName, column);
+        fillIndex(index);
+        hashIndexes.put(column, index);
+    }
+
+    // Builds a bitmap index over the rows already in the table, numbering them first if it is the
+    // table's first bitmap index
+    public void createBitmapIndex(String indexName, String column) {
+        checkNewIndex(indexName, column);
+        if (bitmapIndexes.get(column) != null) {
+            throw new IllegalArgumentException("Index already exists");
+        }
+
+        if (ordinals == null) {
+            ordinals = new RowOrdinals();
+            TableStorage.Cursor row = storage.scan();
+            while (row.next()) {
+                ordinals.add(row.key());
+            }
+        }
+        BitmapIndex index = new BitmapIndex(indexName, column, ordinals);
+        fillIndex(index);
+        bitmapIndexes.put(column, index);
+    }
+
+    public boolean hasIndexes() {
+        return !indexList.isEmpty();
+    }
+
+    // Every index, ordered, hash and bitmap, in the order they were created
+    public List<Index> getIndexes() {
+        return Collections.unmodifiableList(indexList);
+    }
+
+    public OrderedIndex getOrderedIndex(String column) {
+        return orderedIndexes.get(column);
+    }
+
+    public HashIndex getHashIndex(String column) {
+        return hashIndexes.get(column);
+    }
+
+    public BitmapIndex getBitmapIndex(String column) {
+        return bitmapIndexes.get(column);
+    }
+
+    public boolean hasBitmapIndexes() {
+        return ordinals != null;
+    }
+
+    // Keys of the rows with the given ordinals, as numbered for the bitmap indexes
+    public List<String> keysOf(RoaringBitmap rows) {
+        List<String> keys = new ArrayList<>(rows.getCardinality());
+        rows.forEach(ordinal -> keys.add(ordinals.keyOf(ordinal)));
+        return keys;
+    }
+
+    private void checkNewIndex(String indexName, String column) {
+        if (!columns.contains(column)) {
+            throw new IllegalArgumentException("No such column: " + column);
+        }
+        if (indexNames.contains(indexName)) {
+            throw new IllegalArgumentException("Index already exists");
+        }
+    }
+
+    private void fillIndex(Index index) {
+        int column = getColumnIndex(index.getColumn());
+        TableStorage.Cursor row = storage.scan();
+        while (row.next()) {
+            index.add(row.getString(column), row.key());
+        }
+        indexList.add(index);
+        indexNames.add(index.getName());
+    }
+
+    private void checkKey(String key) {
+        if (exactKeys && key != null && !isExactKey(key)) {
+            exactKeys = false; // stays false: keys are not tracked as rows leave
+        }
+    }
+
+    static boolean isExactKey(String key) {
+        Filter.NumberParser number = new Filter.NumberParser();
+        if (number.parseInt(key)) {
+            return key.equals(Integer.toString(number.intValue));
+        }
+        return !number.parseFloat(key);
+    }
+
+    private void indexRow(TableStorage.Cursor row) {
+        if (ordinals != null) {
+            ordinals.add(row.key());
+        }
+        for (Index index : indexList) {
+            index.add(row.getString(getColumnIndex(index.getColumn())), row.key());
+        }
+    }
+
+    private void unindexRow(TableStorage.Cursor row) {
+        for (Index index : indexList) {
+            index.remove(row.getString(getColumnIndex(index.getColumn())), row.key());
+        }
+        if (ordinals != null) {
+            ordinals.remove(row.key());
+        }
+    }
+}
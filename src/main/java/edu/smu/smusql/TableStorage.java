@@ -0,0 +1,116 @@
+package edu.smu.smusql;
+
+import java.util.List;
+
+/*
+ * Physical layout of the rows of a Table.
+ * Table keeps indexes and the key column on top of it; a storage only stores, finds and walks rows.
+ * Columns are addressed by their position in Table.getColumns().
+ */
+public interface TableStorage {
+
+    // Walks rows one at a time. Positioned before the first row until next() is called.
+    interface Cursor {
+        boolean next();
+
+        String key();
+
+        // Type the storage holds the column as; STRING columns are compared by their text
+        ColumnType type(int column);
+
+        String getString(int column);
+
+        int getInt(int column);
+
+        double getDouble(int column);
+
+        // Code of the value in a dictionary-encoded STRING column (see StringDictionary), or -1 if
+        // the storage does not encode the column
+        default int getCode(int column) {
+            return -1;
+        }
+
+        void set(int column, String value);
+
+        // Removes the current row; the cursor stays valid for next()
+        void remove();
+    }
+
+    int size();
+
+    // Stores a row under key, replacing any row already stored there
+    void insert(String key, String[] values);
+
+    // Type the column is held as; STRING for untyped or not yet inferred columns
+    ColumnType getType(int column);
+
+    // Throws IllegalArgumentException if the column cannot hold the value
+    void checkValue(int column, String value);
+
+    // Code the column's dictionary gives the value as Cursor.getCode would return it, 0 if no row
+    // holds the value, or -1 if the storage does not encode the column. Codes stay valid until the
+    // rows change.
+    default int lookupCode(int column, String value) {
+        return -1;
+    }
+
+    // Every row
+    Cursor scan();
+
+    // Every row that may pass the filter, which the caller still tests. A storage that keeps a
+    // ZoneMap leaves out the blocks of rows the filter cannot pass.
+    default Cursor scan(Filter filter) {
+        return scan();
+    }
+
+    // The rows stored under the given keys, skipping keys with no row
+    Cursor scan(Iterable<String> keys);
+
+    // The rows at positions from (inclusive) to to (exclusive) of a full scan, in the same order.
+    // Cursors over disjoint ranges may read side by side, so one scan can be split across threads.
+    Cursor scan(int from, int to);
+
+    // The rows of scan(from, to) that may pass the filter, as scan(filter) picks them
+    default Cursor scan(int from, int to, Filter filter) {
+        return scan(from, to);
+    }
+
+    // Positions a full scan covers, for splitting it with scan(from, to); some may hold no row
+    int getScanLimit();
+
+    // Makes room for that many more rows ahead of a bulk load, so the storage does not grow step by
+    // step while it is filled
+    void reserve(int rows);
+
+    // Moves the row stored under oldKey to newKey, replacing any row already there
+    void rename(String oldKey, String newKey);
+
+    // Adds the shape of the hash map that finds rows by key to the stats; reset restarts its resize
+    // counts. Called holding the table lock.
+    void addKeyMapStats(HashMapStats stats, boolean reset);
+
+    // Short description for messages, e.g. "ROW"
+    String getKind();
+
+    // Called when a statement that changed the rows ends, before the table lock is released
+    void commit();
+
+    // New empty storage of the kind named by CREATE TABLE ... USING, or null for an unknown kind.
+    // Declared column types (null where none) only apply to COLUMNAR storage.
+    static TableStorage create(String kind, List<String> columns, ColumnType[] types) {
+        switch (kind) {
+            case "ROW":
+                return new RowStorage();
+            case "COLUMNAR":
+                return new ColumnStorage(types);
+            case "MVCC":
+                return new VersionedStorage(columns.size());
+            case "CONCURRENT":
+                return new ConcurrentRowStorage();
+            case "OFFHEAP":
+                return new OffHeapStorage(columns.size());
+            default:
+                return null;
+        }
+    }
+}
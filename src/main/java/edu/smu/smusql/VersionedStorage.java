@@ -0,0 +1,402 @@
+package edu.smu.smusql;
+
+import java.util.*;
+
+/*
+ * Multi-version row storage, chosen with USING MVCC, so long scans read a snapshot instead of
+ * holding the table lock against writers.
+ *
+ * Every row keeps its versions newest first, each stamped with the version number of the statement
+ * that wrote it; a deletion is a version without values. Writers still hold the table write lock:
+ * a statement stamps everything it writes with committed + 1 and commit() publishes that number
+ * when it ends, so readers never see half of an UPDATE. Rows sit in an append-only log in insertion
+ * order, which a snapshot walks without any lock, taking from each row the newest version no newer
+ * than its snapshot. Cursors from scan() see the latest versions and are for callers holding the
+ * table lock, like every other storage.
+ *
+ * collect() drops versions no open snapshot can reach; rows deleted before every open snapshot are
+ * compacted out of the log by compact(), which needs the write lock.
+ */
+public class VersionedStorage implements TableStorage {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // One version of a row; values is null for a deletion
+    private static class Version {
+        final long version;
+        final String[] values;
+        Version older; // cut off by collect() once no snapshot can reach past this version
+
+        Version(long version, String[] values, Version older) {
+            this.version = version;
+            this.values = values;
+            this.older = older;
+        }
+    }
+
+    private static class Row {
+        final String key;
+        volatile Version newest;
+
+        Row(String key, Version newest) {
+            this.key = key;
+            this.newest = newest;
+        }
+    }
+
+    // Rows in insertion order. Replaced by a bigger or compacted copy, never shrunk in place, so a
+    // snapshot can keep walking the log it started with.
+    private static class Log {
+        final Row[] rows;
+        volatile int size;
+
+        Log(Row[] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+    }
+
+    private final int columnCount;
+    private final OpenHashMap<String, Row> latest = new OpenHashMap<>(); // live rows by key, for writers
+    private volatile Log log = new Log(new Row[INITIAL_CAPACITY], 0);
+    private volatile long committed = 0; // newest version readers may see
+    private boolean dirty = false;       // whether the running statement has written anything
+    private int deadRows = 0;            // rows in the log whose newest version is a deletion
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>(); // open snapshots, guarded by this
+
+    public VersionedStorage(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    @Override
+    public int size() {
+        return latest.size();
+    }
+
+    @Override
+    public void insert(String key, String[] values) {
+        Row row = latest.get(key);
+        if (row != null) {
+            write(row, values.clone());
+        } else {
+            append(key, values.clone());
+        }
+    }
+
+    @Override
+    public ColumnType getType(int column) {
+        return ColumnType.STRING;
+    }
+
+    @Override
+    public void checkValue(int column, String value) {
+        // Rows hold any text
+    }
+
+    @Override
+    public Cursor scan() {
+        return new LatestCursor(null, latest.cursor());
+    }
+
+    @Override
+    public Cursor scan(Iterable<String> keys) {
+        return new LatestCursor(keys.iterator(), latest.cursor());
+    }
+
+    @Override
+    public Cursor scan(int from, int to) {
+        return new LatestCursor(null, latest.cursor(from, to));
+    }
+
+    @Override
+    public int getScanLimit() {
+        return latest.getEntryLimit();
+    }
+
+    @Override
+    public void reserve(int rows) {
+        latest.ensureCapacity(latest.size() + rows);
+        Log current = log;
+        if (current.rows.length < current.size + rows) {
+            log = new Log(Arrays.copyOf(current.rows, current.size + rows), current.size); // snapshots keep the old copy
+        }
+    }
+
+    @Override
+    public void rename(String oldKey, String newKey) {
+        Row row = latest.get(oldKey);
+        if (row != null) {
+            String[] values = row.newest.values;
+            delete(row);
+            latest.remove(oldKey);
+            insert(newKey, values);
+        }
+    }
+
+    @Override
+    public void addKeyMapStats(HashMapStats stats, boolean reset) {
+        latest.addStats(stats, reset);
+    }
+
+    @Override
+    public String getKind() {
+        return "MVCC";
+    }
+
+    @Override
+    public void commit() {
+        if (dirty) {
+            dirty = false;
+            committed = committed + 1; // only the writer holding the table lock gets here
+        }
+    }
+
+    // The committed rows as they are now, unchanged by later statements, readable without the
+    // table lock. Close the cursor when done so collect() can drop the versions it may still read.
+    public SnapshotCursor openSnapshot() {
+        long version;
+        synchronized (this) {
+            version = committed;
+            snapshots.merge(version, 1, Integer::sum);
+        }
+        return new SnapshotCursor(version, log); // the log read after the version holds every row it can see
+    }
+
+    // Cuts every row's versions below the newest one the oldest open snapshot can see. Safe next to
+    // readers and a writer. Returns true if enough deleted rows have piled up to be worth compact().
+    public boolean collect() {
+        long oldest = oldestVisible();
+        Log current = log;
+        int size = current.size;
+        int dead = 0;
+        for (int i = 0; i < size; i++) {
+            Version version = current.rows[i].newest;
+            while (version != null && version.version > oldest) {
+                version = version.older;
+            }
+            if (version != null) {
+                version.older = null;
+                if (version.values == null) {
+                    dead++;
+                }
+            }
+        }
+        return dead > INITIAL_CAPACITY && dead * 4 > size;
+    }
+
+    // Removes rows deleted before the oldest open snapshot from the log. Caller holds the write lock.
+    public void compact() {
+        long oldest = oldestVisible();
+        Log current = log;
+        Row[] rows = new Row[Math.max(INITIAL_CAPACITY, current.size)];
+        int size = 0;
+        for (int i = 0; i < current.size; i++) {
+            Row row = current.rows[i];
+            Version newest = row.newest;
+            if (newest.values == null && newest.version <= oldest) {
+                deadRows--;
+                continue; // no snapshot sees this row any more
+            }
+            rows[size++] = row;
+        }
+        log = new Log(rows, size);
+    }
+
+    // Rows of the log, removed ones included, for measuring how far collection has got
+    public int getLogSize() {
+        return log.size;
+    }
+
+    public int getDeadRowCount() {
+        return deadRows;
+    }
+
+    // Newest version every open and future snapshot can see
+    private synchronized long oldestVisible() {
+        return snapshots.isEmpty() ? committed : Math.min(snapshots.firstKey(), committed);
+    }
+
+    private synchronized void release(long version) {
+        if (snapshots.merge(version, -1, Integer::sum) == 0) {
+            snapshots.remove(version);
+        }
+    }
+
+    // Version number the running statement writes with
+    private long pending() {
+        dirty = true;
+        return committed + 1;
+    }
+
+    // Gives the row new values, in place if the running statement wrote its newest version
+    private void write(Row row, String[] values) {
+        long version = pending();
+        Version newest = row.newest;
+        if (newest.version == version) {
+            row.newest = new Version(version, values, newest.older);
+        } else {
+            row.newest = new Version(version, values, newest);
+        }
+    }
+
+    private void delete(Row row) {
+        write(row, null);
+        deadRows++;
+    }
+
+    private void append(String key, String[] values) {
+        Row row = new Row(key, new Version(pending(), values, null));
+        latest.put(key, row);
+        Log current = log;
+        if (current.size == current.rows.length) {
+            current = new Log(Arrays.copyOf(current.rows, current.rows.length * 2), current.size);
+            log = current;
+        }
+        current.rows[current.size] = row;
+        current.size = current.size + 1; // publishes the row to snapshots walking this log
+    }
+
+    // Latest versions, for statements holding the table lock
+    private class LatestCursor implements Cursor {
+        private final Iterator<String> lookups; // null to walk every row
+        private final OpenHashMap<String, Row>.Cursor entries;
+        private Row row;
+
+        LatestCursor(Iterator<String> lookups, OpenHashMap<String, Row>.Cursor entries) {
+            this.lookups = lookups;
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean next() {
+            if (lookups == null) {
+                if (!entries.next()) {
+                    return false;
+                }
+                row = entries.value();
+                return true;
+            }
+            while (lookups.hasNext()) {
+                if (entries.seek(lookups.next())) {
+                    row = entries.value();
+                    return true;
+                }
+            }
+            entries.end(); // removals through the cursor leave shrinking to the end
+            return false;
+        }
+
+        @Override
+        public String key() {
+            return row.key;
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            return row.newest.values[column];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(getString(column));
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(getString(column));
+        }
+
+        @Override
+        public void set(int column, String value) {
+            String[] values = row.newest.values.clone();
+            values[column] = value;
+            write(row, values);
+        }
+
+        @Override
+        public void remove() {
+            delete(row);
+            entries.remove();
+        }
+    }
+
+    // Rows as of one committed version. Read-only; released by close() or by running off the end.
+    public class SnapshotCursor implements Cursor {
+        private final long version;
+        private final Log rows;
+        private final int size;
+        private int position = -1;
+        private Row row;
+        private String[] values;
+        private boolean closed = false;
+
+        SnapshotCursor(long version, Log rows) {
+            this.version = version;
+            this.rows = rows;
+            this.size = rows.size;
+        }
+
+        @Override
+        public boolean next() {
+            while (!closed && ++position < size) {
+                row = rows.rows[position];
+                Version visible = row.newest;
+                while (visible != null && visible.version > version) {
+                    visible = visible.older;
+                }
+                if (visible != null && visible.values != null) {
+                    values = visible.values;
+                    return true;
+                }
+            }
+            close();
+            return false;
+        }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(version);
+            }
+        }
+
+        @Override
+        public String key() {
+            return row.key;
+        }
+
+        @Override
+        public ColumnType type(int column) {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            return values[column];
+        }
+
+        @Override
+        public int getInt(int column) {
+            return Integer.parseInt(values[column]);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return Double.parseDouble(values[column]);
+        }
+
+        @Override
+        public void set(int column, String value) {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Snapshots are read-only");
+        }
+    }
+}
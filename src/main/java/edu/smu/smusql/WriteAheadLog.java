@@ -0,0 +1,430 @@
+package edu.smu.smusql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only log of the statements that changed the tables, replayed at startup to rebuild them.
+ *
+ * Each record is one statement, kept as its shape and literals (see PlanCache): a payload length,
+ * a CRC32 of the payload, then the payload. Records are appended to an in-memory buffer while the
+ * statement still holds its table lock, so the log has each table's changes in the order they were
+ * made, and written to the file after the lock is released. How long a statement then waits before
+ * it is acknowledged depends on the Sync policy.
+ *
+ * Group commit: one thread at a time writes the buffer out and forces the file, while statements
+ * arriving meanwhile append to a second buffer and wait. When the force returns, one of them takes
+ * the whole second buffer out in a single write and force, so many concurrent statements share
+ * each force() instead of queueing one force each.
+ *
+ * The log is a directory of numbered segment files. roll() starts a new segment, so a checkpoint
+ * can delete the segments its snapshot covers. Replay stops at the first record of the last segment
+ * that is cut short or fails its checksum, which is what a crash in the middle of a write leaves
+ * behind, and the segment is truncated there before appending resumes.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int HEADER_BYTES = 8; // payload length and checksum
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "log-";
+
+    public enum Sync {
+        COMMIT,   // acknowledge a statement once its record is forced to disk
+        INTERVAL, // acknowledge at once and force every few milliseconds; a crash loses at most that window
+        OFF;      // write each record to the file before acknowledging, never force; lost only if the OS crashes
+
+        public static Sync parse(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown log sync policy: " + name);
+            }
+        }
+    }
+
+    private final Path directory;
+    private final Sync sync;
+    private ScheduledExecutorService syncer; // forces the log for the INTERVAL policy
+
+    private final ReentrantLock lock = new ReentrantLock(); // guards everything below
+    private final Condition flushed = lock.newCondition();
+    private FileChannel channel;  // the segment being appended to, replaced by roll()
+    private long segment;         // its number
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES); // records not yet written
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_BYTES);  // the other buffer, null while being written
+    private long appended;   // log position after the last record appended
+    private long written;    // position up to which records are in the file
+    private long durable;    // position up to which the file is forced to disk
+    private boolean writing = false; // whether a thread is writing a buffer out
+    private IOException failure;     // first write error; every later wait fails with it
+    private long forces = 0;
+
+    private WriteAheadLog(Path directory, FileChannel channel, long segment, Sync sync) {
+        this.directory = directory;
+        this.channel = channel;
+        this.segment = segment;
+        this.sync = sync;
+    }
+
+    // Opens the log in the directory, creating it if needed, and first passes every complete record
+    // of the segments from firstSegment on to replay, in order, as its statement shape and literals.
+    // Older segments are deleted: a checkpoint holds their changes.
+    public static WriteAheadLog open(Path directory, long firstSegment, Sync sync, long syncMillis, BiConsumer<String, String[]> replay) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = new ArrayList<>();
+        for (long number : segments(directory)) {
+            if (number < firstSegment) {
+                Files.delete(segmentFile(directory, number)); // left by a crash before the checkpoint removed it
+            } else {
+                segments.add(number);
+            }
+        }
+
+        long last = segments.isEmpty() ? firstSegment : segments.get(segments.size() - 1);
+        FileChannel channel = FileChannel.open(segmentFile(directory, last), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        WriteAheadLog log;
+        try {
+            for (long number : segments) {
+                if (number == last) {
+                    break;
+                }
+                try (FileChannel older = FileChannel.open(segmentFile(directory, number), StandardOpenOption.READ)) {
+                    if (replay(older, replay) != older.size()) {
+                        throw new IOException("Damaged log segment: " + segmentFile(directory, number));
+                    }
+                }
+            }
+            long end = replay(channel, replay);
+            channel.truncate(end); // drop a record torn by a crash
+            channel.position(end);
+            log = new WriteAheadLog(directory, channel, last, sync);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (sync == Sync.INTERVAL) {
+            log.syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "smusql-log-sync");
+                thread.setDaemon(true); // never keeps the program running
+                return thread;
+            });
+            log.syncer.scheduleWithFixedDelay(log::forceAll, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+        return log;
+    }
+
+    public Sync getSync() {
+        return sync;
+    }
+
+    // Adds the statement to the log and returns the position to pass to awaitDurable. Only buffers
+    // the record, so callers may hold their table lock.
+    public long append(String shape, String[] literals) {
+        byte[][] strings = new byte[literals.length + 1][];
+        strings[0] = shape.getBytes(StandardCharsets.UTF_8);
+        int length = 4 + 4 + strings[0].length;
+        for (int i = 0; i < literals.length; i++) {
+            strings[i + 1] = literals[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + strings[i + 1].length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.putInt(length).putInt(0).putInt(literals.length);
+        for (byte[] string : strings) {
+            record.putInt(string.length).put(string);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        lock.lock();
+        try {
+            if (buffer.remaining() < record.remaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + record.remaining()));
+                buffer.flip();
+                buffer = bigger.put(buffer);
+            }
+            buffer.put(record);
+            appended += record.limit();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns once the log holds everything up to the position as the sync policy promises:
+    // forced to disk (COMMIT), written to the file (OFF), or only buffered (INTERVAL).
+    // Throws the error of a failed write, after which the log takes nothing more to disk.
+    public void awaitDurable(long position) throws IOException {
+        switch (sync) {
+            case COMMIT:
+                flush(position, true);
+                break;
+            case OFF:
+                flush(position, false);
+                break;
+            default:
+                lock.lock();
+                try {
+                    if (failure != null) {
+                        throw new IOException("Write-ahead log failed", failure);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+        }
+    }
+
+    // Number of times the file has been forced to disk, to see how many statements share a force
+    public long getForceCount() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Log position after the last record appended, counting from when the log was opened
+    public long position() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes and forces every record, then closes the file
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            // Let a sync under way finish: interrupting it in a write or force would close the channel
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush(position(), true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Writes and forces every record appended so far to the current segment, then starts the next
+    // one and returns its number. The caller keeps statements from appending until it returns.
+    public long roll() throws IOException {
+        flush(position(), true);
+        lock.lock();
+        try {
+            while (writing) {
+                flushed.awaitUninterruptibly(); // the INTERVAL sync may still be forcing
+            }
+            FileChannel next = FileChannel.open(segmentFile(directory, segment + 1), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.close();
+            channel = next;
+            segment++;
+            forceDirectory(directory);
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Deletes the segments numbered below the given one, once a durable checkpoint holds their changes
+    public void deleteSegmentsBefore(long first) throws IOException {
+        for (long number : segments(directory)) {
+            if (number < first) {
+                Files.delete(segmentFile(directory, number));
+            }
+        }
+    }
+
+    // Number of the segment being appended to
+    public long getSegment() {
+        lock.lock();
+        try {
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces the directory itself, so files just created or renamed in it survive a crash.
+    // Not every platform can open a directory; there the rename is left to the file system.
+    static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("%s%012d", SEGMENT_PREFIX, number));
+    }
+
+    // Numbers of the segments in the directory, in order
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                try {
+                    numbers.add(Long.parseLong(file.getFileName().toString().substring(SEGMENT_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private void forceAll() {
+        try {
+            flush(position(), true);
+        } catch (IOException e) {
+            // kept in failure and reported to the next statement that waits
+        }
+    }
+
+    // Makes the file hold every record up to the position, forced to disk if asked. A thread that
+    // finds another one writing waits for it, and then writes out, if its record is still not
+    // out, everything appended in the meantime in one go.
+    private void flush(long position, boolean force) throws IOException {
+        lock.lock();
+        try {
+            while ((force ? durable : written) < position) {
+                if (failure != null) {
+                    throw new IOException("Write-ahead log failed", failure);
+                }
+                if (writing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                writing = true;
+                FileChannel file = channel;
+                ByteBuffer out = buffer;
+                buffer = spare;
+                spare = null;
+                long end = appended;
+                IOException error = null;
+
+                lock.unlock(); // statements keep appending to the other buffer meanwhile
+                try {
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        file.write(out);
+                    }
+                    if (force) {
+                        file.force(false);
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+
+                out.clear();
+                spare = out;
+                writing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    written = end;
+                    if (force) {
+                        durable = end;
+                        forces++;
+                    }
+                }
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Passes the statement of every complete record to the consumer and returns the position
+    // after the last one
+    private static long replay(FileChannel channel, BiConsumer<String, String[]> statements) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        in.flip();
+        long end = 0;
+        while (fill(channel, in, HEADER_BYTES)) {
+            int length = in.getInt(in.position());
+            int checksum = in.getInt(in.position() + 4);
+            if (length < 12 || length > channel.size()) {
+                break; // torn or garbage header
+            }
+            if (in.capacity() < HEADER_BYTES + length) {
+                in = ByteBuffer.allocate(HEADER_BYTES + length).put(in).flip();
+            }
+            if (!fill(channel, in, HEADER_BYTES + length)) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(in.array(), in.position() + HEADER_BYTES, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            in.position(in.position() + HEADER_BYTES);
+            statement(in, statements);
+            end += HEADER_BYTES + length;
+        }
+        return end;
+    }
+
+    // Reads until the buffer holds at least the given number of bytes; false if the file ends first
+    private static boolean fill(FileChannel channel, ByteBuffer in, int bytes) throws IOException {
+        if (in.remaining() >= bytes) {
+            return true;
+        }
+        in.compact();
+        while (in.position() < bytes) {
+            if (channel.read(in) < 0) {
+                in.flip();
+                return false;
+            }
+        }
+        in.flip();
+        return true;
+    }
+
+    // Passes the shape and literals in the payload to the consumer
+    private static void statement(ByteBuffer payload, BiConsumer<String, String[]> statements) {
+        String[] literals = new String[payload.getInt()];
+        String shape = string(payload);
+        for (int i = 0; i < literals.length; i++) {
+            literals[i] = string(payload);
+        }
+        statements.accept(shape, literals);
+    }
+
+    private static String string(ByteBuffer payload) {
+        int length = payload.getInt();
+        String string = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return string;
+    }
+}
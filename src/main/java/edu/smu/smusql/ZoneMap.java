@@ -0,0 +1,197 @@
+package edu.smu.smusql;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Block summaries ("zone maps") of a storage's numeric values, so a full scan can skip the blocks
+ * whose rows cannot match a range or equality in the WHERE clause (see Filter.mayMatch).
+ * Scan positions are grouped into blocks of BLOCK_ROWS, and per block and column the map keeps the
+ * smallest and largest value that parses as a number. Text and null values are left out, as they
+ * never satisfy a comparison with a number other than !=, which is never used to skip.
+ *
+ * A bound only has to cover the block's values, not be tight. An insert or update widens the
+ * bounds of its block at once; a delete, or an update of a value that may have been the bound,
+ * leaves them as they are and counts against the block, which is recomputed by the storage once a
+ * quarter of its rows have changed that way (see nextStale()). The storage also recomputes every
+ * block when it renumbers its scan positions.
+ *
+ * Changed under the table's write lock; scans only read it.
+ */
+public class ZoneMap {
+    static final int BLOCK_SHIFT = 8;
+    static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+    private static final int STALE_CHANGES = BLOCK_ROWS / 4; // changes after which a block is recomputed
+
+    private double[][] mins = new double[0][];  // per column, by block
+    private double[][] maxs = new double[0][];
+    private int[] changes = new int[0];         // deletes and overwrites per block since it was computed
+    private final BitSet stale = new BitSet();  // blocks due to be recomputed
+    private int blocks = 0;                     // blocks holding any row
+    private final Filter.NumberParser parser = new Filter.NumberParser();
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    static int blockOf(int position) {
+        return position >>> BLOCK_SHIFT;
+    }
+
+    // Widens the block of the position to the row's values
+    public void add(int position, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            widen(position, i, values[i]);
+        }
+    }
+
+    // Widens the block of the position to a value of the column
+    public void widen(int position, int column, String value) {
+        int block = blockOf(position);
+        if (block >= blocks || column >= mins.length) {
+            grow(Math.max(blocks, block + 1), Math.max(mins.length, column + 1));
+        }
+        if (value == null) {
+            return;
+        }
+        double low;
+        double high;
+        if (parser.parseInt(value)) {
+            low = high = parser.intValue;
+        } else {
+            double decimal = parseDecimal(value);
+            if (!Double.isNaN(decimal)) {
+                // Float.parseFloat would round the text to this float or one next to it
+                float rounded = (float) decimal;
+                low = Math.nextDown(rounded);
+                high = Math.nextUp(rounded);
+            } else if (parser.parseFloat(value) && !Float.isNaN(parser.floatValue)) {
+                low = high = parser.floatValue; // compared as a float, like Filter does
+            } else {
+                return;
+            }
+        }
+        double[] min = mins[column];
+        double[] max = maxs[column];
+        if (low < min[block]) {
+            min[block] = low;
+        }
+        if (high > max[block]) {
+            max[block] = high;
+        }
+    }
+
+    // Value of plain decimal text such as "-12.50" to well within a float's precision, or NaN for
+    // anything else, which is left to Float.parseFloat. Several times faster than parsing exactly.
+    private static double parseDecimal(String s) {
+        int length = s.length();
+        int i = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+        long digits = 0;
+        int count = 0;     // digits read, at most 18 so they fit a long
+        int fraction = -1; // digits after the point, -1 before it
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++count > 18) {
+                    return Double.NaN;
+                }
+                digits = digits * 10 + (c - '0');
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double value = fraction > 0 ? digits / POWERS_OF_TEN[fraction] : digits;
+        return s.charAt(0) == '-' ? -value : value;
+    }
+
+    // Counts a delete or overwrite of a row at the position, which may leave its block's bounds loose
+    public void loosen(int position) {
+        int block = blockOf(position);
+        if (block < blocks && ++changes[block] == STALE_CHANGES) {
+            stale.set(block);
+        }
+    }
+
+    // First block from the given one whose bounds are due to be recomputed, or -1 if there is none
+    public int nextStale(int fromBlock) {
+        return stale.nextSetBit(fromBlock);
+    }
+
+    // Empties the block's bounds, for recomputing them from its rows with add()
+    public void reset(int block) {
+        for (int i = 0; i < mins.length; i++) {
+            mins[i][block] = Double.POSITIVE_INFINITY;
+            maxs[i][block] = Double.NEGATIVE_INFINITY;
+        }
+        changes[block] = 0;
+        stale.clear(block);
+    }
+
+    // Forgets every block, for recomputing all of them
+    public void clear() {
+        for (int block = 0; block < blocks; block++) {
+            reset(block);
+        }
+        blocks = 0;
+    }
+
+    // Whether a row of the block may satisfy "column operator literal" for a numeric literal, in
+    // either of the ways Filter compares numbers: exactly as ints, or after rounding both sides to
+    // floats. Rounding never reorders values, so the bounds rounded bound the rounded values.
+    public boolean mayHold(int block, int column, int operator, boolean isInt, int intValue, boolean isFloat, float floatValue) {
+        if (block >= blocks || column >= mins.length) {
+            return true; // no bounds kept, so nothing is known
+        }
+        double min = mins[column][block];
+        double max = maxs[column][block];
+        if (min > max) {
+            return false; // no row of the block holds a number in the column
+        }
+        return (isInt && overlaps(operator, min, max, intValue))
+                || (isFloat && overlaps(operator, (float) min, (float) max, floatValue));
+    }
+
+    // Whether some value between min and max satisfies "value operator literal"
+    private static boolean overlaps(int operator, double min, double max, double literal) {
+        switch (operator) {
+            case Filter.EQ: return min <= literal && literal <= max;
+            case Filter.LT: return min < literal;
+            case Filter.GT: return max > literal;
+            case Filter.LE: return min <= literal;
+            case Filter.GE: return max >= literal;
+            default: return true;
+        }
+    }
+
+    private void grow(int blockCount, int columnCount) {
+        if (columnCount > mins.length) {
+            int old = mins.length;
+            mins = Arrays.copyOf(mins, columnCount);
+            maxs = Arrays.copyOf(maxs, columnCount);
+            for (int i = old; i < columnCount; i++) {
+                mins[i] = new double[changes.length];
+                maxs[i] = new double[changes.length];
+                Arrays.fill(mins[i], Double.POSITIVE_INFINITY);
+                Arrays.fill(maxs[i], Double.NEGATIVE_INFINITY);
+            }
+        }
+        if (blockCount > changes.length) {
+            int old = changes.length;
+            int capacity = Math.max(blockCount, old * 2);
+            changes = Arrays.copyOf(changes, capacity);
+            for (int i = 0; i < mins.length; i++) {
+                mins[i] = Arrays.copyOf(mins[i], capacity);
+                maxs[i] = Arrays.copyOf(maxs[i], capacity);
+                Arrays.fill(mins[i], old, capacity, Double.POSITIVE_INFINITY);
+                Arrays.fill(maxs[i], old, capacity, Double.NEGATIVE_INFINITY);
+            }
+        }
+        blocks = Math.max(blocks, blockCount);
+    }
+}